@@ -24,6 +24,7 @@ import org.openstreetmap.atlas.geography.atlas.Atlas;
 import org.openstreetmap.atlas.geography.atlas.items.Area;
 import org.openstreetmap.atlas.geography.atlas.items.AtlasItem;
 import org.openstreetmap.atlas.geography.atlas.items.Edge;
+import org.openstreetmap.atlas.geography.atlas.items.ItemType;
 import org.openstreetmap.atlas.geography.atlas.items.Line;
 import org.openstreetmap.atlas.geography.atlas.items.LocationItem;
 import org.openstreetmap.atlas.geography.atlas.items.Node;
@@ -31,7 +32,6 @@ import org.openstreetmap.atlas.geography.atlas.items.Point;
 import org.openstreetmap.atlas.geography.atlas.items.Relation;
 import org.openstreetmap.atlas.geography.atlas.items.RelationMember;
 import org.openstreetmap.atlas.utilities.collections.Iterables;
-import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.DataIntegrityProblemException;
 import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
@@ -45,7 +45,6 @@ public class AtlasDataSetBuilder
 {
     // Version of OsmPrimitive, required when setting OsmId in OpenStreetMap
     private static int IDENTIFIER_VERSION = 1;
-    private static Bounds bounds;
 
     /**
      * Converts atlas objects to their OSM equivalents and stores them in a dataSet. Currently just
@@ -58,68 +57,108 @@ public class AtlasDataSetBuilder
      * @return The dataset
      */
     public AtlasDataSet build(final Atlas atlas, final ProgressMonitor monitor)
+    {
+        return build(atlas, AtlasImportProfile.EVERYTHING, monitor);
+    }
+
+    /**
+     * Converts the atlas objects that an import profile selects to their OSM equivalents. The
+     * other objects are skipped before any primitive or shape point is created for them.
+     *
+     * @param atlas
+     *            The atlas to read
+     * @param profile
+     *            The types and tags of the objects to convert
+     * @param monitor
+     *            The progress monitor to monitor loading, which can cancel the conversion
+     * @return The dataset, with only part of the objects if the conversion was cancelled
+     */
+    public AtlasDataSet build(final Atlas atlas, final AtlasImportProfile profile,
+            final ProgressMonitor monitor)
     {
         final Map<Location, AtlasNode> nodeMap = new HashMap<>();
         final Map<Location, AtlasPoint> pointMap = new HashMap<>();
         final AtlasDataSet dataSet = new AtlasDataSet();
-        convertNodes(atlas, monitor, nodeMap, dataSet);
-        convertPoints(atlas, monitor, pointMap, dataSet);
-        convertEdges(atlas, monitor, nodeMap, dataSet);
-        convertLines(atlas, monitor, pointMap, dataSet);
-        convertAreas(atlas, monitor, dataSet);
-        convertRelations(atlas, monitor, dataSet);
+        if (profile.includes(ItemType.NODE) && !monitor.isCanceled())
+        {
+            convertNodes(atlas, profile, monitor, nodeMap, dataSet);
+        }
+        if (profile.includes(ItemType.POINT) && !monitor.isCanceled())
+        {
+            convertPoints(atlas, profile, monitor, pointMap, dataSet);
+        }
+        if (profile.includes(ItemType.EDGE) && !monitor.isCanceled())
+        {
+            convertEdges(atlas, profile, monitor, nodeMap, dataSet);
+        }
+        if (profile.includes(ItemType.LINE) && !monitor.isCanceled())
+        {
+            convertLines(atlas, profile, monitor, pointMap, dataSet);
+        }
+        if (profile.includes(ItemType.AREA) && !monitor.isCanceled())
+        {
+            convertAreas(atlas, profile, monitor, dataSet);
+        }
+        if (profile.includes(ItemType.RELATION) && !monitor.isCanceled())
+        {
+            convertRelations(atlas, profile, monitor, dataSet);
+        }
         monitor.setCustomText(
                 "Done adding atlas objects to data set. Please wait for layer to build...");
         return dataSet;
     }
 
-    private void convertNodes(final Atlas atlas, final ProgressMonitor monitor,
-            final Map<Location, AtlasNode> nodeMap, final AtlasDataSet dataSet)
+    private void convertNodes(final Atlas atlas, final AtlasImportProfile profile,
+            final ProgressMonitor monitor, final Map<Location, AtlasNode> nodeMap,
+            final AtlasDataSet dataSet)
     {
         monitor.setCustomText("Converting nodes...");
-        for (final Node node : atlas.nodes())
+        for (final Node node : atlas.nodes(profile.filter()))
         {
+            if (monitor.isCanceled())
+            {
+                return;
+            }
             addOsmNode(dataSet, monitor, node.getIdentifier(), node.getLocation(), node.relations(),
                     nodeMap, () -> new AtlasNode(node));
         }
     }
 
-    private void convertPoints(final Atlas atlas, final ProgressMonitor monitor,
-            final Map<Location, AtlasPoint> pointMap, final AtlasDataSet dataSet)
+    private void convertPoints(final Atlas atlas, final AtlasImportProfile profile,
+            final ProgressMonitor monitor, final Map<Location, AtlasPoint> pointMap,
+            final AtlasDataSet dataSet)
     {
         monitor.setCustomText("Converting points...");
-        for (final Point point : atlas.points())
+        for (final Point point : atlas.points(profile.filter()))
         {
+            if (monitor.isCanceled())
+            {
+                return;
+            }
             addOsmNode(dataSet, monitor, point.getIdentifier(), point.getLocation(),
                     point.relations(), pointMap, () -> new AtlasPoint(point));
         }
     }
 
-    private void convertEdges(final Atlas atlas, final ProgressMonitor monitor,
-            final Map<Location, AtlasNode> nodeMap, final AtlasDataSet dataSet)
+    private void convertEdges(final Atlas atlas, final AtlasImportProfile profile,
+            final ProgressMonitor monitor, final Map<Location, AtlasNode> nodeMap,
+            final AtlasDataSet dataSet)
     {
         monitor.setCustomText("Converting edges...");
         buildShapePoints(dataSet, monitor,
-                Iterables.stream(atlas.edges()).map(Edge::asPolyLine).collect(), nodeMap,
-                AtlasNode::new);
-        for (final Edge edge : atlas.edges())
+                Iterables.stream(atlas.edges(profile.filter())).map(Edge::asPolyLine).collect(),
+                nodeMap, AtlasNode::new);
+        for (final Edge edge : atlas.edges(profile.filter()))
         {
+            if (monitor.isCanceled())
+            {
+                return;
+            }
             final AtlasEdge way = new AtlasEdge(edge);
             // Create the nodes that come from polyLine shapepoints
             final List<AtlasNode> nodes = new ArrayList<>();
             for (final Location location : edge.asPolyLine())
             {
-                final Double nodeLat = location.getLatitude().asDegrees();
-                final Double nodeLon = location.getLongitude().asDegrees();
-                final LatLon latlon = new LatLon(nodeLat, nodeLon);
-                if (bounds == null)
-                {
-                    bounds = new Bounds(latlon);
-                }
-                else
-                {
-                    bounds.extend(latlon);
-                }
                 nodes.add(nodeMap.get(location));
             }
             way.setNodes(nodes);
@@ -133,30 +172,24 @@ public class AtlasDataSetBuilder
         }
     }
 
-    private void convertLines(final Atlas atlas, final ProgressMonitor monitor,
-            final Map<Location, AtlasPoint> pointMap, final AtlasDataSet dataSet)
+    private void convertLines(final Atlas atlas, final AtlasImportProfile profile,
+            final ProgressMonitor monitor, final Map<Location, AtlasPoint> pointMap,
+            final AtlasDataSet dataSet)
     {
         monitor.setCustomText("Converting lines...");
         buildShapePoints(dataSet, monitor,
-                Iterables.stream(atlas.lines()).map(Line::asPolyLine).collect(), pointMap,
-                AtlasPoint::new);
-        for (final Line line : atlas.lines())
+                Iterables.stream(atlas.lines(profile.filter())).map(Line::asPolyLine).collect(),
+                pointMap, AtlasPoint::new);
+        for (final Line line : atlas.lines(profile.filter()))
         {
+            if (monitor.isCanceled())
+            {
+                return;
+            }
             final AtlasLine way = new AtlasLine(line);
             final List<AtlasPoint> points = new ArrayList<>();
             for (final Location location : line.asPolyLine())
             {
-                final Double nodeLat = location.getLatitude().asDegrees();
-                final Double nodeLon = location.getLongitude().asDegrees();
-                final LatLon latlon = new LatLon(nodeLat, nodeLon);
-                if (bounds == null)
-                {
-                    bounds = new Bounds(latlon);
-                }
-                else
-                {
-                    bounds.extend(latlon);
-                }
                 points.add(pointMap.get(location));
             }
             way.setNodes(points);
@@ -168,12 +201,16 @@ public class AtlasDataSetBuilder
         }
     }
 
-    private void convertAreas(final Atlas atlas, final ProgressMonitor monitor,
-            final AtlasDataSet dataSet)
+    private void convertAreas(final Atlas atlas, final AtlasImportProfile profile,
+            final ProgressMonitor monitor, final AtlasDataSet dataSet)
     {
         monitor.setCustomText("Converting areas...");
-        for (final Area area : atlas.areas())
+        for (final Area area : atlas.areas(profile.filter()))
         {
+            if (monitor.isCanceled())
+            {
+                return;
+            }
             final AtlasArea way = new AtlasArea(area);
             final List<AtlasPoint> points = new ArrayList<>();
             final Polygon polygon = area.asPolygon();
@@ -182,14 +219,6 @@ public class AtlasDataSetBuilder
                 final Double nodeLat = location.getLatitude().asDegrees();
                 final Double nodeLon = location.getLongitude().asDegrees();
                 final LatLon latlon = new LatLon(nodeLat, nodeLon);
-                if (bounds == null)
-                {
-                    bounds = new Bounds(latlon);
-                }
-                else
-                {
-                    bounds.extend(latlon);
-                }
                 final AtlasPoint node = new AtlasPoint(latlon);
                 dataSet.addPrimitive(node);
                 points.add(node);
@@ -208,14 +237,21 @@ public class AtlasDataSetBuilder
         }
     }
 
-    private void convertRelations(final Atlas atlas, final ProgressMonitor monitor,
-            final AtlasDataSet dataSet)
+    private void convertRelations(final Atlas atlas, final AtlasImportProfile profile,
+            final ProgressMonitor monitor, final AtlasDataSet dataSet)
     {
         monitor.setCustomText("Converting relations.");
-        for (final Relation relation : atlas.relations())
+        // Members that the profile skipped are left out of the relations. Relations are not
+        // sampled on their own: a sample keeps the relations of which it kept all the members.
+        for (final Relation relation : atlas.relations(profile.unsampled().filter()))
         {
+            if (monitor.isCanceled())
+            {
+                return;
+            }
             final AtlasRelation osmRelation = new AtlasRelation(relation);
             final List<AtlasRelationMember> memberList = new ArrayList<>();
+            boolean sampled = true;
             for (final RelationMember member : relation.members())
             {
                 final AtlasPrimitive primitive;
@@ -239,6 +275,14 @@ public class AtlasDataSetBuilder
                 {
                     memberList.add(new AtlasRelationMember(member, primitive));
                 }
+                else if (profile.isSampled() && profile.includes(member.getEntity()))
+                {
+                    sampled = false;
+                }
+            }
+            if (!sampled)
+            {
+                continue;
             }
             osmRelation.setMembers(memberList);
             final long relationId = relation.getIdentifier();
@@ -248,11 +292,6 @@ public class AtlasDataSetBuilder
         }
     }
 
-    public Bounds getBounds()
-    {
-        return bounds;
-    }
-
     private <L extends LocationItem, N extends AtlasPunctual> void addOsmNode(
             final AtlasDataSet dataSet, final ProgressMonitor monitor, final long identifier,
             final Location location, final Iterable<Relation> relations,
@@ -260,17 +299,6 @@ public class AtlasDataSetBuilder
     {
         if (!nodeMap.containsKey(location))
         {
-            final Double lat = location.getLatitude().asDegrees();
-            final Double lon = location.getLongitude().asDegrees();
-            final LatLon latlon = new LatLon(lat, lon);
-            if (bounds == null)
-            {
-                bounds = new Bounds(latlon);
-            }
-            else
-            {
-                bounds.extend(latlon);
-            }
             final N nodeOSM = builder.get();
             if (identifier > 0)
             {
@@ -295,6 +323,10 @@ public class AtlasDataSetBuilder
     {
         for (final PolyLine polyLine : polyLines)
         {
+            if (monitor.isCanceled())
+            {
+                return;
+            }
             for (final Location shapePoint : polyLine)
             {
                 addOsmNode(dataSet, monitor, -1, shapePoint, new ArrayList<>(), nodeMap,
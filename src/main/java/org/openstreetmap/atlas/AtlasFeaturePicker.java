@@ -0,0 +1,168 @@
+package org.openstreetmap.atlas;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+import org.openstreetmap.atlas.data.AtlasDataSet;
+import org.openstreetmap.atlas.data.AtlasLinear;
+import org.openstreetmap.atlas.data.AtlasPrimitive;
+import org.openstreetmap.atlas.data.AtlasPunctual;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+
+/**
+ * Finds the features nearest to a point of a map view, within a tolerance in pixels, from the
+ * spatial index of the dataset. Nodes and points take precedence over ways.
+ *
+ * @author agent
+ */
+public class AtlasFeaturePicker
+{
+    private final AtlasDataSet dataSet;
+    private final NavigatableComponent view;
+
+    /**
+     * A feature with its distance to the picked point, in pixels.
+     *
+     * @author agent
+     */
+    private static final class Candidate<T extends AtlasPrimitive>
+    {
+        private final T primitive;
+        private final double distance;
+
+        Candidate(final T primitive, final double distance)
+        {
+            this.primitive = primitive;
+            this.distance = distance;
+        }
+    }
+
+    public AtlasFeaturePicker(final AtlasDataSet dataSet, final NavigatableComponent view)
+    {
+        this.dataSet = dataSet;
+        this.view = view;
+    }
+
+    /**
+     * @param point
+     *            The point in the view, in pixels
+     * @param tolerance
+     *            The maximum distance to a feature, in pixels
+     * @param count
+     *            The maximum number of features to return
+     * @return The features nearest to the point, nodes and points first, and then from the
+     *         nearest to the farthest
+     */
+    public List<AtlasPrimitive> pick(final Point2D point, final int tolerance, final int count)
+    {
+        final LatLon corner = this.view.getLatLon(point.getX() - tolerance,
+                point.getY() - tolerance);
+        final LatLon oppositeCorner = this.view.getLatLon(point.getX() + tolerance,
+                point.getY() + tolerance);
+        final BBox box = new BBox(corner.lon(), corner.lat(), oppositeCorner.lon(),
+                oppositeCorner.lat());
+
+        final List<AtlasPunctual> punctuals = this.dataSet.searchNodes(box).stream()
+                .filter(punctual -> !punctual.isShapePoint()).collect(Collectors.toList());
+        final List<AtlasPrimitive> result = new ArrayList<>(nearest(punctuals, point, tolerance,
+                count, punctual -> point.distance(this.view.getPoint2D(punctual.getCoor()))));
+        if (result.size() < count)
+        {
+            result.addAll(nearest(this.dataSet.searchWays(box), point, tolerance,
+                    count - result.size(), linear -> distance(linear, point)));
+        }
+        return result;
+    }
+
+    /**
+     * @return The distance in pixels from the point to the nearest segment of the linear
+     */
+    private double distance(final AtlasLinear<?> linear, final Point2D point)
+    {
+        final List<? extends AtlasPunctual> nodes = linear.getNodes();
+        if (nodes.isEmpty())
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+        Point2D previous = this.view.getPoint2D(nodes.get(0).getCoor());
+        double result = point.distance(previous);
+        for (int index = 1; index < nodes.size(); index++)
+        {
+            final Point2D current = this.view.getPoint2D(nodes.get(index).getCoor());
+            result = Math.min(result, Line2D.ptSegDist(previous.getX(), previous.getY(),
+                    current.getX(), current.getY(), point.getX(), point.getY()));
+            previous = current;
+        }
+        return result;
+    }
+
+    /**
+     * K-nearest search among candidates. The candidates are visited by increasing distance to
+     * their bounding box, which is never more than the distance to their geometry, and the
+     * visit stops as soon as no remaining candidate can be nearer than the ones kept.
+     */
+    private <T extends AtlasPrimitive> List<T> nearest(final List<T> primitives,
+            final Point2D point, final int tolerance, final int count,
+            final ToDoubleFunction<T> exactDistance)
+    {
+        final List<Candidate<T>> byBoxDistance = new ArrayList<>(primitives.size());
+        for (final T primitive : primitives)
+        {
+            final double distance = boxDistance(primitive.getBBox(), point);
+            if (distance <= tolerance)
+            {
+                byBoxDistance.add(new Candidate<>(primitive, distance));
+            }
+        }
+        final Comparator<Candidate<T>> nearestFirst = Comparator
+                .comparingDouble(candidate -> candidate.distance);
+        byBoxDistance.sort(nearestFirst);
+
+        final PriorityQueue<Candidate<T>> best = new PriorityQueue<>(nearestFirst.reversed());
+        for (final Candidate<T> boxCandidate : byBoxDistance)
+        {
+            if (best.size() == count && boxCandidate.distance >= best.peek().distance)
+            {
+                break;
+            }
+            final double distance = exactDistance.applyAsDouble(boxCandidate.primitive);
+            if (distance <= tolerance)
+            {
+                best.add(new Candidate<>(boxCandidate.primitive, distance));
+                if (best.size() > count)
+                {
+                    best.poll();
+                }
+            }
+        }
+        return best.stream().sorted(nearestFirst).map(candidate -> candidate.primitive)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return The distance in pixels from the point to the bounding box
+     */
+    private double boxDistance(final BBox box, final Point2D point)
+    {
+        final Point2D corner = this.view
+                .getPoint2D(new LatLon(box.getTopLeftLat(), box.getTopLeftLon()));
+        final Point2D oppositeCorner = this.view
+                .getPoint2D(new LatLon(box.getBottomRightLat(), box.getBottomRightLon()));
+        final Rectangle2D rectangle = new Rectangle2D.Double();
+        rectangle.setFrameFromDiagonal(corner, oppositeCorner);
+        final double horizontal = Math.max(0, Math.max(rectangle.getMinX() - point.getX(),
+                point.getX() - rectangle.getMaxX()));
+        final double vertical = Math.max(0, Math.max(rectangle.getMinY() - point.getY(),
+                point.getY() - rectangle.getMaxY()));
+        return Math.hypot(horizontal, vertical);
+    }
+}
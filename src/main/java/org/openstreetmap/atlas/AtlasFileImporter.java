@@ -2,13 +2,21 @@ package org.openstreetmap.atlas;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
+import java.awt.GraphicsEnvironment;
+import java.awt.GridLayout;
 import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.List;
 
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
 
 import org.openstreetmap.atlas.data.AtlasDataSet;
 import org.openstreetmap.atlas.geography.atlas.Atlas;
@@ -18,11 +26,13 @@ import org.openstreetmap.atlas.utilities.scalars.Duration;
 import org.openstreetmap.atlas.utilities.time.Time;
 import org.openstreetmap.josm.actions.ExtensionFileFilter;
 import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.io.importexport.FileImporter;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.gui.util.GuiHelper;
 import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.Logging;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +43,12 @@ import org.slf4j.LoggerFactory;
 public class AtlasFileImporter extends FileImporter
 {
     private static final Logger logger = LoggerFactory.getLogger(AtlasFileImporter.class);
+    private static final String PROFILE_PREFERENCE = "atlas.import.profile";
+    private static final String TAGS_PREFERENCE = "atlas.import.tags";
+    private static final String QUICK_LOOK_PREFERENCE = "atlas.import.quicklook";
+    private static final int DEFAULT_SAMPLE_PERCENT = 5;
+    private static final double DEFAULT_SAMPLE_CELL_DEGREES = 0.01;
+    private static final double PERCENT = 100.0;
     private AtlasReaderLayer layer;
     private Atlas atlas;
 
@@ -41,6 +57,63 @@ public class AtlasFileImporter extends FileImporter
         super(new ExtensionFileFilter("atlas,atlas.gz", "atlas", tr("Atlas file") + " (*.atlas)"));
     }
 
+    /**
+     * Asks which profile to import with, preselecting the one of the previous import.
+     *
+     * @return The profile, or null if the import is cancelled
+     */
+    private static AtlasImportProfile chooseProfile()
+    {
+        if (GraphicsEnvironment.isHeadless())
+        {
+            return AtlasImportProfile.EVERYTHING;
+        }
+        return GuiHelper.runInEDTAndWaitAndReturn(() ->
+        {
+            final List<String> names = new ArrayList<>();
+            AtlasImportProfile.presets().forEach(preset -> names.add(preset.getName()));
+            final int tagged = names.size();
+            names.add(tr("Features with tags"));
+            final JComboBox<String> profiles = new JComboBox<>(names.toArray(new String[0]));
+            profiles.setSelectedIndex(Math.max(0,
+                    Math.min(tagged, Config.getPref().getInt(PROFILE_PREFERENCE, 0))));
+            final JTextField tags = new JTextField(Config.getPref().get(TAGS_PREFERENCE,
+                    "highway, building=yes"));
+            tags.setEnabled(profiles.getSelectedIndex() == tagged);
+            final int samplePercent = Config.getPref().getInt("atlas.sample.percent",
+                    DEFAULT_SAMPLE_PERCENT);
+            final JCheckBox quickLook = new JCheckBox(
+                    tr("Quick look: only convert {0}% of the features of each area",
+                            samplePercent),
+                    Config.getPref().getBoolean(QUICK_LOOK_PREFERENCE, false));
+            profiles.addActionListener(event -> tags
+                    .setEnabled(profiles.getSelectedIndex() == tagged));
+            final JPanel panel = new JPanel(new GridLayout(0, 2));
+            panel.add(new JLabel(tr("Convert")));
+            panel.add(profiles);
+            panel.add(new JLabel(tr("Tags (key or key=value, comma separated)")));
+            panel.add(tags);
+            panel.add(quickLook);
+            if (JOptionPane.showConfirmDialog(Main.parent, panel, tr("Atlas import profile"),
+                    JOptionPane.OK_CANCEL_OPTION,
+                    JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION)
+            {
+                return null;
+            }
+            final int selected = profiles.getSelectedIndex();
+            Config.getPref().putInt(PROFILE_PREFERENCE, selected);
+            Config.getPref().put(TAGS_PREFERENCE, tags.getText());
+            Config.getPref().putBoolean(QUICK_LOOK_PREFERENCE, quickLook.isSelected());
+            final AtlasImportProfile result = selected == tagged
+                    ? AtlasImportProfile.withTags(tags.getText())
+                    : AtlasImportProfile.presets().get(selected);
+            return quickLook.isSelected() ? result.sampled(samplePercent / PERCENT,
+                    Config.getPref().getDouble("atlas.sample.cell.degrees",
+                            DEFAULT_SAMPLE_CELL_DEGREES))
+                    : result;
+        });
+    }
+
     public AtlasReaderLayer getLayer()
     {
         return this.layer;
@@ -50,6 +123,11 @@ public class AtlasFileImporter extends FileImporter
     public void importData(final File file, final ProgressMonitor monitor)
     {
         this.atlas = null;
+        final AtlasImportProfile profile = chooseProfile();
+        if (profile == null)
+        {
+            return;
+        }
         final org.openstreetmap.atlas.streaming.resource.File atlasFile = new org.openstreetmap.atlas.streaming.resource.File(
                 file.getPath());
         monitor.setCustomText(MessageFormat.format("Parsing Atlas: {}", file.getAbsolutePath()));
@@ -66,12 +144,16 @@ public class AtlasFileImporter extends FileImporter
         }
         final AtlasDataSetBuilder builder = new AtlasDataSetBuilder();
         final long start = System.currentTimeMillis();
-        final AtlasDataSet data = builder.build(this.atlas, monitor);
+        final AtlasDataSet data = builder.build(this.atlas, profile, monitor);
+        if (monitor.isCanceled())
+        {
+            return;
+        }
         final long completedIn = System.currentTimeMillis() - start;
         logger.info("Completed in: {} miliseconds", completedIn);
-        final Bounds bounds = builder.getBounds();
-        this.layer = new AtlasReaderLayer("Atlas: " + this.atlas.getName(), data, this.atlas,
-                bounds);
+        final Bounds bounds = data.getStatistics().getBounds();
+        this.layer = new AtlasReaderLayer(layerName(profile), data, this.atlas, bounds,
+                profile);
 
         GuiHelper.runInEDT(() ->
         {
@@ -90,6 +172,11 @@ public class AtlasFileImporter extends FileImporter
     public void importData(final List<File> files, final ProgressMonitor monitor)
             throws IOException, IllegalDataException
     {
+        final AtlasImportProfile profile = chooseProfile();
+        if (profile == null)
+        {
+            return;
+        }
         try
         {
             this.atlas = new AtlasResourceLoader().load(Iterables.stream(files)
@@ -106,12 +193,16 @@ public class AtlasFileImporter extends FileImporter
         {
             final AtlasDataSetBuilder builder = new AtlasDataSetBuilder();
             final Time start = Time.now();
-            final AtlasDataSet data = builder.build(this.atlas, monitor);
+            final AtlasDataSet data = builder.build(this.atlas, profile, monitor);
+            if (monitor.isCanceled())
+            {
+                return;
+            }
             final Duration completedIn = start.elapsedSince();
             logger.info("Completed in: {}", completedIn);
-            final Bounds bounds = builder.getBounds();
-            this.layer = new AtlasReaderLayer("Atlas: " + this.atlas.getName(), data, this.atlas,
-                    bounds);
+            final Bounds bounds = data.getStatistics().getBounds();
+            this.layer = new AtlasReaderLayer(layerName(profile), data, this.atlas, bounds,
+                    profile);
 
             GuiHelper.runInEDT(() ->
             {
@@ -130,6 +221,15 @@ public class AtlasFileImporter extends FileImporter
         }
     }
 
+    /**
+     * @return The name of the layer of the atlas, telling when it only shows a sample
+     */
+    private String layerName(final AtlasImportProfile profile)
+    {
+        return "Atlas: " + this.atlas.getName() + (profile.isSampled() ? " " + tr("(quick look)")
+                : "");
+    }
+
     @Override
     public boolean isBatchImporter()
     {
@@ -0,0 +1,251 @@
+package org.openstreetmap.atlas;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.JFileChooser;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+
+import org.openstreetmap.atlas.geography.Rectangle;
+import org.openstreetmap.atlas.geography.atlas.AtlasMetaData;
+import org.openstreetmap.atlas.geography.atlas.packed.PackedAtlas;
+import org.openstreetmap.atlas.geography.sharding.SlippyTile;
+import org.openstreetmap.atlas.streaming.compression.Decompressor;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Accessory of a file chooser showing the metadata of the Atlas files selected in it. Packed
+ * atlases load their fields lazily, so only the metadata field of each file is read, not the
+ * arrays of its entities. Files are read in parallel, and their metadata is kept for as long as
+ * they are not modified.
+ *
+ * @author agent
+ */
+public class AtlasFilePeek extends JPanel implements PropertyChangeListener
+{
+    private static final long serialVersionUID = -6237005216931962357L;
+    private static final int PREFERRED_WIDTH = 480;
+    private static final int PREFERRED_HEIGHT = 320;
+    private static final String GZIP = ".gz";
+    private static final ExecutorService PEEK_EXECUTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            Utils.newThreadFactory("atlas-peek-%d", Thread.NORM_PRIORITY));
+    // Metadata of the files already read, keyed by path and last modification time
+    private static final Map<String, Peek> PEEKS = new ConcurrentHashMap<>();
+
+    private final PeekModel model = new PeekModel();
+
+    /**
+     * What the metadata of a file tells about it.
+     *
+     * @author agent
+     */
+    private static final class Peek
+    {
+        private final String country;
+        private final String shard;
+        private final String counts;
+        private final String bounds;
+
+        Peek(final String country, final String shard, final String counts, final String bounds)
+        {
+            this.country = country;
+            this.shard = shard;
+            this.counts = counts;
+            this.bounds = bounds;
+        }
+    }
+
+    /**
+     * Table of the selected files and of their metadata, as it is read.
+     *
+     * @author agent
+     */
+    private static final class PeekModel extends AbstractTableModel
+    {
+        private static final long serialVersionUID = 5843418437180869931L;
+        private static final String[] COLUMNS = { tr("File"), tr("Country"), tr("Shard"),
+                tr("Entities"), tr("Bounds") };
+        private static final int FILE = 0;
+        private static final int COUNTRY = 1;
+        private static final int SHARD = 2;
+        private static final int COUNTS = 3;
+
+        private List<File> files = Collections.emptyList();
+
+        @Override
+        public int getColumnCount()
+        {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(final int column)
+        {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public int getRowCount()
+        {
+            return this.files.size();
+        }
+
+        @Override
+        public Object getValueAt(final int row, final int column)
+        {
+            final File file = this.files.get(row);
+            if (column == FILE)
+            {
+                return file.getName();
+            }
+            final Peek peek = PEEKS.get(key(file));
+            if (peek == null)
+            {
+                return column == COUNTRY ? tr("Reading...") : "";
+            }
+            switch (column)
+            {
+                case COUNTRY:
+                    return peek.country;
+                case SHARD:
+                    return peek.shard;
+                case COUNTS:
+                    return peek.counts;
+                default:
+                    return peek.bounds;
+            }
+        }
+
+        void setFiles(final List<File> files)
+        {
+            this.files = files;
+            fireTableDataChanged();
+        }
+    }
+
+    /**
+     * @param file
+     *            A file
+     * @return True if the file is named like an Atlas file
+     */
+    public static boolean isAtlasFile(final File file)
+    {
+        final String name = file.getName();
+        return name.endsWith(".atlas") || name.endsWith(".atlas" + GZIP);
+    }
+
+    private static String key(final File file)
+    {
+        return file.getAbsolutePath() + "@" + file.lastModified();
+    }
+
+    /**
+     * Reads the metadata of a file, and only it.
+     */
+    private static Peek peek(final File file)
+    {
+        try
+        {
+            final org.openstreetmap.atlas.streaming.resource.File resource =
+                    new org.openstreetmap.atlas.streaming.resource.File(file.getPath());
+            if (file.getName().endsWith(GZIP))
+            {
+                resource.setDecompressor(Decompressor.GZIP);
+            }
+            final AtlasMetaData metaData = PackedAtlas.load(resource).metaData();
+            final String shard = metaData.getShardName().orElse("");
+            String bounds = "";
+            try
+            {
+                final Rectangle tile = SlippyTile.forName(shard).bounds();
+                bounds = tile.lowerLeft().getLatitude().asDegrees() + ","
+                        + tile.lowerLeft().getLongitude().asDegrees() + ","
+                        + tile.upperRight().getLatitude().asDegrees() + ","
+                        + tile.upperRight().getLongitude().asDegrees();
+            }
+            catch (final Exception e)
+            {
+                // Shards that are not slippy tiles do not tell their bounds
+                Logging.trace(e);
+            }
+            final String counts = tr(
+                    "{0} nodes, {1} edges, {2} areas, {3} lines, {4} points, {5} relations",
+                    metaData.getSize().getNodeNumber(), metaData.getSize().getEdgeNumber(),
+                    metaData.getSize().getAreaNumber(), metaData.getSize().getLineNumber(),
+                    metaData.getSize().getPointNumber(),
+                    metaData.getSize().getRelationNumber());
+            return new Peek(metaData.getCountry().orElse(""), shard, counts, bounds);
+        }
+        catch (final Exception e)
+        {
+            Logging.warn(e.getMessage());
+            return new Peek(tr("Unreadable"), "", "", "");
+        }
+    }
+
+    public AtlasFilePeek()
+    {
+        super(new BorderLayout());
+        final JTable table = new JTable(this.model);
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        setPreferredSize(new Dimension(PREFERRED_WIDTH, PREFERRED_HEIGHT));
+    }
+
+    /**
+     * Shows the metadata of the files selected in a chooser, reading the ones that are not known
+     * yet in the background.
+     */
+    @Override
+    public void propertyChange(final PropertyChangeEvent event)
+    {
+        if (!JFileChooser.SELECTED_FILES_CHANGED_PROPERTY.equals(event.getPropertyName())
+                && !JFileChooser.SELECTED_FILE_CHANGED_PROPERTY.equals(event.getPropertyName()))
+        {
+            return;
+        }
+        final JFileChooser chooser = (JFileChooser) event.getSource();
+        final List<File> files = new ArrayList<>();
+        final File[] selected = chooser.isMultiSelectionEnabled() ? chooser.getSelectedFiles()
+                : new File[] { chooser.getSelectedFile() };
+        for (final File file : Arrays.asList(selected))
+        {
+            if (file != null && file.isFile() && isAtlasFile(file))
+            {
+                files.add(file);
+            }
+        }
+        this.model.setFiles(files);
+        for (final File file : files)
+        {
+            final String key = key(file);
+            if (!PEEKS.containsKey(key))
+            {
+                PEEK_EXECUTOR.execute(() ->
+                {
+                    PEEKS.computeIfAbsent(key, ignored -> peek(file));
+                    GuiHelper.runInEDT(this.model::fireTableDataChanged);
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.openstreetmap.atlas;
+
+/**
+ * Time budget of the frames of a layer. It keeps moving averages of the time the tiles take to
+ * render at each quality and of the time of the paints on the event dispatch thread, and picks the
+ * quality at which the tiles missing from a view can be rendered within the budget. Views that
+ * would take longer are first drawn with draft tiles of that quality, and then refined in the
+ * background with tiles of full quality.
+ *
+ * @author agent
+ */
+public class AtlasFrameBudget
+{
+    /**
+     * Tiles drawn with the map paint styles, at the level of detail of the view
+     */
+    public static final int FULL = 0;
+    /**
+     * Tiles drawn with the ways at a coarser level of detail than the view
+     */
+    public static final int COARSE = 1;
+    /**
+     * Tiles drawn with the styles of the lines and areas only, without labels nor icons, at a
+     * coarser level of detail than the view
+     */
+    public static final int NO_LABELS = 2;
+    /**
+     * Tiles drawn as a wireframe, without styles nor labels
+     */
+    public static final int WIREFRAME = 3;
+    public static final int QUALITIES = 4;
+    /**
+     * Number of levels of detail by which the geometries of lesser qualities are coarser than the
+     * scale calls for
+     */
+    public static final int COARSE_LEVELS = 2;
+    // Weight of the last measure in the moving averages
+    private static final double SMOOTHING = 0.2;
+    private static final double NANOSECONDS_PER_MILLISECOND = 1e6;
+
+    private final long budgetNanoseconds;
+    private final int workers;
+    private final double[] tileNanoseconds = new double[QUALITIES];
+    private double paintNanoseconds;
+    private double frameNanoseconds;
+
+    /**
+     * @param budgetMilliseconds
+     *            The time a frame should take to be drawn completely
+     * @param workers
+     *            The number of threads rendering tiles
+     */
+    public AtlasFrameBudget(final int budgetMilliseconds, final int workers)
+    {
+        this.budgetNanoseconds = (long) (budgetMilliseconds * NANOSECONDS_PER_MILLISECOND);
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Picks the quality of the draft tiles of a view, and estimates the cost of its frame.
+     *
+     * @param missingTiles
+     *            The number of tiles of the view that are not cached
+     * @param wireframe
+     *            True if the layer is drawn as a wireframe, where the tiles of the qualities past
+     *            {@link #COARSE} would be the same as the coarse ones
+     * @return The quality of the draft tiles to render before the tiles of full quality, or
+     *         {@link #FULL} if the view can be rendered at full quality within the budget
+     */
+    public synchronized int draftQuality(final int missingTiles, final boolean wireframe)
+    {
+        final int lastQuality = wireframe ? COARSE : WIREFRAME;
+        // Qualities that were never measured are assumed to fit
+        int result = FULL;
+        while (result < lastQuality && estimate(missingTiles, result) > this.budgetNanoseconds)
+        {
+            result++;
+        }
+        this.frameNanoseconds = this.paintNanoseconds + estimate(missingTiles, result);
+        return result;
+    }
+
+    /**
+     * @return The estimated time of the last frame to be drawn, from the paint on the event
+     *         dispatch thread to the last of its tiles of the quality drawn first, in milliseconds
+     */
+    public synchronized double getFrameMilliseconds()
+    {
+        return this.frameNanoseconds / NANOSECONDS_PER_MILLISECOND;
+    }
+
+    /**
+     * @return True if the paints on the event dispatch thread take longer than the budget
+     */
+    public synchronized boolean isPaintOverBudget()
+    {
+        return this.paintNanoseconds > this.budgetNanoseconds;
+    }
+
+    /**
+     * @param nanoseconds
+     *            The time of a paint on the event dispatch thread
+     */
+    public synchronized void recordPaint(final long nanoseconds)
+    {
+        this.paintNanoseconds = average(this.paintNanoseconds, nanoseconds);
+    }
+
+    /**
+     * @param quality
+     *            The quality of a tile
+     * @param nanoseconds
+     *            The time it took to render
+     */
+    public synchronized void recordTile(final int quality, final long nanoseconds)
+    {
+        this.tileNanoseconds[quality] = average(this.tileNanoseconds[quality], nanoseconds);
+    }
+
+    private static double average(final double average, final long measure)
+    {
+        return average == 0 ? measure : average + SMOOTHING * (measure - average);
+    }
+
+    private double estimate(final int missingTiles, final int quality)
+    {
+        return Math.ceil(missingTiles / (double) this.workers) * this.tileNanoseconds[quality];
+    }
+}
@@ -0,0 +1,376 @@
+package org.openstreetmap.atlas;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.imageio.ImageIO;
+
+import org.openstreetmap.atlas.data.AtlasDataSet;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.visitor.paint.PaintColors;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Renders an area of a dataset at any resolution, off screen and in tiles, without going through
+ * the map view. The image is either streamed to one PNG file, one row of tiles at a time, or
+ * written as a directory of tile files. Tiles are rendered in parallel on threads of the export,
+ * and a cancelled or failed export deletes what it wrote.
+ *
+ * @author agent
+ */
+public class AtlasImageExporter
+{
+    /**
+     * Widest image written to one PNG file, as a row of its tiles is held in memory. Wider images
+     * can be written as tiles.
+     */
+    public static final int MAXIMUM_PNG_WIDTH = 1 << 15;
+    private static final int TILE_SIZE = AtlasTileCache.TILE_SIZE;
+    private static final double HALF = 0.5;
+    private static final String PNG = "png";
+
+    private final AtlasDataSet dataSet;
+    private final AtlasWireframeRenderer wireframe;
+
+    /**
+     * Minimal PNG encoder writing an RGBA image one row of pixels at a time.
+     *
+     * @author agent
+     */
+    static final class PngStream implements AutoCloseable
+    {
+        private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A,
+                '\n' };
+        private static final int BIT_DEPTH = 8;
+        private static final int RGBA = 6;
+        private static final int BYTES_PER_PIXEL = 4;
+        private static final int CHUNK_SIZE = 1 << 16;
+        private static final int RED_SHIFT = 16;
+        private static final int GREEN_SHIFT = 8;
+        private static final int ALPHA_SHIFT = 24;
+
+        private final DataOutputStream output;
+        private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        private final DeflaterOutputStream deflater = new DeflaterOutputStream(this.compressed);
+        private final int width;
+        private final int[] pixels;
+        private final byte[] row;
+
+        PngStream(final File file, final int width, final int height) throws IOException
+        {
+            this.output = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file)));
+            this.width = width;
+            this.pixels = new int[width];
+            this.row = new byte[1 + width * BYTES_PER_PIXEL];
+            this.output.write(SIGNATURE);
+            final ByteArrayOutputStream header = new ByteArrayOutputStream();
+            final DataOutputStream headerData = new DataOutputStream(header);
+            headerData.writeInt(width);
+            headerData.writeInt(height);
+            headerData.writeByte(BIT_DEPTH);
+            headerData.writeByte(RGBA);
+            // Deflate compression, adaptive filtering, no interlace
+            headerData.writeByte(0);
+            headerData.writeByte(0);
+            headerData.writeByte(0);
+            chunk("IHDR", header.toByteArray(), header.size());
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                this.deflater.finish();
+                flushCompressed();
+                chunk("IEND", new byte[0], 0);
+            }
+            finally
+            {
+                this.output.close();
+            }
+        }
+
+        /**
+         * Appends the first rows of pixels of a row of tiles, from left to right, the last one
+         * being cropped to the width of the image.
+         */
+        void write(final BufferedImage[] tiles, final int rows) throws IOException
+        {
+            for (int line = 0; line < rows; line++)
+            {
+                int left = 0;
+                for (final BufferedImage tile : tiles)
+                {
+                    final int tileWidth = Math.min(tile.getWidth(), this.width - left);
+                    tile.getRGB(0, line, tileWidth, 1, this.pixels, left, tileWidth);
+                    left += tileWidth;
+                }
+                // No filter on the row
+                this.row[0] = 0;
+                for (int pixel = 0; pixel < this.width; pixel++)
+                {
+                    final int argb = this.pixels[pixel];
+                    final int offset = 1 + pixel * BYTES_PER_PIXEL;
+                    this.row[offset] = (byte) (argb >> RED_SHIFT);
+                    this.row[offset + 1] = (byte) (argb >> GREEN_SHIFT);
+                    this.row[offset + 2] = (byte) argb;
+                    this.row[offset + BYTES_PER_PIXEL - 1] = (byte) (argb >> ALPHA_SHIFT);
+                }
+                this.deflater.write(this.row);
+                if (this.compressed.size() >= CHUNK_SIZE)
+                {
+                    flushCompressed();
+                }
+            }
+        }
+
+        private void chunk(final String type, final byte[] data, final int length)
+                throws IOException
+        {
+            final byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+            final CRC32 crc = new CRC32();
+            crc.update(typeBytes);
+            crc.update(data, 0, length);
+            this.output.writeInt(length);
+            this.output.write(typeBytes);
+            this.output.write(data, 0, length);
+            this.output.writeInt((int) crc.getValue());
+        }
+
+        private void flushCompressed() throws IOException
+        {
+            if (this.compressed.size() > 0)
+            {
+                chunk("IDAT", this.compressed.toByteArray(), this.compressed.size());
+                this.compressed.reset();
+            }
+        }
+    }
+
+    /**
+     * @param dataSet
+     *            The dataset to render
+     * @param wireframe
+     *            The renderer of the wireframe, or null to render with the map paint styles
+     */
+    public AtlasImageExporter(final AtlasDataSet dataSet, final AtlasWireframeRenderer wireframe)
+    {
+        this.dataSet = dataSet;
+        this.wireframe = wireframe;
+    }
+
+    /**
+     * Renders an area to a PNG file, or to a directory of PNG tiles named after their row and
+     * column. Nothing is left of the image if the export is cancelled or fails.
+     *
+     * @param bounds
+     *            The area
+     * @param projection
+     *            The projection of the image
+     * @param width
+     *            The width of the image, in pixels, at most {@link #MAXIMUM_PNG_WIDTH} for a
+     *            single file. The height follows from the projection.
+     * @param target
+     *            The file or directory to write to
+     * @param tiled
+     *            True to write a directory of tiles
+     * @param monitor
+     *            The monitor of the progress, which can cancel the export
+     * @throws IOException
+     *             If the image cannot be written
+     */
+    public void export(final Bounds bounds, final Projection projection, final int width,
+            final File target, final boolean tiled, final ProgressMonitor monitor)
+            throws IOException
+    {
+        if (!tiled && width > MAXIMUM_PNG_WIDTH)
+        {
+            throw new IllegalArgumentException(
+                    "Images wider than " + MAXIMUM_PNG_WIDTH + " pixels need to be tiled");
+        }
+        final EastNorth minimum = projection.latlon2eastNorth(bounds.getMin());
+        final EastNorth maximum = projection.latlon2eastNorth(bounds.getMax());
+        final double scale = (maximum.east() - minimum.east()) / width;
+        final int height = (int) Math.ceil((maximum.north() - minimum.north()) / scale);
+        final int columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        final int rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        monitor.setTicksCount(rows);
+        final boolean created = tiled && !target.isDirectory();
+        if (created && !target.mkdirs())
+        {
+            throw new IOException("Unable to create " + target);
+        }
+        // Renderers are not thread safe: each tile takes one and returns it
+        final Queue<AtlasTileRenderer> renderers = new ConcurrentLinkedQueue<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                Utils.newThreadFactory("atlas-export-%d", Thread.NORM_PRIORITY));
+        final List<File> written = new ArrayList<>();
+        boolean complete = false;
+        try
+        {
+            try (PngStream png = tiled ? null : new PngStream(target, width, height))
+            {
+                for (int row = 0; row < rows && !monitor.isCanceled(); row++)
+                {
+                    final double north = maximum.north() - (row + HALF) * TILE_SIZE * scale;
+                    final int tileHeight = Math.min(TILE_SIZE, height - row * TILE_SIZE);
+                    final List<Future<BufferedImage>> tiles = new ArrayList<>(columns);
+                    for (int column = 0; column < columns; column++)
+                    {
+                        final EastNorth center = new EastNorth(
+                                minimum.east() + (column + HALF) * TILE_SIZE * scale, north);
+                        final File file = tiled
+                                ? new File(target, row + "_" + column + "." + PNG)
+                                : null;
+                        // Tiles on the right and bottom edges are cropped to the image
+                        final int tileWidth = Math.min(TILE_SIZE, width - column * TILE_SIZE);
+                        if (file != null)
+                        {
+                            written.add(file);
+                        }
+                        tiles.add(executor.submit(() ->
+                        {
+                            final BufferedImage tile = tile(renderers, center, scale);
+                            if (file == null)
+                            {
+                                return tile;
+                            }
+                            write(tile.getSubimage(0, 0, tileWidth, tileHeight), file);
+                            return null;
+                        }));
+                    }
+                    final BufferedImage[] images = new BufferedImage[columns];
+                    for (int column = 0; column < columns; column++)
+                    {
+                        images[column] = get(tiles.get(column));
+                    }
+                    if (png != null)
+                    {
+                        png.write(images, tileHeight);
+                    }
+                    monitor.worked(1);
+                }
+            }
+            complete = !monitor.isCanceled();
+        }
+        finally
+        {
+            executor.shutdownNow();
+            if (!complete)
+            {
+                delete(target, tiled, created, written);
+            }
+        }
+    }
+
+    private static void delete(final File target, final boolean tiled, final boolean created,
+            final List<File> written)
+    {
+        if (!tiled)
+        {
+            Utils.deleteFile(target);
+            return;
+        }
+        for (final File file : written)
+        {
+            if (file.exists())
+            {
+                Utils.deleteFile(file);
+            }
+        }
+        if (created)
+        {
+            Utils.deleteFile(target);
+        }
+    }
+
+    /**
+     * Waits for a tile, and throws what its rendering threw.
+     */
+    private static BufferedImage get(final Future<BufferedImage> tile) throws IOException
+    {
+        try
+        {
+            return tile.get();
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export interrupted");
+        }
+        catch (final ExecutionException e)
+        {
+            if (e.getCause() instanceof UncheckedIOException)
+            {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static void write(final BufferedImage image, final File file)
+    {
+        try
+        {
+            ImageIO.write(image, PNG, file);
+        }
+        catch (final IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Renders a tile over the background color of the map.
+     */
+    private BufferedImage tile(final Queue<AtlasTileRenderer> renderers, final EastNorth center,
+            final double scale)
+    {
+        AtlasTileRenderer renderer = renderers.poll();
+        if (renderer == null)
+        {
+            renderer = new AtlasTileRenderer(this.dataSet, this.wireframe);
+        }
+        final BufferedImage result = new BufferedImage(TILE_SIZE, TILE_SIZE,
+                BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D graphics = result.createGraphics();
+        try
+        {
+            graphics.setColor(PaintColors.BACKGROUND.get());
+            graphics.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+            graphics.drawImage(renderer.render(center, scale, this.wireframe != null), 0, 0,
+                    null);
+        }
+        finally
+        {
+            graphics.dispose();
+            renderers.offer(renderer);
+        }
+        return result;
+    }
+}
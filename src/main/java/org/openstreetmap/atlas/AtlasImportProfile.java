@@ -0,0 +1,285 @@
+package org.openstreetmap.atlas;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.openstreetmap.atlas.geography.Location;
+import org.openstreetmap.atlas.geography.atlas.items.Area;
+import org.openstreetmap.atlas.geography.atlas.items.AtlasEntity;
+import org.openstreetmap.atlas.geography.atlas.items.Edge;
+import org.openstreetmap.atlas.geography.atlas.items.ItemType;
+import org.openstreetmap.atlas.geography.atlas.items.Line;
+import org.openstreetmap.atlas.geography.atlas.items.Node;
+import org.openstreetmap.atlas.geography.atlas.items.Point;
+
+/**
+ * What to convert from an atlas into a dataset: the types of entities, and the tags that the
+ * features of those types need to have. Entities of the other types, and features without the
+ * tags, are skipped before any primitive or shape point is created for them. A profile can also
+ * keep only a sample of the features, for a quick look at a large atlas.
+ *
+ * @author agent
+ */
+public final class AtlasImportProfile
+{
+    private static final String ANY_VALUE = "*";
+    private static final String TERM_SEPARATOR = ",";
+    private static final String VALUE_SEPARATOR = "=";
+    private static final double PERCENT = 100.0;
+    private static final int COLUMN_BITS = 32;
+    private static final long COLUMN_MASK = (1L << COLUMN_BITS) - 1;
+
+    public static final AtlasImportProfile EVERYTHING = new AtlasImportProfile(tr("Everything"),
+            EnumSet.allOf(ItemType.class), null);
+    public static final AtlasImportProfile ROAD_NETWORK = new AtlasImportProfile(
+            tr("Road network only"), EnumSet.of(ItemType.NODE, ItemType.EDGE), null);
+    public static final AtlasImportProfile BUILDINGS = new AtlasImportProfile(
+            tr("Buildings only"), EnumSet.of(ItemType.AREA, ItemType.RELATION),
+            Collections.singletonList(new String[] { "building", ANY_VALUE }));
+
+    private final String name;
+    private final Set<ItemType> types;
+    // Key and value of each tag of which a feature needs one, or null to accept all the features
+    private final List<String[]> terms;
+    // Fraction of the features of each cell to keep, 1 to keep them all
+    private final double sampleFraction;
+    private final double cellDegrees;
+    // The same profile, keeping all the features
+    private final AtlasImportProfile unsampled;
+
+    /**
+     * Deterministic sample, stratified in space: the features are counted per cell of a grid, in
+     * the order of the atlas, and every feature that brings the count of a cell to a new multiple
+     * of the inverse of the fraction is kept, starting with the first one. Sparse cells keep their
+     * first feature.
+     *
+     * @author agent
+     */
+    static final class Sample implements Predicate<AtlasEntity>
+    {
+        private final double fraction;
+        private final double cellDegrees;
+        private final Map<Long, int[]> counts = new HashMap<>();
+
+        Sample(final double fraction, final double cellDegrees)
+        {
+            this.fraction = fraction;
+            this.cellDegrees = cellDegrees;
+        }
+
+        @Override
+        public boolean test(final AtlasEntity entity)
+        {
+            // Reversed edges draw the same way as their master edge
+            if (entity instanceof Edge && entity.getIdentifier() < 0)
+            {
+                return false;
+            }
+            final Location center = entity.bounds().center();
+            return keep(center.getLatitude().asDegrees(), center.getLongitude().asDegrees());
+        }
+
+        /**
+         * Counts a feature in the cell of its center.
+         *
+         * @return True if the feature is part of the sample
+         */
+        boolean keep(final double latitude, final double longitude)
+        {
+            final long row = (long) Math.floor(latitude / this.cellDegrees);
+            final long column = (long) Math.floor(longitude / this.cellDegrees);
+            final int[] count = this.counts.computeIfAbsent(
+                    row << COLUMN_BITS | column & COLUMN_MASK, key -> new int[1]);
+            final boolean result = count[0] == 0 || Math
+                    .floor((count[0] + 1) * this.fraction) > Math.floor(count[0] * this.fraction);
+            count[0]++;
+            return result;
+        }
+    }
+
+    /**
+     * @return The predefined profiles, the first one converting everything
+     */
+    public static List<AtlasImportProfile> presets()
+    {
+        return Arrays.asList(EVERYTHING, ROAD_NETWORK, BUILDINGS);
+    }
+
+    /**
+     * @param filter
+     *            Comma separated tags, as "key" or "key=value", a value of "*" standing for any
+     *            value
+     * @return A profile converting the features of all types that have any of the tags
+     */
+    public static AtlasImportProfile withTags(final String filter)
+    {
+        final List<String[]> terms = new ArrayList<>();
+        for (final String term : filter.split(TERM_SEPARATOR))
+        {
+            final String[] keyValue = term.split(VALUE_SEPARATOR, 2);
+            final String key = keyValue[0].trim();
+            if (!key.isEmpty())
+            {
+                terms.add(new String[] { key,
+                        keyValue.length > 1 ? keyValue[1].trim() : ANY_VALUE });
+            }
+        }
+        return new AtlasImportProfile(tr("Features tagged {0}", filter.trim()),
+                EnumSet.allOf(ItemType.class), terms.isEmpty() ? null : terms);
+    }
+
+    private AtlasImportProfile(final String name, final Set<ItemType> types,
+            final List<String[]> terms)
+    {
+        this.name = name;
+        this.types = types;
+        this.terms = terms;
+        this.sampleFraction = 1;
+        this.cellDegrees = 0;
+        this.unsampled = this;
+    }
+
+    private AtlasImportProfile(final AtlasImportProfile unsampled, final double sampleFraction,
+            final double cellDegrees)
+    {
+        this.name = tr("{0}, {1}% sample", unsampled.name,
+                Math.round(sampleFraction * PERCENT));
+        this.types = unsampled.types;
+        this.terms = unsampled.terms;
+        this.sampleFraction = sampleFraction;
+        this.cellDegrees = cellDegrees;
+        this.unsampled = unsampled;
+    }
+
+    /**
+     * Selects the features to convert from one pass over the entities of a type. The sample of a
+     * sampled profile depends on the order of the features, so every pass needs its own filter.
+     *
+     * @return A new filter of the features of a type that the profile includes
+     */
+    public <E extends AtlasEntity> Predicate<E> filter()
+    {
+        if (!isSampled())
+        {
+            return this::hasTags;
+        }
+        final Sample sample = new Sample(this.sampleFraction, this.cellDegrees);
+        return entity -> hasTags(entity) && sample.test(entity);
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * @return True if the profile only keeps a sample of the features
+     */
+    public boolean isSampled()
+    {
+        return this.sampleFraction < 1;
+    }
+
+    /**
+     * @param type
+     *            A type of entity
+     * @return True if the entities of that type are converted
+     */
+    public boolean includes(final ItemType type)
+    {
+        return this.types.contains(type);
+    }
+
+    /**
+     * @param entity
+     *            An entity of the atlas
+     * @return True if the entity is of a type and has tags that the profile converts, whether it
+     *         is part of the sample or not
+     */
+    public boolean includes(final AtlasEntity entity)
+    {
+        final ItemType type;
+        if (entity instanceof Node)
+        {
+            type = ItemType.NODE;
+        }
+        else if (entity instanceof Point)
+        {
+            type = ItemType.POINT;
+        }
+        else if (entity instanceof Edge)
+        {
+            // Only master edges are converted
+            type = entity.getIdentifier() > 0 ? ItemType.EDGE : null;
+        }
+        else if (entity instanceof Line)
+        {
+            type = ItemType.LINE;
+        }
+        else if (entity instanceof Area)
+        {
+            type = ItemType.AREA;
+        }
+        else
+        {
+            type = ItemType.RELATION;
+        }
+        return type != null && includes(type) && hasTags(entity);
+    }
+
+    /**
+     * @param fraction
+     *            The fraction of the features of each cell to keep, between 0 and 1
+     * @param cellDegrees
+     *            The size of the cells of the grid, in degrees
+     * @return The same profile, keeping only a sample of the features of each cell of a grid
+     */
+    public AtlasImportProfile sampled(final double fraction, final double cellDegrees)
+    {
+        return new AtlasImportProfile(this.unsampled, fraction, cellDegrees);
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.name;
+    }
+
+    /**
+     * @return The same profile, keeping all the features
+     */
+    public AtlasImportProfile unsampled()
+    {
+        return this.unsampled;
+    }
+
+    /**
+     * @return True if the feature has any of the tags of the profile
+     */
+    private boolean hasTags(final AtlasEntity entity)
+    {
+        if (this.terms == null)
+        {
+            return true;
+        }
+        final Map<String, String> tags = entity.getTags();
+        for (final String[] term : this.terms)
+        {
+            final String value = tags.get(term[0]);
+            if (value != null && (ANY_VALUE.equals(term[1]) || term[1].equals(value)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
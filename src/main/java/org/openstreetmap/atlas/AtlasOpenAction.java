@@ -0,0 +1,61 @@
+package org.openstreetmap.atlas;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.util.Arrays;
+
+import javax.swing.JFileChooser;
+import javax.swing.filechooser.FileFilter;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.actions.JosmAction;
+import org.openstreetmap.josm.actions.OpenFileAction;
+
+/**
+ * Opens Atlas files from a file chooser that previews the metadata of the selected files, to pick
+ * shards without loading them.
+ *
+ * @author agent
+ */
+public class AtlasOpenAction extends JosmAction
+{
+    private static final long serialVersionUID = 3327745262806618047L;
+
+    public AtlasOpenAction()
+    {
+        super(tr("Open Atlas files..."), "open",
+                tr("Open Atlas files, previewing their metadata before loading them"), null,
+                false);
+    }
+
+    @Override
+    public void actionPerformed(final ActionEvent event)
+    {
+        final JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle(tr("Open Atlas files"));
+        chooser.setMultiSelectionEnabled(true);
+        chooser.setFileFilter(new FileFilter()
+        {
+            @Override
+            public boolean accept(final File file)
+            {
+                return file.isDirectory() || AtlasFilePeek.isAtlasFile(file);
+            }
+
+            @Override
+            public String getDescription()
+            {
+                return tr("Atlas files") + " (*.atlas, *.atlas.gz)";
+            }
+        });
+        final AtlasFilePeek peek = new AtlasFilePeek();
+        chooser.setAccessory(peek);
+        chooser.addPropertyChangeListener(peek);
+        if (chooser.showOpenDialog(Main.parent) == JFileChooser.APPROVE_OPTION)
+        {
+            OpenFileAction.openFiles(Arrays.asList(chooser.getSelectedFiles()));
+        }
+    }
+}
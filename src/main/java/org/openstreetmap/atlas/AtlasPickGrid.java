@@ -0,0 +1,495 @@
+package org.openstreetmap.atlas;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+import org.openstreetmap.atlas.data.AtlasDataSet;
+import org.openstreetmap.atlas.data.AtlasLinear;
+import org.openstreetmap.atlas.data.AtlasMultipolygon;
+import org.openstreetmap.atlas.data.AtlasPrimitive;
+import org.openstreetmap.atlas.data.AtlasPunctual;
+import org.openstreetmap.atlas.data.AtlasRelation;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.ProjectionBounds;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.gui.MapViewState;
+
+/**
+ * Grid of the projected geometry of the features of a dataset at one scale, to find the feature
+ * nearest to the mouse from the few cells around it. The grid is made of square chunks of the
+ * projected plane, built as the view pans over them and kept for as long as the scale and the
+ * projection stay the same.
+ *
+ * @author agent
+ */
+public final class AtlasPickGrid
+{
+    static final int CELL_SIZE = 16;
+    static final int CHUNK_SIZE = 512;
+    private static final int CELLS = CHUNK_SIZE / CELL_SIZE;
+    private static final int COORDINATES_PER_ENTRY = 4;
+    private static final int THREE = 3;
+    // Segments are registered in the cells of samples taken every half cell along them
+    private static final double SAMPLE_STEP = CELL_SIZE / 2.0;
+    private static final double SCALE_TOLERANCE = 1e-9;
+    private static final int MAXIMUM_CHUNKS = 64;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int CHUNK_BITS = 32;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+    private final AtlasDataSet dataSet;
+    private final Projection projection;
+    // East-north units per pixel
+    private final double scale;
+    // Least recently used chunks, keyed by their column and row
+    private final Map<Long, Chunk> chunks = new LinkedHashMap<Long, Chunk>(INITIAL_CAPACITY,
+            LOAD_FACTOR, true)
+    {
+        private static final long serialVersionUID = -2384905384718150233L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, Chunk> eldest)
+        {
+            return size() > MAXIMUM_CHUNKS;
+        }
+    };
+
+    /**
+     * Growable list of the segments of the projected features.
+     *
+     * @author agent
+     */
+    static final class Entries
+    {
+        private float[] coordinates = new float[COORDINATES_PER_ENTRY];
+        private int[] ordinals = new int[1];
+        private boolean[] punctual = new boolean[1];
+        private int size;
+
+        void add(final Point2D start, final Point2D end, final int ordinal,
+                final boolean isPunctual)
+        {
+            if (this.size == this.ordinals.length)
+            {
+                this.coordinates = Arrays.copyOf(this.coordinates, 2 * this.coordinates.length);
+                this.ordinals = Arrays.copyOf(this.ordinals, 2 * this.size);
+                this.punctual = Arrays.copyOf(this.punctual, 2 * this.size);
+            }
+            final int offset = this.size * COORDINATES_PER_ENTRY;
+            this.coordinates[offset] = (float) start.getX();
+            this.coordinates[offset + 1] = (float) start.getY();
+            this.coordinates[offset + 2] = (float) end.getX();
+            this.coordinates[offset + THREE] = (float) end.getY();
+            this.ordinals[this.size] = ordinal;
+            this.punctual[this.size] = isPunctual;
+            this.size++;
+        }
+    }
+
+    /**
+     * Nearest features found so far, punctual and linear.
+     *
+     * @author agent
+     */
+    static final class Nearest
+    {
+        private int punctual = -1;
+        private double punctualDistance;
+        private int linear = -1;
+        private double linearDistance;
+
+        Nearest(final double tolerance)
+        {
+            this.punctualDistance = tolerance;
+            this.linearDistance = tolerance;
+        }
+
+        /**
+         * @return The ordinal of the nearest node or point if any, or else of the nearest way, or
+         *         -1
+         */
+        int getOrdinal()
+        {
+            return this.punctual >= 0 ? this.punctual : this.linear;
+        }
+    }
+
+    /**
+     * Square of the grid, with its entries in pixels from its top left corner.
+     *
+     * @author agent
+     */
+    static final class Chunk
+    {
+        private final float[] coordinates;
+        private final int[] ordinals;
+        private final boolean[] punctual;
+        // Entries going through each cell
+        private final int[] cellOffsets;
+        private final int[] cellEntries;
+
+        Chunk(final Entries entries)
+        {
+            this.coordinates = entries.coordinates;
+            this.ordinals = entries.ordinals;
+            this.punctual = entries.punctual;
+            // Count the entries of each cell, then fill them in
+            this.cellOffsets = new int[CELLS * CELLS + 1];
+            for (int entry = 0; entry < entries.size; entry++)
+            {
+                forEachCell(entry, cell -> this.cellOffsets[cell + 1]++);
+            }
+            for (int cell = 0; cell < CELLS * CELLS; cell++)
+            {
+                this.cellOffsets[cell + 1] += this.cellOffsets[cell];
+            }
+            this.cellEntries = new int[this.cellOffsets[CELLS * CELLS]];
+            final int[] cursors = Arrays.copyOf(this.cellOffsets, CELLS * CELLS);
+            for (int entry = 0; entry < entries.size; entry++)
+            {
+                final int current = entry;
+                forEachCell(entry, cell ->
+                {
+                    this.cellEntries[cursors[cell]] = current;
+                    cursors[cell]++;
+                });
+            }
+        }
+
+        /**
+         * Looks for entries nearer to a point than the ones found so far.
+         */
+        void nearest(final double x, final double y, final Nearest result)
+        {
+            // Any point of a segment is within half a step of a sample
+            final double radius = Math.max(result.punctualDistance, result.linearDistance)
+                    + SAMPLE_STEP / 2;
+            final int minimumColumn = Math.max(0, (int) Math.floor((x - radius) / CELL_SIZE));
+            final int maximumColumn = Math.min(CELLS - 1,
+                    (int) Math.floor((x + radius) / CELL_SIZE));
+            final int minimumRow = Math.max(0, (int) Math.floor((y - radius) / CELL_SIZE));
+            final int maximumRow = Math.min(CELLS - 1, (int) Math.floor((y + radius) / CELL_SIZE));
+            for (int row = minimumRow; row <= maximumRow; row++)
+            {
+                for (int column = minimumColumn; column <= maximumColumn; column++)
+                {
+                    final int cell = row * CELLS + column;
+                    for (int index = this.cellOffsets[cell]; index < this.cellOffsets[cell
+                            + 1]; index++)
+                    {
+                        final int entry = this.cellEntries[index];
+                        final int offset = entry * COORDINATES_PER_ENTRY;
+                        final double distance = Line2D.ptSegDist(this.coordinates[offset],
+                                this.coordinates[offset + 1], this.coordinates[offset + 2],
+                                this.coordinates[offset + THREE], x, y);
+                        if (this.punctual[entry] && distance <= result.punctualDistance)
+                        {
+                            result.punctual = this.ordinals[entry];
+                            result.punctualDistance = distance;
+                        }
+                        else if (!this.punctual[entry] && distance <= result.linearDistance)
+                        {
+                            result.linear = this.ordinals[entry];
+                            result.linearDistance = distance;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Visits the cells of the samples taken every half cell along the segment of an entry,
+         * after clipping it to the chunk.
+         */
+        private void forEachCell(final int entry, final IntConsumer visitor)
+        {
+            final int offset = entry * COORDINATES_PER_ENTRY;
+            final double startX = this.coordinates[offset];
+            final double startY = this.coordinates[offset + 1];
+            final double deltaX = this.coordinates[offset + 2] - startX;
+            final double deltaY = this.coordinates[offset + THREE] - startY;
+
+            // Liang-Barsky clipping of the segment to the chunk
+            final double[] directions = { -deltaX, deltaX, -deltaY, deltaY };
+            final double[] distances = { startX, CHUNK_SIZE - startX, startY,
+                    CHUNK_SIZE - startY };
+            double first = 0;
+            double last = 1;
+            for (int side = 0; side < directions.length; side++)
+            {
+                if (directions[side] == 0)
+                {
+                    if (distances[side] < 0)
+                    {
+                        return;
+                    }
+                }
+                else if (directions[side] < 0)
+                {
+                    first = Math.max(first, distances[side] / directions[side]);
+                }
+                else
+                {
+                    last = Math.min(last, distances[side] / directions[side]);
+                }
+            }
+            if (first > last)
+            {
+                return;
+            }
+
+            final double length = (last - first) * Math.hypot(deltaX, deltaY);
+            final int samples = (int) Math.ceil(length / SAMPLE_STEP) + 1;
+            int previous = -1;
+            for (int sample = 0; sample < samples; sample++)
+            {
+                final double ratio = first
+                        + (samples == 1 ? 0 : sample * (last - first) / (samples - 1));
+                final int column = (int) Math.floor((startX + ratio * deltaX) / CELL_SIZE);
+                final int row = (int) Math.floor((startY + ratio * deltaY) / CELL_SIZE);
+                if (column < 0 || column >= CELLS || row < 0 || row >= CELLS)
+                {
+                    continue;
+                }
+                final int cell = row * CELLS + column;
+                if (cell != previous)
+                {
+                    visitor.accept(cell);
+                    previous = cell;
+                }
+            }
+        }
+    }
+
+    private static long key(final long column, final long row)
+    {
+        return column << CHUNK_BITS | row & CHUNK_MASK;
+    }
+
+    /**
+     * Creates an empty grid at the scale and with the projection of a state of a map view.
+     *
+     * @param dataSet
+     *            The dataset
+     * @param state
+     *            The state of the map view
+     */
+    public AtlasPickGrid(final AtlasDataSet dataSet, final MapViewState state)
+    {
+        this.dataSet = dataSet;
+        this.projection = state.getProjection();
+        this.scale = state.getScale();
+    }
+
+    /**
+     * Builds the chunks of a state of the map view that are missing.
+     *
+     * @param state
+     *            A state of the map view this grid is for
+     */
+    public void cover(final MapViewState state)
+    {
+        // Assembles the multipolygons here rather than on the first hover
+        this.dataSet.getMultipolygons();
+        final long[] range = chunkRange(state);
+        for (long column = range[0]; column <= range[2]; column++)
+        {
+            for (long row = range[1]; row <= range[THREE]; row++)
+            {
+                final Long key = key(column, row);
+                final boolean missing;
+                synchronized (this.chunks)
+                {
+                    missing = this.chunks.get(key) == null;
+                }
+                if (missing)
+                {
+                    final Chunk chunk = build(column, row);
+                    synchronized (this.chunks)
+                    {
+                        this.chunks.put(key, chunk);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param state
+     *            A state of the map view this grid is for
+     * @return True if all the chunks in view are built
+     */
+    public boolean covers(final MapViewState state)
+    {
+        final long[] range = chunkRange(state);
+        synchronized (this.chunks)
+        {
+            for (long column = range[0]; column <= range[2]; column++)
+            {
+                for (long row = range[1]; row <= range[THREE]; row++)
+                {
+                    if (!this.chunks.containsKey(key(column, row)))
+                    {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param current
+     *            The current state of the map view
+     * @return True if the view has the scale and projection of this grid
+     */
+    public boolean isFor(final MapViewState current)
+    {
+        return current.getProjection() == this.projection
+                && Math.abs(current.getScale() - this.scale) <= this.scale * SCALE_TOLERANCE;
+    }
+
+    /**
+     * @param state
+     *            The current state of the map view, which this grid is for
+     * @param point
+     *            A point of the view, in pixels
+     * @param tolerance
+     *            The maximum distance to a feature, in pixels
+     * @return The node or point nearest to the point within the tolerance if any, or else the
+     *         nearest way within the tolerance, or else the smallest multipolygon around the
+     *         point, or else null
+     */
+    public AtlasPrimitive nearest(final MapViewState state, final Point2D point,
+            final int tolerance)
+    {
+        final EastNorth eastNorth = state.getForView(point.getX(), point.getY()).getEastNorth();
+        final double x = eastNorth.east() / this.scale;
+        final double y = -eastNorth.north() / this.scale;
+        final Nearest result = new Nearest(tolerance);
+        final double radius = tolerance + SAMPLE_STEP / 2;
+        for (long column = (long) Math.floor((x - radius) / CHUNK_SIZE); column <= (long) Math
+                .floor((x + radius) / CHUNK_SIZE); column++)
+        {
+            for (long row = (long) Math.floor((y - radius) / CHUNK_SIZE); row <= (long) Math
+                    .floor((y + radius) / CHUNK_SIZE); row++)
+            {
+                final Chunk chunk;
+                synchronized (this.chunks)
+                {
+                    chunk = this.chunks.get(key(column, row));
+                }
+                if (chunk != null)
+                {
+                    chunk.nearest(x - column * CHUNK_SIZE, y - row * CHUNK_SIZE, result);
+                }
+            }
+        }
+        if (result.getOrdinal() >= 0)
+        {
+            return this.dataSet.getPrimitiveByOrdinal(result.getOrdinal());
+        }
+        return smallestMultipolygon(this.projection.eastNorth2latlon(eastNorth));
+    }
+
+    /**
+     * Projects the features of a chunk, leaving out the segments that are away from it.
+     */
+    private Chunk build(final long column, final long row)
+    {
+        final double left = column * (double) CHUNK_SIZE;
+        final double top = row * (double) CHUNK_SIZE;
+        final Bounds bounds = this.projection.getLatLonBoundsBox(new ProjectionBounds(
+                new EastNorth(left * this.scale, -(top + CHUNK_SIZE) * this.scale),
+                new EastNorth((left + CHUNK_SIZE) * this.scale, -top * this.scale)));
+        final BBox box = new BBox(bounds.getMinLon(), bounds.getMinLat(), bounds.getMaxLon(),
+                bounds.getMaxLat());
+        final Entries entries = new Entries();
+        for (final AtlasPunctual node : this.dataSet.searchNodes(box))
+        {
+            if (!node.isShapePoint())
+            {
+                final Point2D point = project(node.getCoor(), left, top);
+                entries.add(point, point, node.getOrdinal(), true);
+            }
+        }
+        for (final AtlasLinear<AtlasPunctual> way : this.dataSet.searchWays(box))
+        {
+            final List<AtlasPunctual> nodes = way.getNodes();
+            Point2D previous = null;
+            for (int index = 1; index < nodes.size(); index++)
+            {
+                final LatLon start = nodes.get(index - 1).getCoor();
+                final LatLon end = nodes.get(index).getCoor();
+                if (Math.max(start.lat(), end.lat()) < bounds.getMinLat()
+                        || Math.min(start.lat(), end.lat()) > bounds.getMaxLat()
+                        || Math.max(start.lon(), end.lon()) < bounds.getMinLon()
+                        || Math.min(start.lon(), end.lon()) > bounds.getMaxLon())
+                {
+                    previous = null;
+                    continue;
+                }
+                final Point2D projectedStart = previous != null ? previous
+                        : project(start, left, top);
+                previous = project(end, left, top);
+                entries.add(projectedStart, previous, way.getOrdinal(), false);
+            }
+        }
+        return new Chunk(entries);
+    }
+
+    /**
+     * @return The first column and row, and the last column and row, of the chunks in view
+     */
+    private long[] chunkRange(final MapViewState state)
+    {
+        final ProjectionBounds view = state.getViewArea().getProjectionBounds();
+        return new long[] { (long) Math.floor(view.minEast / this.scale / CHUNK_SIZE),
+                (long) Math.floor(-view.maxNorth / this.scale / CHUNK_SIZE),
+                (long) Math.floor(view.maxEast / this.scale / CHUNK_SIZE),
+                (long) Math.floor(-view.minNorth / this.scale / CHUNK_SIZE) };
+    }
+
+    /**
+     * @return The pixel of a location, from the top left corner of a chunk
+     */
+    private Point2D project(final LatLon location, final double left, final double top)
+    {
+        final EastNorth eastNorth = this.projection.latlon2eastNorth(location);
+        return new Point2D.Double(eastNorth.east() / this.scale - left,
+                -eastNorth.north() / this.scale - top);
+    }
+
+    private AtlasRelation smallestMultipolygon(final LatLon location)
+    {
+        AtlasRelation result = null;
+        double smallest = Double.MAX_VALUE;
+        for (final AtlasRelation relation : this.dataSet.searchRelations(
+                new BBox(location.lon(), location.lat(), location.lon(), location.lat())))
+        {
+            final AtlasMultipolygon multipolygon = this.dataSet.getMultipolygon(relation);
+            if (multipolygon == null || !multipolygon.contains(location))
+            {
+                continue;
+            }
+            final BBox bounds = multipolygon.getBounds();
+            final double area = bounds.isValid() ? bounds.width() * bounds.height()
+                    : Double.MAX_VALUE;
+            if (area < smallest)
+            {
+                result = relation;
+                smallest = area;
+            }
+        }
+        return result;
+    }
+}
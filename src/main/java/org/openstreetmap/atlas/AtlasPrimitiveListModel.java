@@ -0,0 +1,118 @@
+package org.openstreetmap.atlas;
+
+import java.util.Arrays;
+
+import javax.swing.AbstractListModel;
+
+import org.openstreetmap.atlas.AtlasReaderDialog.PrintablePrimitive;
+import org.openstreetmap.atlas.data.AtlasDataSet;
+import org.openstreetmap.atlas.data.AtlasPrimitive;
+
+/**
+ * Virtual list of primitives, backed by their sorted ordinals in the dataset. Appending must be
+ * done on the event dispatch thread once the model is displayed.
+ *
+ * @author agent
+ */
+public class AtlasPrimitiveListModel extends AbstractListModel<PrintablePrimitive>
+{
+    private static final long serialVersionUID = -3092460298214512381L;
+
+    private final transient AtlasDataSet dataSet;
+    private int[] ordinals;
+    private int size;
+
+    /**
+     * Creates an empty list, to be filled with {@link #append(int[])}.
+     *
+     * @param dataSet
+     *            The dataset the ordinals refer to
+     */
+    public AtlasPrimitiveListModel(final AtlasDataSet dataSet)
+    {
+        this(dataSet, new int[0]);
+    }
+
+    /**
+     * @param dataSet
+     *            The dataset the ordinals refer to
+     * @param ordinals
+     *            The ordinals of the primitives to list, in ascending order
+     */
+    public AtlasPrimitiveListModel(final AtlasDataSet dataSet, final int[] ordinals)
+    {
+        this.dataSet = dataSet;
+        this.ordinals = ordinals;
+        this.size = ordinals.length;
+    }
+
+    /**
+     * Appends rows at the end of the list.
+     *
+     * @param more
+     *            The ordinals of the primitives to append, in ascending order and all greater
+     *            than the ones already listed
+     */
+    public void append(final int[] more)
+    {
+        if (more.length == 0)
+        {
+            return;
+        }
+        if (this.size + more.length > this.ordinals.length)
+        {
+            this.ordinals = Arrays.copyOf(this.ordinals,
+                    Math.max(this.size + more.length, 2 * this.ordinals.length));
+        }
+        final int first = this.size;
+        System.arraycopy(more, 0, this.ordinals, first, more.length);
+        this.size += more.length;
+        fireIntervalAdded(this, first, this.size - 1);
+    }
+
+    @Override
+    public PrintablePrimitive getElementAt(final int index)
+    {
+        return new PrintablePrimitive(index, getPrimitive(index));
+    }
+
+    /**
+     * @return The ordinals of the listed primitives, in ascending order
+     */
+    public int[] getOrdinals()
+    {
+        return Arrays.copyOf(this.ordinals, this.size);
+    }
+
+    /**
+     * @param index
+     *            The row index
+     * @return The primitive displayed at this row
+     */
+    public AtlasPrimitive getPrimitive(final int index)
+    {
+        return this.dataSet.getPrimitiveByOrdinal(this.ordinals[index]);
+    }
+
+    @Override
+    public int getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * @param primitive
+     *            The primitive to look for
+     * @return The row index of the primitive, or -1 if it is not listed
+     */
+    public int indexOf(final AtlasPrimitive primitive)
+    {
+        if (primitive == null || primitive.getDataSet() != this.dataSet)
+        {
+            return -1;
+        }
+        final int index = Arrays.binarySearch(this.ordinals, 0, this.size,
+                primitive.getOrdinal());
+        return index >= 0 ? index : -1;
+    }
+}
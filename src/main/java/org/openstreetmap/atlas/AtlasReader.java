@@ -1,6 +1,8 @@
 package org.openstreetmap.atlas;
 
 import org.openstreetmap.josm.actions.ExtensionFileFilter;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.MainMenu;
 import org.openstreetmap.josm.plugins.Plugin;
 import org.openstreetmap.josm.plugins.PluginInformation;
 
@@ -17,6 +19,6 @@ public class AtlasReader extends Plugin
         this.atlasFileImporter = new AtlasFileImporter();
         ExtensionFileFilter.addImporter(this.atlasFileImporter);
         ExtensionFileFilter.updateAllFormatsImporter();
-
+        MainMenu.add(MainApplication.getMenu().fileMenu, new AtlasOpenAction());
     }
 }
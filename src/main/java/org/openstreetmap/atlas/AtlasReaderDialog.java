@@ -7,59 +7,60 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.TreeSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
-import javax.swing.DefaultListModel;
 import javax.swing.JButton;
 import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
 import javax.swing.JTextField;
 import javax.swing.KeyStroke;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 import org.openstreetmap.atlas.AtlasSearch.SearchType;
 import org.openstreetmap.atlas.data.AtlasDataSet;
 import org.openstreetmap.atlas.data.AtlasPrimitive;
-import org.openstreetmap.atlas.data.AtlasPunctual;
-import org.openstreetmap.atlas.exception.CoreException;
-import org.openstreetmap.atlas.geography.Latitude;
-import org.openstreetmap.atlas.geography.Location;
-import org.openstreetmap.atlas.geography.Longitude;
-import org.openstreetmap.atlas.geography.Snapper;
-import org.openstreetmap.atlas.geography.atlas.items.Area;
-import org.openstreetmap.atlas.geography.atlas.items.AtlasItem;
-import org.openstreetmap.atlas.geography.atlas.items.Edge;
-import org.openstreetmap.atlas.geography.atlas.items.ItemType;
-import org.openstreetmap.atlas.geography.atlas.items.Line;
-import org.openstreetmap.atlas.geography.atlas.items.Point;
-import org.openstreetmap.atlas.geography.atlas.packed.PackedEdge;
-import org.openstreetmap.atlas.utilities.scalars.Distance;
-import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.atlas.data.AtlasTagStatistics;
+import org.openstreetmap.atlas.utilities.time.Time;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.osm.INode;
 import org.openstreetmap.josm.data.osm.IRelation;
 import org.openstreetmap.josm.data.osm.IWay;
-import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
 import org.openstreetmap.josm.data.osm.PrimitiveId;
 import org.openstreetmap.josm.data.osm.visitor.BoundingXYVisitor;
 import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.NavigatableComponent;
 import org.openstreetmap.josm.gui.dialogs.DialogsPanel;
 import org.openstreetmap.josm.gui.dialogs.ToggleDialog;
 import org.openstreetmap.josm.gui.layer.LayerManager.LayerAddEvent;
 import org.openstreetmap.josm.gui.layer.LayerManager.LayerChangeListener;
 import org.openstreetmap.josm.gui.layer.LayerManager.LayerOrderChangeEvent;
 import org.openstreetmap.josm.gui.layer.LayerManager.LayerRemoveEvent;
+import org.openstreetmap.josm.gui.util.GuiHelper;
 import org.openstreetmap.josm.tools.Logging;
-
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
+import org.openstreetmap.josm.tools.Utils;
 
 /**
  * @author jgage
@@ -104,120 +105,184 @@ public class AtlasReaderDialog extends ToggleDialog implements LayerChangeListen
     }
 
     /**
-     * Class that stores minimum distance between an AtlasItem and a location.
+     * Search running in the background, which streams its results into a list model as they are
+     * found, and reports its progress.
      *
-     * @author jgage
-     * @author matthieun
+     * @author agent
      */
-    public static class SnappedEntity implements Comparable<SnappedEntity>
+    private final class SearchTask implements Runnable
     {
-        private static final Distance POINT_PREVALENCE_DISTANCE = Distance.meters(2);
-
-        private final AtlasItem item;
-        private final Distance distance;
-        private Iterable<? extends Location> geometry;
+        private final AtlasSearch searcher;
+        private final SearchType mode;
+        private final String text;
+        private final AtlasPrimitiveListModel results;
+        private final Time start = Time.now();
+        private final Timer progress;
+        private volatile boolean cancelled;
+        private boolean finished;
+        private Future<?> future;
+
+        SearchTask(final SearchType mode, final String text,
+                final AtlasPrimitiveListModel results)
+        {
+            this.searcher = new AtlasSearch(AtlasReaderDialog.this.layer.getDataSet(), mode,
+                    AtlasReaderDialog.this.layer.getSearchCache());
+            this.mode = mode;
+            this.text = text;
+            this.results = results;
+            this.progress = new Timer(PROGRESS_PERIOD_MILLISECONDS, event -> showProgress());
+        }
 
-        public SnappedEntity(final AtlasItem item, final Location location)
+        @Override
+        public void run()
         {
-            this.item = item;
-            if (item instanceof Area)
+            try
             {
-                this.geometry = ((Area) item).asPolygon();
-            }
-            else if (item instanceof Line)
-            {
-                this.geometry = ((Line) item).asPolyLine();
-            }
-            else if (item instanceof Point)
-            {
-                this.geometry = ((Point) item).getLocation();
+                this.searcher.search(this.text, batch -> GuiHelper.runInEDT(() ->
+                {
+                    if (!this.cancelled)
+                    {
+                        append(batch);
+                    }
+                }));
             }
-            else if (item instanceof Edge || item instanceof PackedEdge)
+            catch (final Exception e)
             {
-                this.geometry = ((Edge) item).asPolyLine();
+                Logging.error(e);
             }
-            else if (item instanceof org.openstreetmap.atlas.geography.atlas.items.Node)
+            GuiHelper.runInEDT(this::finish);
+        }
+
+        /**
+         * Stops the search, and drops the results it has not delivered yet. Called on the event
+         * dispatch thread.
+         */
+        void cancel()
+        {
+            this.cancelled = true;
+            this.progress.stop();
+            if (this.future != null)
             {
-                this.geometry = ((org.openstreetmap.atlas.geography.atlas.items.Node) item)
-                        .getLocation();
+                this.future.cancel(true);
             }
-            else
+            AtlasReaderDialog.this.progressLabel.setText("Search cancelled");
+        }
+
+        boolean isFinished()
+        {
+            return this.finished;
+        }
+
+        boolean isQuery()
+        {
+            return this.mode != SearchType.ALL;
+        }
+
+        void start()
+        {
+            AtlasReaderDialog.this.progressLabel.setText("Searching...");
+            this.progress.start();
+            this.future = SEARCH_EXECUTOR.submit(this);
+        }
+
+        private void append(final int[] batch)
+        {
+            this.results.append(batch);
+            if (AtlasReaderDialog.this.list.getPrototypeCellValue() == null)
             {
-                throw new CoreException("Unrecognized type {}", item.getClass());
+                // The widest row has the largest index
+                AtlasReaderDialog.this.list.setPrototypeCellValue(new PrintablePrimitive(
+                        AtlasReaderDialog.this.layer.getDataSet().getPrimitivesCount(),
+                        this.results.getPrimitive(0)));
             }
-            this.distance = new Snapper().snap(location, this.geometry).getDistance();
+            showProgress();
         }
 
-        @Override
-        public int compareTo(final SnappedEntity object)
+        private void finish()
         {
-            if (object.getItem().getType() == ItemType.NODE
-                    || object.getItem().getType() == ItemType.POINT)
+            if (this.cancelled)
             {
-                if (this.getItem().getType() != ItemType.NODE
-                        && this.getItem().getType() != ItemType.POINT)
-                {
-                    if (object.getDistance().isLessThan(POINT_PREVALENCE_DISTANCE))
-                    {
-                        // Object is a Point/Node, and this is not. Give precedence to object
-                        return 1;
-                    }
-                }
+                return;
             }
-            if (this.getItem().getType() == ItemType.NODE
-                    || this.getItem().getType() == ItemType.POINT)
+            this.progress.stop();
+            this.finished = true;
+            // highlight all search results, unless "all" is the mode
+            if (isQuery())
             {
-                if (object.getItem().getType() != ItemType.NODE
-                        && object.getItem().getType() != ItemType.POINT)
+                final ArrayList<PrimitiveId> toBeSelected = new ArrayList<>(
+                        this.results.getSize());
+                for (int i = 0; i < this.results.getSize(); i++)
                 {
-                    if (this.getDistance().isLessThan(POINT_PREVALENCE_DISTANCE))
-                    {
-                        // This is a Point/Node, and object is not. Give precedence to this
-                        return -1;
-                    }
+                    final AtlasPrimitive result = this.results.getPrimitive(i);
+                    result.setHighlighted(true);
+                    toBeSelected.add(result.getPrimitiveId());
                 }
+                AtlasReaderDialog.this.layer.getDataSet().setSelected(toBeSelected);
+                MainApplication.getMap().mapView.revalidate();
+                MainApplication.getMap().mapView.repaint();
+                AtlasReaderDialog.this.previousResults = this.results;
             }
-            if (object.getDistance().isGreaterThan(this.getDistance()))
+            final long[] missing = this.searcher.getMissingIdentifiers();
+            if (missing.length == 0)
             {
-                return -1;
-            }
-            if (object.getDistance().equals(this.getDistance()))
-            {
-                return 0;
+                AtlasReaderDialog.this.progressLabel.setText(String.format("%d results in %s",
+                        this.results.getSize(), this.start.elapsedSince()));
             }
             else
             {
-                return 1;
+                AtlasReaderDialog.this.progressLabel
+                        .setText(String.format("%d results in %s, %d IDs not found",
+                                this.results.getSize(), this.start.elapsedSince(),
+                                missing.length));
+                showMissingIdentifiers(missing);
             }
         }
 
-        public Distance getDistance()
+        /**
+         * Lists the identifiers that were not found, in a text area they can be copied from.
+         */
+        private void showMissingIdentifiers(final long[] missing)
         {
-            return this.distance;
+            final JTextArea text = new JTextArea(MISSING_IDENTIFIERS_ROWS, TEXT_FIELD_LENGTH);
+            text.setText(LongStream.of(missing).mapToObj(String::valueOf)
+                    .collect(Collectors.joining("\n")));
+            text.setEditable(false);
+            JOptionPane.showMessageDialog(Main.parent, new JScrollPane(text),
+                    String.format("%d Atlas IDs not found", missing.length),
+                    JOptionPane.WARNING_MESSAGE);
         }
 
-        public AtlasItem getItem()
+        private void showProgress()
         {
-            return this.item;
+            AtlasReaderDialog.this.progressLabel
+                    .setText(String.format("Searching... %d results, %s",
+                            this.results.getSize(), this.start.elapsedSince()));
         }
-
     }
 
+    private static final ExecutorService SEARCH_EXECUTOR = Executors.newSingleThreadExecutor(
+            Utils.newThreadFactory("atlas-search-%d", Thread.NORM_PRIORITY));
+    // Statistics do not queue behind the searches typed in the meantime
+    private static final ExecutorService STATISTICS_EXECUTOR = Executors
+            .newSingleThreadExecutor(
+                    Utils.newThreadFactory("atlas-statistics-%d", Thread.NORM_PRIORITY));
+    private static final int PROGRESS_PERIOD_MILLISECONDS = 250;
     private static boolean listClick = false;
     private static final long serialVersionUID = 2182365950017249421L;
     private static final int num = 150;
     private static AtlasPrimitive previous;
     private static final int TEXT_FIELD_LENGTH = 15;
+    private static final int MISSING_IDENTIFIERS_ROWS = 20;
 
     private final AtlasReaderLayer layer;
     private final JPanel panel;
     private JList<PrintablePrimitive> list;
-    private DefaultListModel<PrintablePrimitive> listAll;
     private JScrollPane listPane;
-    private BiMap<Integer, PrimitiveId> indexToIdentifierAll;
+    private final JLabel progressLabel = new JLabel();
     private int selectedIndex;
-    private int listLength;
-    private DefaultListModel<PrintablePrimitive> previousResults;
+    private AtlasPrimitiveListModel previousResults;
+    private transient SearchTask search;
+    private transient MouseListener mapListener;
 
     private static String allLetters(final String charsetName)
     {
@@ -251,32 +316,8 @@ public class AtlasReaderDialog extends ToggleDialog implements LayerChangeListen
                 && !data.allPrimitives().isEmpty())
         {
             add(this.panel, BorderLayout.CENTER);
-
-            final DefaultListModel<PrintablePrimitive> model = new DefaultListModel<>();
-            final BiMap<Integer, PrimitiveId> indexToIdentifier = HashBiMap.create();
-            int index = 0;
-
-            for (final AtlasPrimitive osmPrimitive : data.allPrimitives())
-            {
-                if (osmPrimitive instanceof AtlasPunctual)
-                {
-                    if (osmPrimitive.getKeys().isEmpty())
-                    {
-                        continue;
-                    }
-                }
-                model.addElement(new PrintablePrimitive(index, osmPrimitive));
-                indexToIdentifier.put(index, osmPrimitive.getPrimitiveId());
-                index++;
-            }
-            this.list = new JList<>(model);
-            this.listAll = model;
-            this.indexToIdentifierAll = indexToIdentifier;
-            createListListeners(indexToIdentifier);
-            createMapListener(indexToIdentifier);
-            initializePanel(indexToIdentifier);
-            this.listPane = new JScrollPane(this.list);
-            this.panel.add(this.listPane, BorderLayout.CENTER);
+            initializePanel();
+            startSearch(SearchType.ALL, "");
             this.titleBar = new TitleBar(this.name, "world.png");
             this.titleBar.registerMouseListener();
             add(this.titleBar, BorderLayout.NORTH);
@@ -301,6 +342,11 @@ public class AtlasReaderDialog extends ToggleDialog implements LayerChangeListen
     {
         if (e.getRemovedLayer() == this.layer)
         {
+            if (this.search != null)
+            {
+                this.search.cancel();
+            }
+            removeMapListener();
             this.panel.removeAll();
             this.panel.revalidate();
             this.panel.repaint();
@@ -321,54 +367,33 @@ public class AtlasReaderDialog extends ToggleDialog implements LayerChangeListen
             @Override
             public void actionPerformed(final ActionEvent e)
             {
-                final AtlasSearch searcher = new AtlasSearch(
-                        AtlasReaderDialog.this.layer.getAtlas(),
-                        AtlasReaderDialog.this.layer.getDataSet(), SearchType.ALL,
-                        AtlasReaderDialog.this.listAll,
-                        AtlasReaderDialog.this.indexToIdentifierAll);
-                final DefaultListModel<PrintablePrimitive> results;
-                results = searcher.search("");
-                if (results != null)
-                {
-                    // update ListView with search results
-                    AtlasReaderDialog.this.panel.remove(AtlasReaderDialog.this.listPane);
-                    AtlasReaderDialog.this.list = new JList<>(results);
-                    AtlasReaderDialog.this.listLength = results.size();
-                    AtlasReaderDialog.this.listPane = new JScrollPane(AtlasReaderDialog.this.list);
-                    AtlasReaderDialog.this.panel.add(AtlasReaderDialog.this.listPane);
-                    AtlasReaderDialog.this.panel.revalidate();
-                    AtlasReaderDialog.this.panel.repaint();
-
-                    // unhighlight all results
-                    if (AtlasReaderDialog.this.previousResults != null)
-                    {
-                        for (int i = 0; i < AtlasReaderDialog.this.previousResults.size(); i++)
-                        {
-                            AtlasReaderDialog.this.previousResults.get(i).osmPrimitive
-                                    .setHighlighted(false);
-                        }
-                    }
-                    AtlasReaderDialog.this.layer.getDataSet().setSelected();
-
-                    // recreate list listeners with new list index (results of search)
-                    createListListeners(searcher.getIndexToIdentifier());
-                    for (final MouseListener mouseListener : MainApplication.getMap().mapView
-                            .getMouseListeners())
-                    {
-                        MainApplication.getMap().mapView.removeMouseListener(mouseListener);
-                    }
-                    createMapListener(searcher.getIndexToIdentifier());
-                }
+                AtlasReaderDialog.this.layer.getDataSet().setSelected();
+                startSearch(SearchType.ALL, "");
                 searchText.setText("");
             }
         };
         clearButton.addActionListener(clearResults);
     }
 
+    /**
+     * Creates a list that only renders its visible rows. The fixed cell size taken from a
+     * prototype row spares the list from measuring every row of the model. Empty models get their
+     * prototype when their first rows arrive.
+     */
+    private JList<PrintablePrimitive> createList(final AtlasPrimitiveListModel model)
+    {
+        final JList<PrintablePrimitive> result = new JList<>(model);
+        if (model.getSize() > 0)
+        {
+            result.setPrototypeCellValue(model.getElementAt(model.getSize() - 1));
+        }
+        return result;
+    }
+
     /**
      * Handles the logic of a list click.
      */
-    private void createListListeners(final BiMap<Integer, PrimitiveId> indexToIdentifier)
+    private void createListListeners(final AtlasPrimitiveListModel model)
     {
         this.list.addMouseListener(new MouseAdapter()
         {
@@ -379,12 +404,13 @@ public class AtlasReaderDialog extends ToggleDialog implements LayerChangeListen
                 listClick = true;
                 AtlasReaderDialog.this.selectedIndex = AtlasReaderDialog.this.list
                         .locationToIndex(event.getPoint());
-                final PrimitiveId identifier = indexToIdentifier
-                        .get(AtlasReaderDialog.this.selectedIndex);
-                AtlasReaderDialog.this.layer.getDataSet().setSelected(identifier);
-                if (identifier != null)
+                if (AtlasReaderDialog.this.selectedIndex >= 0)
                 {
-                    zoomTo(AtlasReaderDialog.this.layer.getDataSet().getPrimitiveById(identifier));
+                    final AtlasPrimitive primitive = model
+                            .getPrimitive(AtlasReaderDialog.this.selectedIndex);
+                    AtlasReaderDialog.this.layer.getDataSet()
+                            .setSelected(primitive.getPrimitiveId());
+                    zoomTo(primitive);
                 }
             }
         });
@@ -393,9 +419,12 @@ public class AtlasReaderDialog extends ToggleDialog implements LayerChangeListen
             if (listClick)
             {
                 final int index = listSelectionEvent.getFirstIndex();
-                final PrimitiveId identifier = indexToIdentifier.get(index);
-                this.layer.getDataSet().setSelected(identifier);
-                zoomTo(this.layer.getDataSet().getPrimitiveById(identifier));
+                if (index >= 0 && index < model.getSize())
+                {
+                    final AtlasPrimitive primitive = model.getPrimitive(index);
+                    this.layer.getDataSet().setSelected(primitive.getPrimitiveId());
+                    zoomTo(primitive);
+                }
             }
         });
 
@@ -406,19 +435,12 @@ public class AtlasReaderDialog extends ToggleDialog implements LayerChangeListen
             @Override
             public void actionPerformed(final ActionEvent e)
             {
-                // ensures index is less than results size and all items in dataset
-                if (AtlasReaderDialog.this.selectedIndex != AtlasReaderDialog.this.listLength - 1
-                        && AtlasReaderDialog.this.selectedIndex != indexToIdentifier.size())
+                // ensures index is less than results size
+                if (AtlasReaderDialog.this.selectedIndex < model.getSize() - 1)
                 {
                     AtlasReaderDialog.this.selectedIndex += 1;
                 }
-                AtlasReaderDialog.this.list.setSelectedIndex(AtlasReaderDialog.this.selectedIndex);
-                final PrimitiveId identifier = indexToIdentifier
-                        .get(AtlasReaderDialog.this.selectedIndex);
-                AtlasReaderDialog.this.layer.getDataSet().setSelected(identifier);
-                zoomTo(AtlasReaderDialog.this.layer.getDataSet().getPrimitiveById(identifier));
-                AtlasReaderDialog.this.list
-                        .ensureIndexIsVisible(AtlasReaderDialog.this.selectedIndex);
+                selectRow(model);
             }
         };
         final Action upAction = new AbstractAction()
@@ -428,17 +450,11 @@ public class AtlasReaderDialog extends ToggleDialog implements LayerChangeListen
             @Override
             public void actionPerformed(final ActionEvent e)
             {
-                if (AtlasReaderDialog.this.selectedIndex != 0)
+                if (AtlasReaderDialog.this.selectedIndex > 0)
                 {
                     AtlasReaderDialog.this.selectedIndex -= 1;
                 }
-                AtlasReaderDialog.this.list.setSelectedIndex(AtlasReaderDialog.this.selectedIndex);
-                final PrimitiveId identifier = indexToIdentifier
-                        .get(AtlasReaderDialog.this.selectedIndex);
-                AtlasReaderDialog.this.layer.getDataSet().setSelected(identifier);
-                zoomTo(AtlasReaderDialog.this.layer.getDataSet().getPrimitiveById(identifier));
-                AtlasReaderDialog.this.list
-                        .ensureIndexIsVisible(AtlasReaderDialog.this.selectedIndex);
+                selectRow(model);
             }
         };
         this.list.getInputMap().put(KeyStroke.getKeyStroke("DOWN"), "downAction");
@@ -451,9 +467,10 @@ public class AtlasReaderDialog extends ToggleDialog implements LayerChangeListen
     /**
      * Handles the logic of a map click.
      */
-    private void createMapListener(final BiMap<Integer, PrimitiveId> indexToIdentifier)
+    private void createMapListener(final AtlasPrimitiveListModel model)
     {
-        MainApplication.getMap().mapView.addMouseListener(new MouseAdapter()
+        removeMapListener();
+        this.mapListener = new MouseAdapter()
         {
             @Override
             public void mouseClicked(final MouseEvent event)
@@ -463,82 +480,50 @@ public class AtlasReaderDialog extends ToggleDialog implements LayerChangeListen
                     previous.setHighlighted(false);
                 }
                 listClick = false;
-                final LatLon latlon = MainApplication.getMap().mapView.getLatLon(event.getX(),
-                        event.getY());
-                final Location location = new Location(Latitude.degrees(latlon.lat()),
-                        Longitude.degrees(latlon.lon()));
-                final TreeSet<SnappedEntity> itemsNearClick = new TreeSet<>();
-                final int clickRadiusInMeters = 200;
-                // stores all items near click point and uses comparator to order them, the closest
-                // being the first element
-                if (AtlasReaderDialog.this.layer.getAtlas() != null)
-                {
-                    for (final AtlasItem item : AtlasReaderDialog.this.layer.getAtlas()
-                            .itemsIntersecting(
-                                    location.boxAround(Distance.meters(clickRadiusInMeters))))
-                    {
-                        final SnappedEntity snap = new SnappedEntity(item, location);
-                        itemsNearClick.add(snap);
-                    }
-                }
-                AtlasItem item = null;
-                if (!itemsNearClick.isEmpty())
-                {
-                    item = itemsNearClick.first().item;
-                }
-                if (item == null)
+                final List<AtlasPrimitive> picked = new AtlasFeaturePicker(
+                        AtlasReaderDialog.this.layer.getDataSet(),
+                        MainApplication.getMap().mapView).pick(event.getPoint(),
+                                NavigatableComponent.PROP_SNAP_DISTANCE.get(), 1);
+                if (picked.isEmpty())
                 {
                     AtlasReaderDialog.this.layer.getDataSet().setSelected();
                 }
-                AtlasPrimitive selected = null;
-                // sets selected primitive
-                if (item instanceof org.openstreetmap.atlas.geography.atlas.items.Node
-                        || item instanceof Point)
-                {
-                    selected = AtlasReaderDialog.this.layer.getDataSet()
-                            .getPrimitiveById(item.getIdentifier(), OsmPrimitiveType.NODE);
-                }
-                if (item instanceof Area || item instanceof Edge || item instanceof Line)
-                {
-                    selected = AtlasReaderDialog.this.layer.getDataSet()
-                            .getPrimitiveById(item.getIdentifier(), OsmPrimitiveType.WAY);
-                }
-                // highlights selection on map and in list
-                if (selected != null)
+                else
                 {
+                    // highlights selection on map and in list
+                    final AtlasPrimitive selected = picked.get(0);
                     selected.setHighlighted(true);
                     AtlasReaderDialog.this.layer.getDataSet()
                             .setSelected(selected.getPrimitiveId());
                     AtlasReaderDialog.this.layer.invalidate();
-                    try
+                    final int index = model.indexOf(selected);
+                    if (index >= 0)
                     {
-                        final int index = indexToIdentifier.inverse()
-                                .get(selected.getPrimitiveId());
                         AtlasReaderDialog.this.list.setSelectedIndex(index);
                         AtlasReaderDialog.this.list.ensureIndexIsVisible(index);
                     }
-                    catch (final Exception e)
-                    {
-                        Logging.error(e);
-                    }
                     previous = selected;
                 }
             }
-        });
+        };
+        MainApplication.getMap().mapView.addMouseListener(this.mapListener);
     }
 
     /*
      * Helper function that lays out dialog window correctly.
      */
-    private void initializePanel(final BiMap<Integer, PrimitiveId> indexToIdentifier)
+    private void initializePanel()
     {
         final JTextField searchText = new JTextField(TEXT_FIELD_LENGTH);
         final JButton searchButton = new JButton("Search");
         final JButton metaDataButton = new JButton("Meta Data");
         final JButton clearButton = new JButton("Clear Results");
         final JButton showAll = new JButton("Show All");
+        final JButton loadIdentifiers = new JButton("Load IDs");
+        final JButton statistics = new JButton("Statistics");
         clearButtonInit(clearButton, searchText);
         showAllInit(showAll);
+        statistics.addActionListener(event -> showStatistics());
         metaDataButton.addActionListener(event ->
         {
             final JFrame parent = new JFrame();
@@ -547,8 +532,10 @@ public class AtlasReaderDialog extends ToggleDialog implements LayerChangeListen
                     JOptionPane.INFORMATION_MESSAGE);
         });
         final JComboBox<String> searchOptions = new JComboBox<>();
-        final String[] options = { SearchType.TAG.getName(), SearchType.OSM_IDENTIFIER.getName(),
-                SearchType.ATLAS_IDENTIFIER.getName(), SearchType.BOX.getName() };
+        final String[] options = { SearchType.TAG.getName(), SearchType.JOSM_SYNTAX.getName(),
+                SearchType.OSM_IDENTIFIER.getName(), SearchType.ATLAS_IDENTIFIER.getName(),
+                SearchType.ATLAS_IDENTIFIER_LIST.getName(), SearchType.BOX.getName(),
+                SearchType.BOX_CONTAINS.getName(), SearchType.WITHIN_RELATION.getName() };
         for (int i = 0; i < options.length; i++)
         {
             searchOptions.addItem(options[i]);
@@ -563,14 +550,49 @@ public class AtlasReaderDialog extends ToggleDialog implements LayerChangeListen
         searchButtons.add(searchOptions, BorderLayout.WEST);
         searchButtons.add(searchButton, BorderLayout.EAST);
         extraButtons.add(metaDataButton, BorderLayout.EAST);
+        extraButtons.add(loadIdentifiers, BorderLayout.WEST);
         middleButtons.add(clearButton, BorderLayout.WEST);
         middleButtons.add(showAll, BorderLayout.EAST);
+        middleButtons.add(statistics, BorderLayout.CENTER);
         extraButtons.add(middleButtons, BorderLayout.CENTER);
         searchPanel.add(extraButtons, BorderLayout.SOUTH);
         searchPanel.add(searchText, BorderLayout.CENTER);
         searchPanel.add(searchButtons, BorderLayout.EAST);
         this.panel.add(searchPanel, BorderLayout.NORTH);
+        this.panel.add(this.progressLabel, BorderLayout.SOUTH);
         searchListenerInit(searchButton, searchOptions, searchText);
+        loadIdentifiersInit(loadIdentifiers, searchOptions);
+    }
+
+    /*
+     * Handles logic of loadIdentifiers click: search all the Atlas IDs listed in a file
+     */
+    private void loadIdentifiersInit(final JButton loadIdentifiers,
+            final JComboBox<String> searchOptions)
+    {
+        loadIdentifiers.addActionListener(event ->
+        {
+            final JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("Load a list of Atlas IDs");
+            if (chooser.showOpenDialog(Main.parent) != JFileChooser.APPROVE_OPTION)
+            {
+                return;
+            }
+            final String identifiers;
+            try
+            {
+                identifiers = new String(Files.readAllBytes(chooser.getSelectedFile().toPath()),
+                        StandardCharsets.UTF_8);
+            }
+            catch (final IOException e)
+            {
+                Logging.error(e);
+                this.progressLabel.setText("Unable to read " + chooser.getSelectedFile());
+                return;
+            }
+            searchOptions.setSelectedItem(SearchType.ATLAS_IDENTIFIER_LIST.getName());
+            startSearch(SearchType.ATLAS_IDENTIFIER_LIST, identifiers);
+        });
     }
 
     /*
@@ -587,64 +609,8 @@ public class AtlasReaderDialog extends ToggleDialog implements LayerChangeListen
             @Override
             public void actionPerformed(final ActionEvent e)
             {
-                final AtlasSearch searcher = new AtlasSearch(
-                        AtlasReaderDialog.this.layer.getAtlas(),
-                        AtlasReaderDialog.this.layer.getDataSet(),
-                        SearchType.forName(searchOptions.getSelectedItem().toString()),
-                        AtlasReaderDialog.this.listAll,
-                        AtlasReaderDialog.this.indexToIdentifierAll);
-                final DefaultListModel<PrintablePrimitive> results;
-                results = searcher.search(searchText.getText());
-                if (results != null)
-                {
-                    // update ListView with search results
-                    AtlasReaderDialog.this.panel.remove(AtlasReaderDialog.this.listPane);
-                    AtlasReaderDialog.this.list = new JList<>(results);
-                    AtlasReaderDialog.this.listLength = results.size();
-                    AtlasReaderDialog.this.listPane = new JScrollPane(AtlasReaderDialog.this.list);
-                    AtlasReaderDialog.this.panel.add(AtlasReaderDialog.this.listPane);
-                    AtlasReaderDialog.this.panel.revalidate();
-                    AtlasReaderDialog.this.panel.repaint();
-
-                    // show entire Atlas
-                    final BoundingXYVisitor visitor = new BoundingXYVisitor();
-                    visitor.computeBoundingBox(
-                            AtlasReaderDialog.this.layer.getDataSet().allPrimitives());
-                    MainApplication.getMap().mapView.zoomTo(visitor.getBounds());
-
-                    // highlight all search results, unless "all" is the mode
-                    if (!"All".equals(searchOptions.getSelectedItem().toString()))
-                    {
-                        if (AtlasReaderDialog.this.previousResults != null)
-                        {
-                            for (int i = 0; i < AtlasReaderDialog.this.previousResults.size(); i++)
-                            {
-                                AtlasReaderDialog.this.previousResults.get(i).osmPrimitive
-                                        .setHighlighted(false);
-                            }
-                        }
-                        final ArrayList<PrimitiveId> toBeSelected = new ArrayList<>();
-                        for (int i = 0; i < results.size(); i++)
-                        {
-                            final AtlasPrimitive result = results.get(i).osmPrimitive;
-                            result.setHighlighted(true);
-                            toBeSelected.add(result.getPrimitiveId());
-                        }
-                        AtlasReaderDialog.this.layer.getDataSet().setSelected(toBeSelected);
-                        MainApplication.getMap().mapView.revalidate();
-                        MainApplication.getMap().mapView.repaint();
-                        AtlasReaderDialog.this.previousResults = results;
-                    }
-
-                    // recreate list listeners with new list index (results of search)
-                    createListListeners(searcher.getIndexToIdentifier());
-                    for (final MouseListener mouseListener : MainApplication.getMap().mapView
-                            .getMouseListeners())
-                    {
-                        MainApplication.getMap().mapView.removeMouseListener(mouseListener);
-                    }
-                    createMapListener(searcher.getIndexToIdentifier());
-                }
+                startSearch(SearchType.forName(searchOptions.getSelectedItem().toString()),
+                        searchText.getText());
             }
         };
         final Action doNothing = new AbstractAction()
@@ -674,6 +640,154 @@ public class AtlasReaderDialog extends ToggleDialog implements LayerChangeListen
         searchText.getActionMap().put("searchAction", searchAction);
         searchText.getActionMap().put("doNothing", doNothing);
         searchButton.addActionListener(searchAction);
+        // a new keystroke makes the running query obsolete
+        searchText.getDocument().addDocumentListener(new DocumentListener()
+        {
+            @Override
+            public void changedUpdate(final DocumentEvent event)
+            {
+                cancelQuery();
+            }
+
+            @Override
+            public void insertUpdate(final DocumentEvent event)
+            {
+                cancelQuery();
+            }
+
+            @Override
+            public void removeUpdate(final DocumentEvent event)
+            {
+                cancelQuery();
+            }
+        });
+    }
+
+    /**
+     * Cancels the running search if it is a query. The listing of all the primitives is left to
+     * complete.
+     */
+    private void cancelQuery()
+    {
+        if (this.search != null && this.search.isQuery())
+        {
+            this.search.cancel();
+        }
+    }
+
+    private void removeMapListener()
+    {
+        if (this.mapListener != null && MainApplication.getMap() != null)
+        {
+            MainApplication.getMap().mapView.removeMouseListener(this.mapListener);
+        }
+        this.mapListener = null;
+    }
+
+    /**
+     * Replaces the displayed list with new results.
+     */
+    private void showResults(final AtlasPrimitiveListModel results)
+    {
+        if (this.listPane != null)
+        {
+            this.panel.remove(this.listPane);
+        }
+        this.list = createList(results);
+        this.selectedIndex = 0;
+        this.listPane = new JScrollPane(this.list);
+        this.panel.add(this.listPane);
+        this.panel.revalidate();
+        this.panel.repaint();
+    }
+
+    /**
+     * Selects the primitive of the row at the selected index, in the list and on the map.
+     */
+    private void selectRow(final AtlasPrimitiveListModel model)
+    {
+        if (this.selectedIndex < 0 || this.selectedIndex >= model.getSize())
+        {
+            return;
+        }
+        this.list.setSelectedIndex(this.selectedIndex);
+        final AtlasPrimitive primitive = model.getPrimitive(this.selectedIndex);
+        this.layer.getDataSet().setSelected(primitive.getPrimitiveId());
+        zoomTo(primitive);
+        this.list.ensureIndexIsVisible(this.selectedIndex);
+    }
+
+    /**
+     * Cancels the search in flight, and starts a new one in the background. Its results are
+     * displayed in the list as they are found.
+     */
+    private void startSearch(final SearchType mode, final String text)
+    {
+        if (this.search != null)
+        {
+            this.search.cancel();
+        }
+        // unhighlight all previous results
+        if (this.previousResults != null)
+        {
+            for (int i = 0; i < this.previousResults.getSize(); i++)
+            {
+                this.previousResults.getPrimitive(i).setHighlighted(false);
+            }
+            this.previousResults = null;
+        }
+        final AtlasPrimitiveListModel results = new AtlasPrimitiveListModel(
+                this.layer.getDataSet());
+        showResults(results);
+        // recreate list listeners with new list index (results of search)
+        createListListeners(results);
+        createMapListener(results);
+        if (mode != SearchType.ALL)
+        {
+            zoomToAll();
+        }
+        this.search = new SearchTask(mode, text, results);
+        this.search.start();
+    }
+
+    /**
+     * Shows the statistics of the tags of the results of the last search, or of the whole Atlas
+     * when there is no query. They are computed in the background, unless the layer already has
+     * them for that search.
+     */
+    private void showStatistics()
+    {
+        final SearchTask scope = this.search;
+        if (scope == null || !scope.isFinished())
+        {
+            this.progressLabel.setText("Statistics are available once the search is complete");
+            return;
+        }
+        final Time start = Time.now();
+        this.progressLabel.setText("Computing statistics...");
+        final int[] ordinals = scope.results.getOrdinals();
+        STATISTICS_EXECUTOR.submit(() ->
+        {
+            try
+            {
+                final AtlasTagStatistics statistics = this.layer
+                        .getTagStatistics(scope.mode, scope.text, ordinals);
+                GuiHelper.runInEDT(() ->
+                {
+                    this.progressLabel.setText(String.format("Statistics of %d results in %s",
+                            ordinals.length, start.elapsedSince()));
+                    JOptionPane.showMessageDialog(Main.parent,
+                            new AtlasStatisticsPanel(statistics),
+                            scope.isQuery() ? "Statistics of the search results"
+                                    : "Statistics of the Atlas",
+                            JOptionPane.PLAIN_MESSAGE);
+                });
+            }
+            catch (final Exception e)
+            {
+                Logging.error(e);
+            }
+        });
     }
 
     private void showAllInit(final JButton showAll)
@@ -686,16 +800,25 @@ public class AtlasReaderDialog extends ToggleDialog implements LayerChangeListen
             @Override
             public void actionPerformed(final ActionEvent e)
             {
-                // show entire Atlas
-                final BoundingXYVisitor visitor = new BoundingXYVisitor();
-                visitor.computeBoundingBox(
-                        AtlasReaderDialog.this.layer.getDataSet().allPrimitives());
-                MainApplication.getMap().mapView.zoomTo(visitor.getBounds());
+                zoomToAll();
             }
         };
         showAll.addActionListener(showEntireAtlas);
     }
 
+    /**
+     * Shows the entire Atlas, from the bounds kept by the dataset rather than a visit of all its
+     * primitives.
+     */
+    private void zoomToAll()
+    {
+        final Bounds bounds = this.layer.getDataSet().getStatistics().getBounds();
+        if (bounds != null)
+        {
+            MainApplication.getMap().mapView.zoomTo(bounds);
+        }
+    }
+
     private void zoomTo(final AtlasPrimitive primitive)
     {
         final BoundingXYVisitor visitor = new BoundingXYVisitor();
@@ -2,58 +2,398 @@ package org.openstreetmap.atlas;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics2D;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseMotionListener;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.Icon;
+import javax.swing.JCheckBox;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
 
+import org.openstreetmap.atlas.AtlasSearch.SearchType;
 import org.openstreetmap.atlas.data.AtlasDataSet;
+import org.openstreetmap.atlas.data.AtlasDensityGrid;
+import org.openstreetmap.atlas.data.AtlasLevelsOfDetail;
+import org.openstreetmap.atlas.data.AtlasLinear;
+import org.openstreetmap.atlas.data.AtlasMultipolygon;
+import org.openstreetmap.atlas.data.AtlasPointClusters;
+import org.openstreetmap.atlas.data.AtlasPrimitive;
+import org.openstreetmap.atlas.data.AtlasPunctual;
+import org.openstreetmap.atlas.data.AtlasRelation;
+import org.openstreetmap.atlas.data.AtlasRelationMember;
+import org.openstreetmap.atlas.data.AtlasTagStatistics;
 import org.openstreetmap.atlas.geography.atlas.Atlas;
+import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.BBox;
 import org.openstreetmap.josm.data.osm.DataSelectionListener;
 import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
 import org.openstreetmap.josm.data.osm.PrimitiveId;
 import org.openstreetmap.josm.data.osm.SimplePrimitiveId;
 import org.openstreetmap.josm.data.osm.event.SelectionEventManager;
 import org.openstreetmap.josm.data.osm.visitor.BoundingXYVisitor;
-import org.openstreetmap.josm.data.osm.visitor.paint.MapRendererFactory;
-import org.openstreetmap.josm.data.osm.visitor.paint.Rendering;
+import org.openstreetmap.josm.data.osm.visitor.paint.PaintColors;
+import org.openstreetmap.josm.data.projection.Projection;
 import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.MapFrame;
 import org.openstreetmap.josm.gui.MapView;
+import org.openstreetmap.josm.gui.MapViewState;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.gui.PleaseWaitRunnable;
 import org.openstreetmap.josm.gui.history.HistoryBrowserDialogManager;
 import org.openstreetmap.josm.gui.history.HistoryHook;
 import org.openstreetmap.josm.gui.layer.AbstractOsmDataLayer;
 import org.openstreetmap.josm.gui.layer.Layer;
+import org.openstreetmap.josm.gui.layer.Layer.LayerAction;
 import org.openstreetmap.josm.gui.layer.MainLayerManager.ActiveLayerChangeEvent;
 import org.openstreetmap.josm.gui.layer.MainLayerManager.ActiveLayerChangeListener;
+import org.openstreetmap.josm.gui.mappaint.MapPaintStyles;
+import org.openstreetmap.josm.gui.mappaint.MapPaintStyles.MapPaintSylesUpdateListener;
+import org.openstreetmap.josm.gui.util.GuiHelper;
 import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.ImageProvider;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
 
 /**
  * @author jgage
  */
 public class AtlasReaderLayer extends AbstractOsmDataLayer
-        implements DataSelectionListener, ActiveLayerChangeListener, HistoryHook
+        implements DataSelectionListener, ActiveLayerChangeListener, HistoryHook,
+        MapPaintSylesUpdateListener
 {
     private static final String LAYER_NAME = tr("Atlas Layer");
 
     private static final int NINE = 9;
     private static final int TEN = 10;
+    private static final long BYTES_PER_MEGABYTE = 1024L * 1024L;
+    private static final int DEFAULT_SEARCH_CACHE_MEGABYTES = 64;
+    private static final int TAG_STATISTICS_CACHE_SIZE = 8;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int DEFAULT_TILE_CACHE_SIZE = 256;
+    private static final float OVERLAY_WIDTH = 2.0f;
+    private static final double OVERLAY_NODE_RADIUS = 4.0;
+    private static final int OVERLAY_FILL_ALPHA = 64;
+    private static final int DEFAULT_DENSITY_METERS_PER_PIXEL = 300;
+    private static final double DENSITY_CELL_PIXELS = 4.0;
+    private static final int DENSITY_COLOR_STEPS = 64;
+    private static final float DENSITY_BLUE_HUE = 0.66f;
+    private static final int DENSITY_MINIMUM_ALPHA = 64;
+    private static final int DENSITY_MAXIMUM_ALPHA = 224;
+    private static final double HUNDRED = 100.0;
+    private static final int DEFAULT_CLUSTER_PIXELS = 40;
+    private static final double CLUSTER_POINT_RADIUS = 3.0;
+    private static final double CLUSTER_MINIMUM_RADIUS = 8.0;
+    private static final double CLUSTER_RADIUS_PER_DECADE = 4.0;
+    private static final Color CLUSTER_COLOR = new Color(255, 127, 0, 208);
+    private static final int THOUSAND = 1000;
+    private static final int EXPORT_DEFAULT_MAGNIFICATION = 4;
+    private static final int EXPORT_MAXIMUM_WIDTH = 1 << 20;
+    private static final int MILLION = 1000000;
+    // From sparse in translucent blue to dense in red
+    private static final Color[] DENSITY_COLORS = densityColors();
+    private static final int DEFAULT_FRAME_BUDGET_MILLISECONDS = 250;
+    // Size of the view the styles are warmed up for before the map is shown
+    private static final int DEFAULT_VIEW_WIDTH = 1024;
+    private static final int DEFAULT_VIEW_HEIGHT = 768;
+    private static final int TILE_THREADS = Config.getPref().getInt("atlas.tile.threads",
+            Runtime.getRuntime().availableProcessors());
+    // Tiles are rendered concurrently, each worker with its own off-screen view
+    private static final ExecutorService TILE_EXECUTOR = Executors.newFixedThreadPool(
+            TILE_THREADS, Utils.newThreadFactory("atlas-tile-%d", Thread.NORM_PRIORITY));
+    private static final ExecutorService PICK_GRID_EXECUTOR = Executors.newSingleThreadExecutor(
+            Utils.newThreadFactory("atlas-pick-grid-%d", Thread.MIN_PRIORITY));
+    // Builds the density grids, point clusters and multipolygons of the layers once they are shown
+    private static final ExecutorService PREPARE_EXECUTOR = Executors.newSingleThreadExecutor(
+            Utils.newThreadFactory("atlas-prepare-%d", Thread.MIN_PRIORITY));
 
     private Atlas atlas;
     private AtlasDataSet data;
     private final Bounds bounds;
+    private final AtlasImportProfile profile;
+    private final AtlasSearchCache searchCache = new AtlasSearchCache(
+            Config.getPref().getInt("atlas.search.cache.megabytes",
+                    DEFAULT_SEARCH_CACHE_MEGABYTES) * BYTES_PER_MEGABYTE);
+    // Statistics of the last search scopes, keyed like the search cache
+    private final Map<String, AtlasTagStatistics> tagStatistics = new LinkedHashMap<String,
+            AtlasTagStatistics>(INITIAL_CAPACITY, LOAD_FACTOR, true)
+    {
+        private static final long serialVersionUID = 5085470390196612385L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, AtlasTagStatistics> eldest)
+        {
+            return size() > TAG_STATISTICS_CACHE_SIZE;
+        }
+    };
+    private final AtlasTileCache tileCache = new AtlasTileCache(
+            Config.getPref().getInt("atlas.tile.cache.tiles", DEFAULT_TILE_CACHE_SIZE));
+    private final AtlasWireframeRenderer wireframeRenderer;
+    private final AtlasStyleWarmer styleWarmer;
+    // Renderers of the tile workers, which are not thread safe, taken and returned by each tile
+    private final Queue<AtlasTileRenderer> tileRenderers = new ConcurrentLinkedQueue<>();
+    private volatile boolean wireframe;
+    private final AtlasFrameBudget frameBudget = new AtlasFrameBudget(
+            Config.getPref().getInt("atlas.frame.budget.milliseconds",
+                    DEFAULT_FRAME_BUDGET_MILLISECONDS),
+            TILE_THREADS);
+    // Tiles queued or being rendered, and tiles of the last view painted
+    private final Set<AtlasTileCache.Key> pendingTiles = ConcurrentHashMap.newKeySet();
+    private volatile Set<AtlasTileCache.Key> viewTiles = Collections.emptySet();
+    // Style version and projection of the cached tiles
+    private int tileStyleVersion;
+    private String tileProjection;
+    private volatile AtlasPickGrid pickGrid;
+    private volatile MapViewState pickGridState;
+    private AtlasPrimitive hovered;
+    private boolean hoveredWasHighlighted;
+    private final MouseMotionListener hoverListener = new MouseAdapter()
+    {
+        @Override
+        public void mouseMoved(final MouseEvent event)
+        {
+            hover(event);
+        }
+    };
+
+    /**
+     * Switches the layer between the map paint styles and the wireframe view.
+     *
+     * @author agent
+     */
+    private final class WireframeAction extends AbstractAction implements LayerAction
+    {
+        private static final long serialVersionUID = -1734360286526458101L;
+
+        WireframeAction()
+        {
+            super(tr("Wireframe"));
+            putValue(SHORT_DESCRIPTION,
+                    tr("Draw edges, lines and areas as outlines colored by Atlas item type"));
+        }
+
+        @Override
+        public void actionPerformed(final ActionEvent event)
+        {
+            AtlasReaderLayer.this.wireframe = !AtlasReaderLayer.this.wireframe;
+            invalidate();
+        }
+
+        @Override
+        public Component createMenuComponent()
+        {
+            final JCheckBoxMenuItem item = new JCheckBoxMenuItem(this);
+            item.setSelected(AtlasReaderLayer.this.wireframe);
+            return item;
+        }
+
+        @Override
+        public boolean supportLayers(final List<Layer> layers)
+        {
+            return layers.size() == 1 && layers.get(0) == AtlasReaderLayer.this;
+        }
+    }
+
+    /**
+     * Renders an area of the layer to an image file of any resolution, in the background.
+     *
+     * @author agent
+     */
+    private final class ExportAction extends AbstractAction implements LayerAction
+    {
+        private static final long serialVersionUID = 2291632465830573466L;
+
+        ExportAction()
+        {
+            super(tr("Export image..."));
+            putValue(SHORT_DESCRIPTION,
+                    tr("Render an area of the layer to a high resolution image, off screen"));
+        }
+
+        @Override
+        public void actionPerformed(final ActionEvent event)
+        {
+            final MapView map = MainApplication.getMap().mapView;
+            final JTextField boundsField = new JTextField(map.getRealBounds().encodeAsString(","));
+            final JSpinner widthField = new JSpinner(new SpinnerNumberModel(
+                    Math.min(EXPORT_MAXIMUM_WIDTH, map.getWidth() * EXPORT_DEFAULT_MAGNIFICATION),
+                    1, EXPORT_MAXIMUM_WIDTH, AtlasTileCache.TILE_SIZE));
+            final JCheckBox tiledField = new JCheckBox(tr("Write a directory of tiles"));
+            final JPanel panel = new JPanel(new GridLayout(0, 1));
+            panel.add(new JLabel(tr("Bounds (minimum latitude, longitude, maximum latitude, "
+                    + "longitude)")));
+            panel.add(boundsField);
+            panel.add(new JLabel(tr("Width in pixels")));
+            panel.add(widthField);
+            panel.add(tiledField);
+            if (JOptionPane.showConfirmDialog(Main.parent, panel,
+                    tr("Export image"), JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION)
+            {
+                return;
+            }
+            final Bounds exported;
+            try
+            {
+                exported = new Bounds(boundsField.getText(), ",");
+            }
+            catch (final IllegalArgumentException e)
+            {
+                JOptionPane.showMessageDialog(Main.parent, e.getMessage(),
+                        tr("Export image"), JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            final boolean tiled = tiledField.isSelected();
+            if (!tiled && (Integer) widthField.getValue() > AtlasImageExporter.MAXIMUM_PNG_WIDTH)
+            {
+                JOptionPane.showMessageDialog(Main.parent,
+                        tr("Images wider than {0} pixels need to be written as tiles",
+                                AtlasImageExporter.MAXIMUM_PNG_WIDTH),
+                        tr("Export image"), JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            final JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle(tiled ? tr("Directory of the tiles") : tr("PNG file"));
+            chooser.setFileSelectionMode(
+                    tiled ? JFileChooser.DIRECTORIES_ONLY : JFileChooser.FILES_ONLY);
+            if (chooser.showSaveDialog(Main.parent) != JFileChooser.APPROVE_OPTION)
+            {
+                return;
+            }
+            export(exported, map.getState().getProjection(), (Integer) widthField.getValue(),
+                    chooser.getSelectedFile(), tiled);
+        }
+
+        @Override
+        public Component createMenuComponent()
+        {
+            return new JMenuItem(this);
+        }
+
+        @Override
+        public boolean supportLayers(final List<Layer> layers)
+        {
+            return layers.size() == 1 && layers.get(0) == AtlasReaderLayer.this;
+        }
+    }
+
+    /**
+     * Converts the rest of a sampled atlas on request, and replaces the layer with the full one.
+     *
+     * @author agent
+     */
+    private final class LoadFullAction extends AbstractAction implements LayerAction
+    {
+        private static final long serialVersionUID = -4306207744215339380L;
+
+        LoadFullAction()
+        {
+            super(tr("Load full atlas"));
+            putValue(SHORT_DESCRIPTION,
+                    tr("Convert all the features of the atlas, not only the sample shown"));
+        }
+
+        @Override
+        public void actionPerformed(final ActionEvent event)
+        {
+            loadFull();
+        }
+
+        @Override
+        public Component createMenuComponent()
+        {
+            return new JMenuItem(this);
+        }
+
+        @Override
+        public boolean supportLayers(final List<Layer> layers)
+        {
+            return layers.size() == 1 && layers.get(0) == AtlasReaderLayer.this;
+        }
+    }
 
     public AtlasReaderLayer(final String info, final AtlasDataSet data, final Atlas atlas,
             final Bounds bounds)
+    {
+        this(info, data, atlas, bounds, AtlasImportProfile.EVERYTHING);
+    }
+
+    /**
+     * @param info
+     *            The name of the layer
+     * @param data
+     *            The dataset converted from the atlas
+     * @param atlas
+     *            The atlas
+     * @param bounds
+     *            The bounds of the dataset
+     * @param profile
+     *            The profile the dataset was converted with
+     */
+    public AtlasReaderLayer(final String info, final AtlasDataSet data, final Atlas atlas,
+            final Bounds bounds, final AtlasImportProfile profile)
     {
         super(info);
         this.atlas = atlas;
         this.data = data;
         this.bounds = bounds;
+        this.profile = profile;
+        this.wireframeRenderer = new AtlasWireframeRenderer(data);
+        this.styleWarmer = new AtlasStyleWarmer(data);
+        // Warms up the styles of the view the layer is about to be zoomed to
+        final MapFrame map = MainApplication.getMap();
+        if (bounds != null)
+        {
+            this.styleWarmer.start(bounds,
+                    map != null && map.mapView.getWidth() > 0 ? map.mapView.getWidth()
+                            : DEFAULT_VIEW_WIDTH,
+                    map != null && map.mapView.getHeight() > 0 ? map.mapView.getHeight()
+                            : DEFAULT_VIEW_HEIGHT);
+        }
         data.addSelectionListener(this);
+        MapPaintStyles.addMapPaintSylesUpdateListener(this);
         MainApplication.getLayerManager().addActiveLayerChangeListener(this);
         HistoryBrowserDialogManager.addHistoryHook(this);
     }
@@ -63,7 +403,24 @@ public class AtlasReaderLayer extends AbstractOsmDataLayer
     {
         HistoryBrowserDialogManager.removeHistoryHook(this);
         MainApplication.getLayerManager().removeActiveLayerChangeListener(this);
+        MapPaintStyles.removeMapPaintSylesUpdateListener(this);
+        if (MainApplication.getMap() != null)
+        {
+            MainApplication.getMap().mapView.removeMouseMotionListener(this.hoverListener);
+        }
+        this.styleWarmer.cancel();
+        this.pickGridState = null;
+        this.pickGrid = null;
+        this.hovered = null;
         data.removeSelectionListener(this);
+        this.searchCache.clear();
+        this.viewTiles = Collections.emptySet();
+        this.tileCache.clear();
+        this.tileRenderers.clear();
+        synchronized (this.tagStatistics)
+        {
+            this.tagStatistics.clear();
+        }
         this.atlas = null;
         this.data = null;
     }
@@ -85,6 +442,54 @@ public class AtlasReaderLayer extends AbstractOsmDataLayer
         return new ImageProvider("dialogs/world").setSize(ImageProvider.ImageSizes.LAYER).get();
     }
 
+    /**
+     * @return The cache of the results of the searches run on this layer
+     */
+    public AtlasSearchCache getSearchCache()
+    {
+        return this.searchCache;
+    }
+
+    /**
+     * Computes the statistics of the tags of the results of a search, or gets them from the
+     * statistics of the last scopes.
+     *
+     * @param mode
+     *            The mode of the search
+     * @param searchText
+     *            The text of the search
+     * @param ordinals
+     *            The complete results of the search
+     * @return The statistics of the results
+     */
+    public AtlasTagStatistics getTagStatistics(final SearchType mode, final String searchText,
+            final int[] ordinals)
+    {
+        final String key = AtlasSearchCache.key(mode, searchText);
+        synchronized (this.tagStatistics)
+        {
+            final AtlasTagStatistics cached = this.tagStatistics.get(key);
+            if (cached != null)
+            {
+                return cached;
+            }
+        }
+        final AtlasTagStatistics result = AtlasTagStatistics.of(this.data, ordinals);
+        synchronized (this.tagStatistics)
+        {
+            this.tagStatistics.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return The time budget of the frames of this layer, with the measures of their cost
+     */
+    public AtlasFrameBudget getFrameBudget()
+    {
+        return this.frameBudget;
+    }
+
     @Override
     public Object getInfoComponent()
     {
@@ -94,13 +499,35 @@ public class AtlasReaderLayer extends AbstractOsmDataLayer
     @Override
     public Action[] getMenuEntries()
     {
-        return new Action[0];
+        if (this.profile.isSampled())
+        {
+            return new Action[] { new WireframeAction(), new ExportAction(),
+                    new LoadFullAction() };
+        }
+        return new Action[] { new WireframeAction(), new ExportAction() };
     }
 
     @Override
     public String getToolTipText()
     {
-        return LAYER_NAME;
+        return tr("{0}, frames drawn in {1} ms", LAYER_NAME,
+                Math.round(this.frameBudget.getFrameMilliseconds()));
+    }
+
+    @Override
+    public void hookUpMapView()
+    {
+        super.hookUpMapView();
+        MainApplication.getMap().mapView.addMouseMotionListener(this.hoverListener);
+        final AtlasDataSet dataSet = this.data;
+        PREPARE_EXECUTOR.execute(() ->
+        {
+            dataSet.getPointClusters();
+            dataSet.getDensityGrid();
+            dataSet.getMultipolygons();
+            dataSet.buildLevelsOfDetail();
+            GuiHelper.runInEDT(this::invalidate);
+        });
     }
 
     @Override
@@ -115,17 +542,71 @@ public class AtlasReaderLayer extends AbstractOsmDataLayer
         visitor.visit(this.bounds);
     }
 
+    @Override
+    public void mapPaintStyleEntryUpdated(final int index)
+    {
+        mapPaintStylesUpdated();
+    }
+
+    @Override
+    public void mapPaintStylesUpdated()
+    {
+        // Bumps the style version of the tiles too, and restarts the warm-up of the styles at the
+        // next paint
+        this.styleWarmer.cancel();
+        data.clearMappaintCache();
+        invalidate();
+    }
+
+    /**
+     * Blits the cached tiles of the static content in view, queues the rendering of the missing
+     * ones, and draws the selection and highlights over them. The layer is repainted as the
+     * missing tiles are rendered. The time of the paint is measured against the frame budget.
+     */
     @Override
     public void paint(final Graphics2D g2d, final MapView map, final Bounds bbox)
     {
+        final long start = System.nanoTime();
         final boolean active = map.getLayerManager().getActiveLayer() == this;
         final boolean inactive = !active
                 && Config.getPref().getBoolean("draw.data.inactive_color", true);
-        final boolean virtual = !inactive && map.isVirtualNodesEnabled();
+        // Too zoomed out for features to be told apart: show where they are instead
+        final boolean density = map.getDist100Pixel() / HUNDRED > Config.getPref()
+                .getInt("atlas.density.meters.per.pixel", DEFAULT_DENSITY_METERS_PER_PIXEL);
+        if (density)
+        {
+            paintDensity(g2d, map, bbox);
+        }
+        else
+        {
+            // Nodes and points too dense to be told apart are drawn as clusters over the tiles,
+            // once the clusters are built
+            final AtlasPointClusters clusters = data.getPointClustersIfBuilt();
+            final int clusterLevel = clusters == null ? -1
+                    : clusters.level(bbox.getWidth() / map.getWidth(), Config.getPref()
+                            .getInt("atlas.cluster.pixels", DEFAULT_CLUSTER_PIXELS));
+            if (!this.wireframe)
+            {
+                this.styleWarmer.start(map.getState());
+            }
+            paintTiles(g2d, map, inactive, clusterLevel >= 0);
+            if (clusterLevel >= 0)
+            {
+                paintClusters(g2d, map, bbox, clusters, clusterLevel, inactive);
+            }
+        }
+        paintOverlay(g2d, map, bbox);
+        if (!density)
+        {
+            requestPickGrid(map.getState());
+        }
+        this.frameBudget.recordPaint(System.nanoTime() - start);
+    }
 
-        final Rendering painter = MapRendererFactory.getInstance().createActiveRenderer(g2d, map,
-                inactive);
-        painter.render(data, virtual, bbox);
+    @Override
+    public void projectionChanged(final Projection oldValue, final Projection newValue)
+    {
+        this.tileCache.clear();
     }
 
     @Override
@@ -162,6 +643,520 @@ public class AtlasReaderLayer extends AbstractOsmDataLayer
         }
     }
 
+    /**
+     * Exports an area of the layer in the background, as it is drawn now, with the map paint
+     * styles or as a wireframe.
+     */
+    private void export(final Bounds exported, final Projection projection, final int width,
+            final File target, final boolean tiled)
+    {
+        final AtlasImageExporter exporter = new AtlasImageExporter(data,
+                this.wireframe ? this.wireframeRenderer : null);
+        MainApplication.worker.submit(new PleaseWaitRunnable(tr("Exporting image"))
+        {
+            @Override
+            protected void cancel()
+            {
+                // The exporter stops at the next row of tiles once the monitor is cancelled
+            }
+
+            @Override
+            protected void realRun()
+            {
+                try
+                {
+                    exporter.export(exported, projection, width, target, tiled,
+                            getProgressMonitor());
+                }
+                catch (final IOException e)
+                {
+                    Logging.error(e);
+                    GuiHelper.runInEDT(() -> JOptionPane.showMessageDialog(
+                            Main.parent, e.getMessage(), tr("Export image"),
+                            JOptionPane.ERROR_MESSAGE));
+                }
+            }
+
+            @Override
+            protected void finish()
+            {
+                // Nothing to update
+            }
+        });
+    }
+
+    /**
+     * Converts the atlas again in the background, with the profile of the layer but without the
+     * sampling, and replaces the layer with the result.
+     */
+    private void loadFull()
+    {
+        final AtlasImportProfile full = this.profile.unsampled();
+        MainApplication.worker.submit(new PleaseWaitRunnable(tr("Loading full atlas"))
+        {
+            private boolean canceled;
+            private AtlasReaderLayer result;
+
+            @Override
+            protected void cancel()
+            {
+                // The conversion stops at its next feature, and its result is dropped
+                this.canceled = true;
+            }
+
+            @Override
+            protected void realRun()
+            {
+                final AtlasDataSet fullData = new AtlasDataSetBuilder().build(atlas, full,
+                        getProgressMonitor());
+                if (getProgressMonitor().isCanceled())
+                {
+                    return;
+                }
+                this.result = new AtlasReaderLayer("Atlas: " + atlas.getName(), fullData, atlas,
+                        fullData.getStatistics().getBounds(), full);
+            }
+
+            @Override
+            protected void finish()
+            {
+                if (this.result == null)
+                {
+                    return;
+                }
+                if (this.canceled)
+                {
+                    // Cancelled once the layer was built
+                    this.result.destroy();
+                    return;
+                }
+                // The new layer goes in first, so that the map stays open
+                MainApplication.getLayerManager().addLayer(this.result);
+                MainApplication.getLayerManager().setActiveLayer(this.result);
+                MainApplication.getLayerManager().removeLayer(AtlasReaderLayer.this);
+                MainApplication.getMap().addToggleDialog(new AtlasReaderDialog(this.result));
+            }
+        });
+    }
+
+    /**
+     * Highlights the feature under the mouse, and shows its tags in a tooltip.
+     */
+    private void hover(final MouseEvent event)
+    {
+        final MapView mapView = MainApplication.getMap().mapView;
+        final AtlasPickGrid grid = this.pickGrid;
+        final AtlasPrimitive nearest = mapView.getLayerManager().getActiveLayer() == this
+                && isVisible() && grid != null && grid.isFor(mapView.getState())
+                        ? grid.nearest(mapView.getState(), event.getPoint(),
+                                NavigatableComponent.PROP_SNAP_DISTANCE.get())
+                        : null;
+        if (nearest == this.hovered)
+        {
+            return;
+        }
+        // Leave the features highlighted by a search as they were
+        if (this.hovered != null && !this.hoveredWasHighlighted)
+        {
+            this.hovered.setHighlighted(false);
+        }
+        this.hovered = nearest;
+        if (nearest != null)
+        {
+            this.hoveredWasHighlighted = data.getHighlighted().contains(nearest);
+            nearest.setHighlighted(true);
+        }
+        mapView.setToolTipText(nearest == null ? null : tooltip(nearest));
+        invalidate();
+    }
+
+    private static String clusterLabel(final int count)
+    {
+        if (count >= MILLION)
+        {
+            return String.format("%.1fM", count / (double) MILLION);
+        }
+        if (count >= TEN * THOUSAND)
+        {
+            return count / THOUSAND + "k";
+        }
+        if (count >= THOUSAND)
+        {
+            return String.format("%.1fk", count / (double) THOUSAND);
+        }
+        return String.valueOf(count);
+    }
+
+    private static Color[] densityColors()
+    {
+        final Color[] result = new Color[DENSITY_COLOR_STEPS];
+        for (int step = 0; step < DENSITY_COLOR_STEPS; step++)
+        {
+            final float ratio = step / (float) (DENSITY_COLOR_STEPS - 1);
+            final Color color = Color.getHSBColor(DENSITY_BLUE_HUE * (1 - ratio), 1, 1);
+            result[step] = new Color(color.getRed(), color.getGreen(), color.getBlue(),
+                    Math.round(DENSITY_MINIMUM_ALPHA
+                            + (DENSITY_MAXIMUM_ALPHA - DENSITY_MINIMUM_ALPHA) * ratio));
+        }
+        return result;
+    }
+
+    /**
+     * Draws the clusters of the nodes and points in view, at their mean location, as disks growing
+     * with the logarithm of their size and labeled with it. Clusters of one feature are drawn as a
+     * dot where the feature is. The cells of the clusters are a few dozens of pixels wide, which
+     * bounds the number of markers drawn whatever the number of features.
+     */
+    private void paintClusters(final Graphics2D g2d, final MapView map, final Bounds bbox,
+            final AtlasPointClusters clusters, final int level, final boolean inactive)
+    {
+        final Color color = inactive ? PaintColors.INACTIVE.get() : CLUSTER_COLOR;
+        g2d.setFont(g2d.getFont().deriveFont(Font.BOLD));
+        final FontMetrics metrics = g2d.getFontMetrics();
+        final Ellipse2D disk = new Ellipse2D.Double();
+        clusters.visit(level, bbox, (location, count, ordinal) ->
+        {
+            final Point2D point = map.getPoint2D(location);
+            final double radius = count == 1 ? CLUSTER_POINT_RADIUS
+                    : CLUSTER_MINIMUM_RADIUS + CLUSTER_RADIUS_PER_DECADE * Math.log10(count);
+            disk.setFrame(point.getX() - radius, point.getY() - radius, 2 * radius, 2 * radius);
+            g2d.setColor(color);
+            g2d.fill(disk);
+            if (count > 1)
+            {
+                final String label = clusterLabel(count);
+                g2d.setColor(Color.WHITE);
+                final double baseline = point.getY()
+                        + (metrics.getAscent() - metrics.getDescent()) / 2.0;
+                g2d.drawString(label, (float) (point.getX() - metrics.stringWidth(label) / 2.0),
+                        (float) baseline);
+            }
+        });
+    }
+
+    /**
+     * Draws the density of the features in view as a heatmap, from the cells of the density grid
+     * that are a few pixels wide, once it is built. Colors follow the logarithm of the number of
+     * features per cell.
+     */
+    private void paintDensity(final Graphics2D g2d, final MapView map, final Bounds bbox)
+    {
+        final AtlasDensityGrid grid = data.getDensityGridIfBuilt();
+        if (grid == null)
+        {
+            return;
+        }
+        final int level = grid.level(bbox.getWidth() / map.getWidth(), DENSITY_CELL_PIXELS);
+        final double maximum = Math.log1p(grid.getMaximumTotal(level));
+        final Rectangle2D rectangle = new Rectangle2D.Double();
+        grid.visit(level, bbox, (cell, nodes, ways, relations) ->
+        {
+            rectangle.setFrameFromDiagonal(map.getPoint2D(cell.getMin()),
+                    map.getPoint2D(cell.getMax()));
+            g2d.setColor(DENSITY_COLORS[(int) Math.round(
+                    (DENSITY_COLOR_STEPS - 1) * Math.log1p(nodes + ways + relations) / maximum)]);
+            g2d.fill(rectangle);
+        });
+    }
+
+    /**
+     * Draws the selected and highlighted features in view, as thin outlines of their geometry at
+     * the level of detail of the view, or at a coarser one while paints are over the budget.
+     */
+    private void paintOverlay(final Graphics2D g2d, final MapView map, final Bounds bbox)
+    {
+        final Collection<AtlasPrimitive> selected = data.getAllSelected();
+        final Collection<AtlasPrimitive> highlighted = data.getHighlighted();
+        if (selected.isEmpty() && highlighted.isEmpty())
+        {
+            return;
+        }
+        final BBox view = new BBox(bbox.getMinLon(), bbox.getMinLat(), bbox.getMaxLon(),
+                bbox.getMaxLat());
+        g2d.setStroke(new BasicStroke(OVERLAY_WIDTH, BasicStroke.CAP_ROUND,
+                BasicStroke.JOIN_ROUND));
+        int level = AtlasLevelsOfDetail.levelFor(bbox, map.getWidth());
+        if (this.frameBudget.isPaintOverBudget())
+        {
+            level = Math.min(AtlasLevelsOfDetail.LEVELS - 1,
+                    level + AtlasFrameBudget.COARSE_LEVELS);
+        }
+        g2d.setColor(PaintColors.HIGHLIGHT.get());
+        for (final AtlasPrimitive primitive : highlighted)
+        {
+            paintOverlay(g2d, map, view, primitive, level, true);
+        }
+        g2d.setColor(PaintColors.SELECTED.get());
+        for (final AtlasPrimitive primitive : selected)
+        {
+            paintOverlay(g2d, map, view, primitive, level, true);
+        }
+    }
+
+    private void paintOverlay(final Graphics2D g2d, final MapView map, final BBox view,
+            final AtlasPrimitive primitive, final int level, final boolean withMembers)
+    {
+        if (!primitive.getBBox().intersects(view))
+        {
+            return;
+        }
+        if (primitive instanceof AtlasPunctual)
+        {
+            final Point2D point = map.getPoint2D(((AtlasPunctual) primitive).getCoor());
+            g2d.fill(new Ellipse2D.Double(point.getX() - OVERLAY_NODE_RADIUS,
+                    point.getY() - OVERLAY_NODE_RADIUS, 2 * OVERLAY_NODE_RADIUS,
+                    2 * OVERLAY_NODE_RADIUS));
+        }
+        else if (primitive instanceof AtlasLinear)
+        {
+            final Path2D path = new Path2D.Double();
+            for (final AtlasPunctual node : ((AtlasLinear<?>) primitive).getNodes(level))
+            {
+                final Point2D point = map.getPoint2D(node.getCoor());
+                if (path.getCurrentPoint() == null)
+                {
+                    path.moveTo(point.getX(), point.getY());
+                }
+                else
+                {
+                    path.lineTo(point.getX(), point.getY());
+                }
+            }
+            g2d.draw(path);
+        }
+        else if (primitive instanceof AtlasRelation
+                && data.getMultipolygon((AtlasRelation) primitive) != null)
+        {
+            paintMultipolygon(g2d, map, data.getMultipolygon((AtlasRelation) primitive));
+        }
+        else if (primitive instanceof AtlasRelation && withMembers)
+        {
+            // Members of members are left out, as relations can nest in cycles
+            for (final AtlasRelationMember member : ((AtlasRelation) primitive).getMembers())
+            {
+                paintOverlay(g2d, map, view, member.getMember(), level, false);
+            }
+        }
+    }
+
+    /**
+     * Draws the assembled rings of a multipolygon, filled with a translucent shade of the current
+     * color, with holes where the inner rings are.
+     */
+    private void paintMultipolygon(final Graphics2D g2d, final MapView map,
+            final AtlasMultipolygon multipolygon)
+    {
+        final Path2D path = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+        final List<AtlasMultipolygon.Ring> rings = new ArrayList<>(multipolygon.getOuterRings());
+        rings.addAll(multipolygon.getInnerRings());
+        for (final AtlasMultipolygon.Ring ring : rings)
+        {
+            final double[] eastNorths = ring.getEastNorths(map.getState().getProjection());
+            for (int index = 0; index < ring.getSize(); index++)
+            {
+                final Point2D point = map.getPoint2D(
+                        new EastNorth(eastNorths[2 * index], eastNorths[2 * index + 1]));
+                if (index == 0)
+                {
+                    path.moveTo(point.getX(), point.getY());
+                }
+                else
+                {
+                    path.lineTo(point.getX(), point.getY());
+                }
+            }
+            path.closePath();
+        }
+        final Color color = g2d.getColor();
+        g2d.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(),
+                OVERLAY_FILL_ALPHA));
+        g2d.fill(path);
+        g2d.setColor(color);
+        g2d.draw(path);
+    }
+
+    /**
+     * Blits the tiles in view that are cached, and renders the others on the tile workers, from
+     * the center of the view outwards. Tiles are aligned on a grid of the projected plane, so that
+     * the same tiles cover the view as long as the scale does not change. When the missing tiles
+     * would take longer than the frame budget, draft tiles are rendered first, and drawn until
+     * the tiles of full quality replace them.
+     */
+    private void paintTiles(final Graphics2D g2d, final MapView map, final boolean inactive,
+            final boolean clustered)
+    {
+        final int styleVersion = data.getMappaintCacheIndex();
+        final String projection = map.getState().getProjection().toCode();
+        if (styleVersion != this.tileStyleVersion || !projection.equals(this.tileProjection))
+        {
+            this.tileCache.clear();
+            this.tileStyleVersion = styleVersion;
+            this.tileProjection = projection;
+        }
+        final int tileSize = AtlasTileCache.TILE_SIZE;
+        final double scale = map.getScale();
+        final double span = scale * tileSize;
+        final EastNorth topLeft = map.getEastNorth(0, 0);
+        final EastNorth bottomRight = map.getEastNorth(map.getWidth(), map.getHeight());
+        final long minimumColumn = (long) Math.floor(topLeft.east() / span);
+        final long maximumColumn = (long) Math.floor(bottomRight.east() / span);
+        final long minimumRow = (long) Math.floor(-topLeft.north() / span);
+        final long maximumRow = (long) Math.floor(-bottomRight.north() / span);
+        // The other tiles are exactly a tile away from the first one, which avoids seams
+        final Point2D origin = map
+                .getPoint2D(new EastNorth(minimumColumn * span, -minimumRow * span));
+        final int originX = (int) Math.round(origin.getX());
+        final int originY = (int) Math.round(origin.getY());
+        final Set<AtlasTileCache.Key> inView = new HashSet<>();
+        final List<AtlasTileCache.Key> missing = new ArrayList<>();
+        for (long row = minimumRow; row <= maximumRow; row++)
+        {
+            for (long column = minimumColumn; column <= maximumColumn; column++)
+            {
+                final AtlasTileCache.Key key = new AtlasTileCache.Key(scale, column, row,
+                        styleVersion, projection, inactive, this.wireframe, clustered,
+                        AtlasFrameBudget.FULL);
+                final BufferedImage full = this.tileCache.get(key);
+                BufferedImage tile = full;
+                for (int quality = AtlasFrameBudget.FULL; quality < AtlasFrameBudget.QUALITIES;
+                        quality++)
+                {
+                    final AtlasTileCache.Key draft = key.withQuality(quality);
+                    inView.add(draft);
+                    if (tile == null && quality > AtlasFrameBudget.FULL)
+                    {
+                        tile = this.tileCache.get(draft);
+                    }
+                }
+                if (full == null)
+                {
+                    missing.add(key);
+                }
+                if (tile != null)
+                {
+                    g2d.drawImage(tile, originX + (int) (column - minimumColumn) * tileSize,
+                            originY + (int) (row - minimumRow) * tileSize, null);
+                }
+            }
+        }
+        // Queued tiles that are not in view any more are skipped
+        this.viewTiles = inView;
+        final double centerColumn = (minimumColumn + maximumColumn) / 2.0;
+        final double centerRow = (minimumRow + maximumRow) / 2.0;
+        missing.sort(Comparator.comparingDouble(key -> Math.hypot(key.getColumn() - centerColumn,
+                key.getRow() - centerRow)));
+        final int draftQuality = this.frameBudget.draftQuality(missing.size(), this.wireframe);
+        if (draftQuality != AtlasFrameBudget.FULL)
+        {
+            for (final AtlasTileCache.Key key : missing)
+            {
+                queueTile(key.withQuality(draftQuality));
+            }
+        }
+        for (final AtlasTileCache.Key key : missing)
+        {
+            queueTile(key);
+        }
+    }
+
+    private void queueTile(final AtlasTileCache.Key key)
+    {
+        if (this.tileCache.get(key) == null && this.pendingTiles.add(key))
+        {
+            TILE_EXECUTOR.execute(() -> renderTile(key));
+        }
+    }
+
+    /**
+     * Renders a tile on a tile worker if it is still in view, and repaints the layer with it.
+     * Draft tiles are skipped once the tile of full quality is rendered.
+     */
+    private void renderTile(final AtlasTileCache.Key key)
+    {
+        try
+        {
+            if (this.viewTiles.contains(key) && (key.getQuality() == AtlasFrameBudget.FULL
+                    || this.tileCache.get(key.withQuality(AtlasFrameBudget.FULL)) == null))
+            {
+                AtlasTileRenderer renderer = this.tileRenderers.poll();
+                if (renderer == null)
+                {
+                    renderer = new AtlasTileRenderer(data, this.wireframeRenderer);
+                }
+                final long start = System.nanoTime();
+                final BufferedImage tile;
+                try
+                {
+                    tile = renderer.render(key);
+                }
+                finally
+                {
+                    this.tileRenderers.offer(renderer);
+                }
+                this.frameBudget.recordTile(key.getQuality(), System.nanoTime() - start);
+                this.tileCache.put(key, tile);
+                GuiHelper.runInEDT(this::invalidate);
+            }
+        }
+        catch (final Exception e)
+        {
+            Logging.error(e);
+        }
+        finally
+        {
+            this.pendingTiles.remove(key);
+        }
+    }
+
+    /**
+     * Builds the chunks of the pick grid in view in the background after a repaint. The grid is
+     * kept across pans and replaced when the scale or the projection changes. Views that are left
+     * before their chunks are built are skipped.
+     */
+    private void requestPickGrid(final MapViewState state)
+    {
+        final AtlasDataSet dataSet = this.data;
+        if (dataSet == null || state == this.pickGridState)
+        {
+            return;
+        }
+        AtlasPickGrid grid = this.pickGrid;
+        if (grid == null || !grid.isFor(state))
+        {
+            grid = new AtlasPickGrid(dataSet, state);
+            this.pickGrid = grid;
+        }
+        else if (grid.covers(state))
+        {
+            return;
+        }
+        this.pickGridState = state;
+        final AtlasPickGrid target = grid;
+        PICK_GRID_EXECUTOR.execute(() ->
+        {
+            if (this.pickGridState == state && this.pickGrid == target)
+            {
+                target.cover(state);
+            }
+        });
+    }
+
+    private static String tooltip(final AtlasPrimitive primitive)
+    {
+        final StringBuilder result = new StringBuilder("<html><b>");
+        result.append(primitive.getPrimitiveId());
+        result.append("</b>");
+        new TreeMap<>(primitive.getKeys()).forEach((key, value) ->
+        {
+            result.append("<br>");
+            result.append(Utils.escapeReservedCharactersHTML(key));
+            result.append('=');
+            result.append(Utils.escapeReservedCharactersHTML(value));
+        });
+        result.append("</html>");
+        return result.toString();
+    }
+
     @Override
     public void activeOrEditLayerChanged(final ActiveLayerChangeEvent e)
     {
@@ -1,28 +1,45 @@
 package org.openstreetmap.atlas;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-
-import javax.swing.DefaultListModel;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.DoublePredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.math.NumberUtils;
-import org.openstreetmap.atlas.AtlasReaderDialog.PrintablePrimitive;
 import org.openstreetmap.atlas.data.AtlasDataSet;
+import org.openstreetmap.atlas.data.AtlasIdentifierIndex;
+import org.openstreetmap.atlas.data.AtlasIdentifierIndex.Matches;
 import org.openstreetmap.atlas.data.AtlasLinear;
+import org.openstreetmap.atlas.data.AtlasMultipolygon;
+import org.openstreetmap.atlas.data.AtlasOrdinalSet;
 import org.openstreetmap.atlas.data.AtlasPrimitive;
 import org.openstreetmap.atlas.data.AtlasPunctual;
 import org.openstreetmap.atlas.data.AtlasRelation;
+import org.openstreetmap.atlas.data.AtlasRelationMember;
+import org.openstreetmap.atlas.data.AtlasTagIndex;
 import org.openstreetmap.atlas.exception.CoreException;
-import org.openstreetmap.atlas.geography.atlas.Atlas;
 import org.openstreetmap.atlas.utilities.collections.StringList;
 import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.BBox;
 import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
-import org.openstreetmap.josm.data.osm.PrimitiveId;
+import org.openstreetmap.josm.data.osm.search.SearchCompiler;
+import org.openstreetmap.josm.data.osm.search.SearchCompiler.Match;
+import org.openstreetmap.josm.data.osm.search.SearchParseError;
 import org.openstreetmap.josm.tools.Logging;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
-
 /**
  * @author jgage
  */
@@ -35,8 +52,12 @@ public class AtlasSearch
     {
         OSM_IDENTIFIER("OSM ID"),
         ATLAS_IDENTIFIER("Atlas ID"),
+        ATLAS_IDENTIFIER_LIST("Atlas ID List"),
         TAG("Tag"),
-        BOX("Box"),
+        JOSM_SYNTAX("JOSM Syntax"),
+        BOX("Box Intersects"),
+        BOX_CONTAINS("Box Contains"),
+        WITHIN_RELATION("Within Relation"),
         ALL("All");
 
         private final String name;
@@ -64,145 +85,182 @@ public class AtlasSearch
         }
     }
 
+    private static final Pattern OSM_IDENTIFIER_PATTERN = Pattern
+            .compile("(?i)(n|node|w|way|r|relation)?\\s*(\\d+)(\\*)?");
+    private static final Pattern IDENTIFIER_PATTERN = Pattern.compile("-?\\d+");
+    private static final Pattern RANGE_PATTERN = Pattern
+            .compile("\\s*([^<>=~]+?)\\s*(>=|<=|>|<)\\s*(-?\\d+(?:\\.\\d+)?)\\s*");
+    private static final Pattern REGEX_PATTERN = Pattern
+            .compile("\\s*([^<>=~]*?)\\s*~(?:/(.*)/|(.*))");
+    private static final int THREE = 3;
+    private static final int SCAN_BATCH_SIZE = 65_536;
+
     private final AtlasDataSet dataSet;
     private final SearchType mode;
-    private BiMap<Integer, PrimitiveId> indexToIdentifier;
-    private final DefaultListModel<PrintablePrimitive> listAll;
-    private final Atlas atlas;
-    private final BiMap<Integer, PrimitiveId> indexToIdentifierAll;
-
-    public AtlasSearch(final Atlas atlas, final AtlasDataSet data, final SearchType mode,
-            final DefaultListModel<PrintablePrimitive> listAll,
-            final BiMap<Integer, PrimitiveId> indexToIdentifierAll)
+    private final AtlasSearchCache cache;
+    private long[] missingIdentifiers = new long[0];
+
+    /**
+     * @param data
+     *            The dataset to search
+     * @param mode
+     *            The search mode
+     * @param cache
+     *            The cache of the results of the previous searches on this dataset
+     */
+    public AtlasSearch(final AtlasDataSet data, final SearchType mode,
+            final AtlasSearchCache cache)
     {
         this.dataSet = data;
         this.mode = mode;
-        this.indexToIdentifier = HashBiMap.create();
-        this.listAll = listAll;
-        this.indexToIdentifierAll = indexToIdentifierAll;
-        this.atlas = atlas;
+        this.cache = cache;
+    }
+
+    /**
+     * Runs the search. Cached results are delivered at once. Otherwise scanning modes deliver
+     * their results in several batches as they progress, and stop early when the calling thread is
+     * interrupted. Complete results are then cached.
+     *
+     * @param searchText
+     *            The text of the search
+     * @param results
+     *            Receives batches of ordinals of the matching primitives. The ordinals are
+     *            ascending within and across batches.
+     */
+    public void search(final String searchText, final Consumer<int[]> results)
+    {
+        // Identifier lists are too long to be worth a cache key, and need to report missing ones
+        if (this.mode == SearchType.ATLAS_IDENTIFIER_LIST)
+        {
+            searchUncached(searchText, results);
+            return;
+        }
+        final Optional<AtlasOrdinalSet> cached = this.cache.get(this.mode, searchText);
+        if (cached.isPresent())
+        {
+            results.accept(cached.get().toArray());
+            return;
+        }
+        final List<int[]> batches = new ArrayList<>();
+        searchUncached(searchText, batch ->
+        {
+            batches.add(batch);
+            results.accept(batch);
+        });
+        if (!Thread.currentThread().isInterrupted())
+        {
+            this.cache.put(this.mode, searchText, AtlasOrdinalSet
+                    .of(batches.stream().flatMapToInt(IntStream::of).toArray()));
+        }
     }
 
-    public BiMap<Integer, PrimitiveId> getIndexToIdentifier()
+    /**
+     * @return The identifiers of the last Atlas ID List search that did not match any primitive,
+     *         in ascending order
+     */
+    public long[] getMissingIdentifiers()
     {
-        return this.indexToIdentifier;
+        return this.missingIdentifiers;
     }
 
-    public DefaultListModel<PrintablePrimitive> search(final String searchText)
+    private void searchUncached(final String searchText, final Consumer<int[]> results)
     {
-        DefaultListModel<PrintablePrimitive> results = new DefaultListModel<>();
         switch (this.mode)
         {
             case ATLAS_IDENTIFIER:
-                if (NumberUtils.isNumber(searchText))
-                {
-                    try
-                    {
-                        results = search(Long.parseLong(searchText));
-                    }
-                    catch (final Exception e)
-                    {
-                        Logging.error(e);
-                    }
-                }
+                results.accept(searchAtlasIdentifier(searchText));
+                break;
+            case ATLAS_IDENTIFIER_LIST:
+                results.accept(searchAtlasIdentifierList(searchText));
                 break;
             case OSM_IDENTIFIER:
-                return searchOSM(searchText);
+                results.accept(searchOSM(searchText));
+                break;
             case TAG:
-                return searchByTag(searchText);
+                searchByTag(searchText, results);
+                break;
+            case JOSM_SYNTAX:
+                syntaxPredicate(searchText).ifPresent(predicate -> scan(predicate, results));
+                break;
             case BOX:
-                return searchByBoundingBox(searchText);
+                results.accept(searchByBoundingBox(searchText, false));
+                break;
+            case BOX_CONTAINS:
+                results.accept(searchByBoundingBox(searchText, true));
+                break;
+            case WITHIN_RELATION:
+                results.accept(searchWithinRelation(searchText));
+                break;
             case ALL:
-                return returnAll();
+                scan(primitive -> !isUntaggedPunctual(primitive), results);
+                break;
             default:
                 throw new CoreException("Invalid mode {}", this.mode);
         }
-        return results;
     }
 
     /**
-     * Search by two tags separated by " AND ".
+     * Search by Atlas ID.
      */
-    private DefaultListModel<PrintablePrimitive> compoundSearch(final String tag)
+    private int[] searchAtlasIdentifier(final String searchText)
     {
-        final DefaultListModel<PrintablePrimitive> results = new DefaultListModel<>();
-        final StringList searchTags = StringList.split(tag, " AND ");
-        final DefaultListModel<PrintablePrimitive> firstResults = searchByTag(searchTags.get(0));
-        final DefaultListModel<PrintablePrimitive> secondResults = searchByTag(searchTags.get(1));
-        final HashSet<AtlasPrimitive> firstPrimitives = new HashSet<>();
-        final HashSet<AtlasPrimitive> secondPrimitives = new HashSet<>();
-        for (int i = 0; i < firstResults.size(); i++)
+        if (NumberUtils.isNumber(searchText))
         {
-            firstPrimitives.add(firstResults.get(i).getOsmPrimitive());
-        }
-        for (int i = 0; i < secondResults.size(); i++)
-        {
-            secondPrimitives.add(secondResults.get(i).getOsmPrimitive());
-        }
-        int index = 0;
-        this.indexToIdentifier.clear();
-        for (final AtlasPrimitive result : firstPrimitives)
-        {
-            if (secondPrimitives.contains(result))
+            try
+            {
+                final long identifier = Long.parseLong(searchText);
+                for (final OsmPrimitiveType type : OsmPrimitiveType.dataValues())
+                {
+                    final AtlasPrimitive primitive = this.dataSet.getPrimitiveById(identifier,
+                            type);
+                    if (primitive != null)
+                    {
+                        return new int[] { primitive.getOrdinal() };
+                    }
+                }
+            }
+            catch (final Exception e)
             {
-                results.addElement(new PrintablePrimitive(index, result));
-                this.indexToIdentifier.put(index, result.getPrimitiveId());
-                index++;
+                Logging.error(e);
             }
         }
-        return results;
-    }
-
-    /**
-     * Returns all items in the DataSet.
-     */
-    private DefaultListModel<PrintablePrimitive> returnAll()
-    {
-        this.indexToIdentifier = this.indexToIdentifierAll;
-        return this.listAll;
+        return new int[0];
     }
 
     /**
-     * Search by Atlas ID.
+     * Search by a list of Atlas IDs, separated by any non numeric characters: spaces, new lines,
+     * commas... The whole list is resolved in one pass over the sorted identifiers of the dataset.
      */
-    private DefaultListModel<PrintablePrimitive> search(final long osmID)
+    private int[] searchAtlasIdentifierList(final String searchText)
     {
-        final DefaultListModel<PrintablePrimitive> results = new DefaultListModel<>();
-        this.indexToIdentifier.clear();
-        final int index = 0;
-        if (this.dataSet.getPrimitiveById(osmID, OsmPrimitiveType.NODE) != null)
-        {
-            final AtlasPrimitive node = this.dataSet.getPrimitiveById(osmID, OsmPrimitiveType.NODE);
-            results.addElement(new PrintablePrimitive(index, node));
-            this.indexToIdentifier.put(index, node.getPrimitiveId());
-        }
-        else if (this.dataSet.getPrimitiveById(osmID, OsmPrimitiveType.WAY) != null)
+        final Matcher matcher = IDENTIFIER_PATTERN.matcher(searchText);
+        final LongStream.Builder identifiers = LongStream.builder();
+        while (matcher.find())
         {
-            final AtlasPrimitive way = this.dataSet.getPrimitiveById(osmID, OsmPrimitiveType.WAY);
-            results.addElement(new PrintablePrimitive(index, way));
-            this.indexToIdentifier.put(index, way.getPrimitiveId());
-        }
-        else if (this.dataSet.getPrimitiveById(osmID, OsmPrimitiveType.RELATION) != null)
-        {
-            final AtlasPrimitive relation = this.dataSet.getPrimitiveById(osmID,
-                    OsmPrimitiveType.RELATION);
-            results.addElement(new PrintablePrimitive(index, relation));
-            this.indexToIdentifier.put(index, relation.getPrimitiveId());
+            try
+            {
+                identifiers.add(Long.parseLong(matcher.group()));
+            }
+            catch (final NumberFormatException e)
+            {
+                Logging.warn(e.getMessage());
+            }
         }
-        return results;
+        final Matches matches = this.dataSet.getIdentifierIndex()
+                .getOrdinalsByAtlasIdentifiers(identifiers.build().toArray());
+        this.missingIdentifiers = matches.getMissing();
+        return matches.getOrdinals();
     }
 
     /**
-     * Search by bounding box.
+     * Search by bounding box, through the spatial index of the dataset. With contains semantics
+     * only the features entirely inside the box are returned, otherwise all the features whose
+     * geometry intersects it are: the candidates of the index, which only overlap the box with
+     * their bounds, are tested segment by segment.
      */
-    private DefaultListModel<PrintablePrimitive> searchByBoundingBox(final String bounds)
+    private int[] searchByBoundingBox(final String bounds, final boolean contains)
     {
-        final DefaultListModel<PrintablePrimitive> results = new DefaultListModel<>();
-        if (this.indexToIdentifier != null)
-        {
-            this.indexToIdentifier.clear();
-        }
-        int index = 0;
+        final BBox box;
         try
         {
             final String[] splitBounds = bounds.split(":|\\,");
@@ -213,157 +271,477 @@ public class AtlasSearch
                 coordinates[i] = Double.parseDouble(splitBounds[i]);
             }
             final Bounds boundingBox = new Bounds(coordinates);
-            for (final AtlasPunctual node : this.dataSet.getNodes())
+            box = new BBox(boundingBox.getMinLon(), boundingBox.getMinLat(),
+                    boundingBox.getMaxLon(), boundingBox.getMaxLat());
+        }
+        catch (final Exception e)
+        {
+            Logging.error(e);
+            return new int[0];
+        }
+        final Stream<AtlasPrimitive> candidates = Stream.<AtlasPrimitive> concat(
+                Stream.<AtlasPrimitive> concat(
+                        this.dataSet.searchNodes(box).stream()
+                                .filter(node -> !node.isShapePoint()),
+                        this.dataSet.searchWays(box).stream()),
+                this.dataSet.searchRelations(box).stream());
+        return candidates
+                .filter(primitive -> contains ? box.bounds(primitive.getBBox())
+                        : intersects(primitive, box))
+                .mapToInt(AtlasPrimitive::getOrdinal).sorted().toArray();
+    }
+
+    /**
+     * @return True if a segment crosses the box or lies in it, with the Liang-Barsky clipping of
+     *         the segment by the sides of the box
+     */
+    private static boolean intersects(final BBox box, final double startLongitude,
+            final double startLatitude, final double endLongitude, final double endLatitude)
+    {
+        final double deltaLongitude = endLongitude - startLongitude;
+        final double deltaLatitude = endLatitude - startLatitude;
+        final double[] directions = { -deltaLongitude, deltaLongitude, -deltaLatitude,
+                deltaLatitude };
+        final double[] distances = { startLongitude - box.getTopLeftLon(),
+                box.getBottomRightLon() - startLongitude, startLatitude - box.getBottomRightLat(),
+                box.getTopLeftLat() - startLatitude };
+        double enter = 0;
+        double exit = 1;
+        for (int side = 0; side < directions.length; side++)
+        {
+            if (directions[side] == 0)
             {
-                // dataSet creates garbage id's for shapepoints, need to filter those nodes
-                if (boundingBox.contains(node.getCoor())
-                        && (this.atlas.node(node.getPrimitiveId().getUniqueId()) != null
-                                || this.atlas.point(node.getPrimitiveId().getUniqueId()) != null))
+                // Parallel to the side, and outside of it
+                if (distances[side] < 0)
                 {
-                    results.addElement(new PrintablePrimitive(index, node));
-                    this.indexToIdentifier.put(index, node.getPrimitiveId());
-                    index++;
+                    return false;
                 }
+                continue;
             }
-            for (final AtlasLinear<?> way : this.dataSet.getWays())
+            final double crossing = distances[side] / directions[side];
+            if (directions[side] < 0)
             {
-                if (boundingBox.contains(way.getBBox().getCenter()))
-                {
-                    results.addElement(new PrintablePrimitive(index, way));
-                    this.indexToIdentifier.put(index, way.getPrimitiveId());
-                    index++;
-                }
+                enter = Math.max(enter, crossing);
             }
-            for (final AtlasRelation relation : this.dataSet.getRelations())
+            else
             {
-                if (boundingBox.contains(relation.getBBox().getCenter()))
+                exit = Math.min(exit, crossing);
+            }
+            if (enter > exit)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean intersects(final List<? extends AtlasPunctual> nodes, final BBox box)
+    {
+        if (nodes.size() == 1)
+        {
+            return box.bounds(nodes.get(0).getCoor());
+        }
+        for (int index = 1; index < nodes.size(); index++)
+        {
+            final LatLon start = nodes.get(index - 1).getCoor();
+            final LatLon end = nodes.get(index).getCoor();
+            if (intersects(box, start.lon(), start.lat(), end.lon(), end.lat()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if a ring crosses the box or lies in it, or if the box lies inside the
+     *         multipolygon
+     */
+    private static boolean intersects(final AtlasMultipolygon multipolygon, final BBox box)
+    {
+        final List<AtlasMultipolygon.Ring> rings = new ArrayList<>(multipolygon.getOuterRings());
+        rings.addAll(multipolygon.getInnerRings());
+        for (final AtlasMultipolygon.Ring ring : rings)
+        {
+            // Open rings are considered closed by a straight segment, as for containment
+            for (int index = 0, previous = ring.getSize() - 1; index < ring.getSize();
+                    previous = index++)
+            {
+                if (intersects(box, ring.getLongitude(previous), ring.getLatitude(previous),
+                        ring.getLongitude(index), ring.getLatitude(index)))
                 {
-                    results.addElement(new PrintablePrimitive(index, relation));
-                    this.indexToIdentifier.put(index, relation.getPrimitiveId());
-                    index++;
+                    return true;
                 }
             }
         }
-        catch (final Exception e)
+        return multipolygon.contains(new LatLon(box.getTopLeftLat(), box.getTopLeftLon()));
+    }
+
+    /**
+     * @return True if the geometry of a primitive intersects the box. Relations that are not
+     *         multipolygons intersect it through their members, and the members that are
+     *         relations themselves through their bounds, as relations can nest in cycles.
+     */
+    private boolean intersects(final AtlasPrimitive primitive, final BBox box)
+    {
+        if (primitive instanceof AtlasPunctual)
         {
-            Logging.error(e);
+            return box.bounds(((AtlasPunctual) primitive).getCoor());
+        }
+        if (primitive instanceof AtlasLinear)
+        {
+            return intersects(((AtlasLinear<?>) primitive).getNodes(), box);
+        }
+        final AtlasRelation relation = (AtlasRelation) primitive;
+        final AtlasMultipolygon multipolygon = this.dataSet.getMultipolygon(relation);
+        if (multipolygon != null)
+        {
+            return intersects(multipolygon, box);
         }
-        return results;
+        for (final AtlasRelationMember member : relation.getMembers())
+        {
+            final AtlasPrimitive memberPrimitive = member.getMember();
+            if (memberPrimitive instanceof AtlasRelation ? box.intersects(memberPrimitive.getBBox())
+                    : intersects(memberPrimitive, box))
+            {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * Search by tag.
+     * Search of the features inside a multipolygon or boundary relation, given by its Atlas ID.
+     * Candidates come from the spatial index within the bounds of the relation, and are kept if
+     * their location, or all the nodes of their geometry, are inside its cached rings.
      */
-    private DefaultListModel<PrintablePrimitive> searchByTag(final String tag)
+    private int[] searchWithinRelation(final String searchText)
     {
-        final DefaultListModel<PrintablePrimitive> results = new DefaultListModel<>();
-        if (this.indexToIdentifier != null)
+        final AtlasRelation relation;
+        try
         {
-            this.indexToIdentifier.clear();
+            relation = (AtlasRelation) this.dataSet.getPrimitiveById(
+                    Long.parseLong(searchText.trim()), OsmPrimitiveType.RELATION);
         }
-        int index = 0;
-        if (tag.contains(" AND "))
+        catch (final NumberFormatException e)
         {
-            return compoundSearch(tag);
+            Logging.warn(e.getMessage());
+            return new int[0];
         }
-        if (tag.contains("="))
+        final AtlasMultipolygon multipolygon = relation == null ? null
+                : this.dataSet.getMultipolygon(relation);
+        if (multipolygon == null)
         {
-            final StringList keyVal = StringList.split(tag, "=");
-            String key = "";
-            String val = "";
-            if (keyVal.size() > 0)
+            return new int[0];
+        }
+        final BBox box = multipolygon.getBounds();
+        final Stream<AtlasPrimitive> candidates = Stream.<AtlasPrimitive> concat(
+                this.dataSet.searchNodes(box).stream()
+                        .filter(node -> !node.isShapePoint()
+                                && multipolygon.contains(node.getCoor())),
+                this.dataSet.searchWays(box).stream().filter(way -> way.getNodes().stream()
+                        .allMatch(node -> multipolygon.contains(node.getCoor()))));
+        return candidates.mapToInt(AtlasPrimitive::getOrdinal).sorted().toArray();
+    }
+
+    /**
+     * Search by OSM ID. The text is an OSM identifier optionally preceded by a type ("n", "w",
+     * "r", "node", "way" or "relation"), and optionally followed by "*" to match identifier
+     * prefixes. All the Atlas features derived from the matching OSM features are returned.
+     */
+    private int[] searchOSM(final String searchText)
+    {
+        final Matcher matcher = OSM_IDENTIFIER_PATTERN.matcher(searchText.trim());
+        if (!matcher.matches())
+        {
+            return new int[0];
+        }
+        final long osmIdentifier;
+        try
+        {
+            osmIdentifier = Long.parseLong(matcher.group(2));
+        }
+        catch (final NumberFormatException e)
+        {
+            Logging.warn(e.getMessage());
+            return new int[0];
+        }
+        final boolean prefix = matcher.group(THREE) != null;
+        final Collection<OsmPrimitiveType> types = matcher.group(1) == null
+                ? OsmPrimitiveType.dataValues()
+                : Collections.singleton(osmPrimitiveType(matcher.group(1)));
+        final AtlasIdentifierIndex index = this.dataSet.getIdentifierIndex();
+        return types.stream()
+                .map(type -> prefix ? index.getOrdinalsWithPrefix(type, osmIdentifier)
+                        : index.getOrdinals(type, osmIdentifier))
+                .flatMapToInt(IntStream::of).sorted().toArray();
+    }
+
+    /**
+     * Evaluates a predicate against all the primitives of the dataset.
+     */
+    private void scan(final Predicate<AtlasPrimitive> predicate, final Consumer<int[]> results)
+    {
+        scan(this.dataSet.getPrimitivesCount(), IntUnaryOperator.identity(), predicate, results);
+    }
+
+    /**
+     * Evaluates a predicate against candidate primitives only.
+     */
+    private void scan(final int[] candidates, final Predicate<AtlasPrimitive> predicate,
+            final Consumer<int[]> results)
+    {
+        scan(candidates.length, index -> candidates[index], predicate, results);
+    }
+
+    /**
+     * Evaluates a predicate against primitives, using all the available cores. The primitives are
+     * scanned in batches, and the scan stops at the end of a batch if the calling thread has been
+     * interrupted.
+     *
+     * @param size
+     *            The number of primitives to scan
+     * @param ordinals
+     *            The ordinal of each primitive to scan, in ascending order
+     * @param predicate
+     *            The predicate to test
+     * @param results
+     *            Receives the ordinals of the matching primitives of each batch, in primitive
+     *            order
+     */
+    private void scan(final int size, final IntUnaryOperator ordinals,
+            final Predicate<AtlasPrimitive> predicate, final Consumer<int[]> results)
+    {
+        for (int start = 0; start < size
+                && !Thread.currentThread().isInterrupted(); start += SCAN_BATCH_SIZE)
+        {
+            final int[] batch = IntStream.range(start, Math.min(start + SCAN_BATCH_SIZE, size))
+                    .parallel().map(ordinals)
+                    .filter(ordinal -> predicate
+                            .test(this.dataSet.getPrimitiveByOrdinal(ordinal)))
+                    .toArray();
+            if (batch.length > 0)
             {
-                key = keyVal.get(0);
+                results.accept(batch);
             }
-            if (keyVal.size() > 1)
+        }
+    }
+
+    /**
+     * Search by tag, with several terms separated by " AND ". Each term is either "key", "value",
+     * "key=value", a numeric range like "lanes>=4", or a regular expression on values like
+     * "name~/^Rue/" ("~text" searches a substring, and the key is optional). The cached results of
+     * single terms, and the ranges on keys with a numeric column are exact sets of primitives that
+     * are intersected. Regular expressions narrow that set down with the trigram index. Only the
+     * primitives in the intersection are then tested against the other terms.
+     */
+    private void searchByTag(final String searchText, final Consumer<int[]> results)
+    {
+        AtlasOrdinalSet candidates = null;
+        Predicate<AtlasPrimitive> predicate = null;
+        for (final String term : StringList.split(searchText, " AND "))
+        {
+            final Optional<AtlasOrdinalSet> cached = this.cache.get(SearchType.TAG, term);
+            final Matcher range = RANGE_PATTERN.matcher(term);
+            final Matcher regex = REGEX_PATTERN.matcher(term);
+            final AtlasOrdinalSet termCandidates;
+            Predicate<AtlasPrimitive> termPredicate = null;
+            if (cached.isPresent())
             {
-                val = keyVal.get(1);
+                termCandidates = cached.get();
             }
-            for (final AtlasPunctual node : this.dataSet.getNodes())
+            else if (range.matches()
+                    && this.dataSet.getTagIndex().hasNumericColumn(range.group(1)))
             {
-                final Map<String, String> keyMap = node.getKeys();
-                if (keyMap.containsValue(val) && keyMap.containsKey(key))
-                {
-                    results.addElement(new PrintablePrimitive(index, node));
-                    this.indexToIdentifier.put(index, node.getPrimitiveId());
-                    index++;
-                }
+                termCandidates = AtlasOrdinalSet.of(searchRange(range.group(1),
+                        range.group(2), Double.parseDouble(range.group(THREE))));
             }
-            for (final AtlasLinear<?> way : this.dataSet.getWays())
+            else if (regex.matches())
             {
-                final Map<String, String> keyMap = way.getKeys();
-                if (keyMap.containsValue(val) && keyMap.containsKey(key))
+                final String key = regex.group(1);
+                final Pattern pattern;
+                final List<String> literals;
+                try
                 {
-                    results.addElement(new PrintablePrimitive(index, way));
-                    this.indexToIdentifier.put(index, way.getPrimitiveId());
-                    index++;
+                    if (regex.group(2) != null)
+                    {
+                        pattern = Pattern.compile(regex.group(2));
+                        literals = AtlasTagIndex.requiredLiterals(regex.group(2));
+                    }
+                    else
+                    {
+                        pattern = Pattern.compile(Pattern.quote(regex.group(THREE)));
+                        literals = Collections.singletonList(regex.group(THREE));
+                    }
                 }
-            }
-            for (final AtlasRelation relation : this.dataSet.getRelations())
-            {
-                final Map<String, String> keyMap = relation.getKeys();
-                if (keyMap.containsValue(val) && keyMap.containsKey(key))
+                catch (final PatternSyntaxException e)
                 {
-                    results.addElement(new PrintablePrimitive(index, relation));
-                    this.indexToIdentifier.put(index, relation.getPrimitiveId());
-                    index++;
+                    Logging.warn(e.getMessage());
+                    return;
                 }
-            }
-        }
-        else
-        {
-            for (final AtlasPunctual node : this.dataSet.getNodes())
-            {
-                final Map<String, String> keyMap = node.getKeys();
-                if (keyMap.containsValue(tag) || keyMap.containsKey(tag))
+                termCandidates = AtlasOrdinalSet.of(
+                        this.dataSet.getTagIndex().getOrdinalsWithValueMatching(pattern, literals));
+                if (!key.isEmpty())
                 {
-                    results.addElement(new PrintablePrimitive(index, node));
-                    this.indexToIdentifier.put(index, node.getPrimitiveId());
-                    index++;
+                    termPredicate = primitive ->
+                    {
+                        final String value = primitive.get(key);
+                        return value != null && pattern.matcher(value).find();
+                    };
                 }
             }
-            for (final AtlasLinear<?> way : this.dataSet.getWays())
+            else
             {
-                final Map<String, String> keyMap = way.getKeys();
-                if (keyMap.containsValue(tag) || keyMap.containsKey(tag))
-                {
-                    results.addElement(new PrintablePrimitive(index, way));
-                    this.indexToIdentifier.put(index, way.getPrimitiveId());
-                    index++;
-                }
+                termCandidates = null;
+                termPredicate = termPredicate(term);
             }
-            for (final AtlasRelation relation : this.dataSet.getRelations())
+            if (termCandidates != null)
             {
-                final Map<String, String> keyMap = relation.getKeys();
-                if (keyMap.containsValue(tag) || keyMap.containsKey(tag))
-                {
-                    results.addElement(new PrintablePrimitive(index, relation));
-                    this.indexToIdentifier.put(index, relation.getPrimitiveId());
-                    index++;
-                }
+                candidates = candidates == null ? termCandidates
+                        : candidates.and(termCandidates);
             }
+            if (termPredicate != null)
+            {
+                predicate = predicate == null ? termPredicate : predicate.and(termPredicate);
+            }
+        }
+        if (candidates == null)
+        {
+            scan(predicate, results);
+        }
+        else if (predicate == null)
+        {
+            results.accept(candidates.toArray());
+        }
+        else
+        {
+            scan(candidates.toArray(), predicate, results);
+        }
+    }
+
+    /**
+     * Search a range of values of a key with a numeric column.
+     */
+    private int[] searchRange(final String key, final String operator, final double bound)
+    {
+        final AtlasTagIndex index = this.dataSet.getTagIndex();
+        switch (operator)
+        {
+            case ">":
+                return index.getOrdinalsInRange(key, bound, false, Double.POSITIVE_INFINITY,
+                        true);
+            case ">=":
+                return index.getOrdinalsInRange(key, bound, true, Double.POSITIVE_INFINITY,
+                        true);
+            case "<":
+                return index.getOrdinalsInRange(key, Double.NEGATIVE_INFINITY, true, bound,
+                        false);
+            case "<=":
+                return index.getOrdinalsInRange(key, Double.NEGATIVE_INFINITY, true, bound,
+                        true);
+            default:
+                throw new CoreException("Invalid comparison {}", operator);
         }
-        return results;
     }
 
     /**
-     * Search by OSM ID.
+     * Compiles an expression of the JOSM search syntax into a predicate evaluated against the
+     * tags of every tagged primitive.
      */
-    private DefaultListModel<PrintablePrimitive> searchOSM(final String searchText)
+    private static Optional<Predicate<AtlasPrimitive>> syntaxPredicate(final String expression)
+    {
+        final Match match;
+        try
+        {
+            match = SearchCompiler.compile(expression);
+        }
+        catch (final SearchParseError e)
+        {
+            Logging.warn(e.getMessage());
+            return Optional.empty();
+        }
+        return Optional.of(primitive -> !isUntaggedPunctual(primitive) && match.match(primitive));
+    }
+
+    private static OsmPrimitiveType osmPrimitiveType(final String name)
     {
-        final DefaultListModel<PrintablePrimitive> results = new DefaultListModel<>();
-        this.indexToIdentifier.clear();
-        int index = 0;
-        for (final AtlasPrimitive primitive : this.dataSet.allPrimitives())
+        switch (Character.toLowerCase(name.charAt(0)))
         {
-            if (String.valueOf(primitive.getPrimitiveId()).contains(searchText)
-                    && primitive.getId() > 0)
+            case 'n':
+                return OsmPrimitiveType.NODE;
+            case 'w':
+                return OsmPrimitiveType.WAY;
+            case 'r':
+                return OsmPrimitiveType.RELATION;
+            default:
+                throw new CoreException("Unrecognized OSM type {}", name);
+        }
+    }
+
+    private static boolean isUntaggedPunctual(final AtlasPrimitive primitive)
+    {
+        return primitive instanceof AtlasPunctual && !primitive.hasKeys();
+    }
+
+    /**
+     * Search by numeric range on keys without a numeric column, by scanning and parsing their
+     * values.
+     */
+    private static Predicate<AtlasPrimitive> termPredicate(final String term)
+    {
+        final Matcher range = RANGE_PATTERN.matcher(term);
+        if (!range.matches())
+        {
+            return tagPredicate(term);
+        }
+        final String key = range.group(1);
+        final String operator = range.group(2);
+        final double bound = Double.parseDouble(range.group(THREE));
+        final DoublePredicate comparison;
+        switch (operator)
+        {
+            case ">":
+                comparison = number -> number > bound;
+                break;
+            case ">=":
+                comparison = number -> number >= bound;
+                break;
+            case "<":
+                comparison = number -> number < bound;
+                break;
+            case "<=":
+                comparison = number -> number <= bound;
+                break;
+            default:
+                throw new CoreException("Invalid comparison {}", operator);
+        }
+        return primitive ->
+        {
+            final double number = AtlasTagIndex.parseNumber(primitive.get(key));
+            return !Double.isNaN(number) && comparison.test(number);
+        };
+    }
+
+    /**
+     * Search by tag, "key", "value" or "key=value".
+     */
+    private static Predicate<AtlasPrimitive> tagPredicate(final String tag)
+    {
+        if (tag.contains("="))
+        {
+            final StringList keyVal = StringList.split(tag, "=");
+            final String key = keyVal.size() > 0 ? keyVal.get(0) : "";
+            final String val = keyVal.size() > 1 ? keyVal.get(1) : "";
+            return primitive ->
             {
-                results.addElement(new PrintablePrimitive(index, primitive));
-                this.indexToIdentifier.put(index, primitive.getPrimitiveId());
-                index++;
-            }
+                final Map<String, String> keyMap = primitive.getKeys();
+                return keyMap.containsValue(val) && keyMap.containsKey(key);
+            };
         }
-        return results;
+        return primitive ->
+        {
+            final Map<String, String> keyMap = primitive.getKeys();
+            return keyMap.containsValue(tag) || keyMap.containsKey(tag);
+        };
     }
 }
@@ -0,0 +1,128 @@
+package org.openstreetmap.atlas;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import org.openstreetmap.atlas.AtlasSearch.SearchType;
+import org.openstreetmap.atlas.data.AtlasOrdinalSet;
+import org.openstreetmap.atlas.utilities.collections.StringList;
+
+/**
+ * Least recently used cache of the results of the searches run on a layer, keyed on their mode and
+ * normalized text, within a memory budget.
+ *
+ * @author agent
+ */
+public class AtlasSearchCache
+{
+    private static final String AND = " AND ";
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final long maximumBytes;
+    private final Map<String, AtlasOrdinalSet> results = new LinkedHashMap<>(
+            INITIAL_CAPACITY, LOAD_FACTOR, true);
+    private long bytes;
+
+    /**
+     * Normalizes a query, so that queries that always have the same results share a key.
+     *
+     * @param mode
+     *            The search mode
+     * @param searchText
+     *            The text of the search
+     * @return The key of the query
+     */
+    static String key(final SearchType mode, final String searchText)
+    {
+        final String normalized;
+        switch (mode)
+        {
+            case TAG:
+                // The terms of a compound search commute
+                final String[] terms = StringList.split(searchText.trim(), AND).stream()
+                        .distinct().sorted().toArray(String[]::new);
+                normalized = String.join(AND, Arrays.asList(terms));
+                break;
+            case OSM_IDENTIFIER:
+                normalized = searchText.trim().toLowerCase(Locale.ENGLISH);
+                break;
+            case BOX:
+            case BOX_CONTAINS:
+                normalized = searchText.replaceAll("\\s", "");
+                break;
+            case ALL:
+                normalized = "";
+                break;
+            default:
+                normalized = searchText.trim();
+                break;
+        }
+        return mode.name() + ":" + normalized;
+    }
+
+    /**
+     * @param maximumBytes
+     *            The memory budget of the cached results. A budget of zero disables caching.
+     */
+    public AtlasSearchCache(final long maximumBytes)
+    {
+        this.maximumBytes = maximumBytes;
+    }
+
+    public synchronized void clear()
+    {
+        this.results.clear();
+        this.bytes = 0;
+    }
+
+    /**
+     * @param mode
+     *            The search mode
+     * @param searchText
+     *            The text of the search
+     * @return The cached results of the query, if any
+     */
+    public synchronized Optional<AtlasOrdinalSet> get(final SearchType mode,
+            final String searchText)
+    {
+        return Optional.ofNullable(this.results.get(key(mode, searchText)));
+    }
+
+    /**
+     * Caches the complete results of a query, and evicts the least recently used results until
+     * the cache fits its memory budget again.
+     *
+     * @param mode
+     *            The search mode
+     * @param searchText
+     *            The text of the search
+     * @param ordinals
+     *            The results
+     */
+    public synchronized void put(final SearchType mode, final String searchText,
+            final AtlasOrdinalSet ordinals)
+    {
+        final long size = ordinals.sizeInBytes();
+        if (size > this.maximumBytes)
+        {
+            return;
+        }
+        final AtlasOrdinalSet replaced = this.results.put(key(mode, searchText), ordinals);
+        if (replaced != null)
+        {
+            this.bytes -= replaced.sizeInBytes();
+        }
+        this.bytes += size;
+        final Iterator<AtlasOrdinalSet> eldest = this.results.values().iterator();
+        while (this.bytes > this.maximumBytes)
+        {
+            this.bytes -= eldest.next().sizeInBytes();
+            eldest.remove();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.openstreetmap.atlas;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.util.Comparator;
+import java.util.Map;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.table.AbstractTableModel;
+
+import org.openstreetmap.atlas.data.AtlasTagStatistics;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+
+/**
+ * Shows the statistics of the tags of a search scope: a summary of the types and geometry, the
+ * histogram of the keys, and the histogram of the values of the key selected in it.
+ *
+ * @author agent
+ */
+public class AtlasStatisticsPanel extends JPanel
+{
+    private static final long serialVersionUID = -3212954795185044310L;
+    private static final double METERS_PER_KILOMETER = 1_000.0;
+    private static final double SQUARE_METERS_PER_SQUARE_KILOMETER = 1_000_000.0;
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 400;
+    private static final double PERCENT = 100.0;
+    private static final double HALF = 0.5;
+
+    /**
+     * Rows of a histogram, from the most to the least frequent.
+     *
+     * @author agent
+     */
+    private static final class HistogramModel extends AbstractTableModel
+    {
+        private static final long serialVersionUID = 6110466342719262011L;
+        private static final String[] COLUMNS = { "Name", "Count", "%" };
+
+        private final String name;
+        private final String[] names;
+        private final int[] counts;
+        private final int total;
+
+        HistogramModel(final String name, final Map<String, Integer> histogram,
+                final int total)
+        {
+            this.names = histogram.entrySet().stream()
+                    .sorted(Map.Entry.<String, Integer> comparingByValue(Comparator.reverseOrder())
+                            .thenComparing(Map.Entry.comparingByKey()))
+                    .map(Map.Entry::getKey).toArray(String[]::new);
+            this.counts = new int[this.names.length];
+            for (int row = 0; row < this.names.length; row++)
+            {
+                this.counts[row] = histogram.get(this.names[row]);
+            }
+            this.total = total;
+            this.name = name;
+        }
+
+        @Override
+        public Class<?> getColumnClass(final int column)
+        {
+            switch (column)
+            {
+                case 0:
+                    return String.class;
+                case 1:
+                    return Integer.class;
+                default:
+                    return Double.class;
+            }
+        }
+
+        @Override
+        public int getColumnCount()
+        {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(final int column)
+        {
+            return column == 0 ? this.name : COLUMNS[column];
+        }
+
+        @Override
+        public int getRowCount()
+        {
+            return this.names.length;
+        }
+
+        @Override
+        public Object getValueAt(final int row, final int column)
+        {
+            switch (column)
+            {
+                case 0:
+                    return this.names[row];
+                case 1:
+                    return this.counts[row];
+                default:
+                    return this.total == 0 ? 0.0 : PERCENT * this.counts[row] / this.total;
+            }
+        }
+    }
+
+    /**
+     * @param statistics
+     *            The statistics to show
+     */
+    public AtlasStatisticsPanel(final AtlasTagStatistics statistics)
+    {
+        super(new BorderLayout());
+        final int tagged = statistics.getPrimitives() - statistics.getShapePoints();
+        add(new JLabel(String.format(
+                "<html>%d features: %d nodes and points, %d ways, %d relations<br>"
+                        + "%.1f km of ways, %.1f km\u00b2 of areas</html>",
+                tagged, statistics.getTypeCount(OsmPrimitiveType.NODE)
+                        - statistics.getShapePoints(),
+                statistics.getTypeCount(OsmPrimitiveType.WAY),
+                statistics.getTypeCount(OsmPrimitiveType.RELATION),
+                statistics.getLengthInMeters() / METERS_PER_KILOMETER,
+                statistics.getSurfaceInSquareMeters() / SQUARE_METERS_PER_SQUARE_KILOMETER)),
+                BorderLayout.NORTH);
+
+        final JTable keys = new JTable(
+                new HistogramModel("Key", statistics.getKeyCounts(), tagged));
+        keys.setAutoCreateRowSorter(true);
+        keys.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        final JTable values = new JTable();
+        values.setAutoCreateRowSorter(true);
+        keys.getSelectionModel().addListSelectionListener(event ->
+        {
+            final int row = keys.getSelectedRow();
+            if (!event.getValueIsAdjusting() && row >= 0)
+            {
+                final String key = (String) keys.getValueAt(row, 0);
+                values.setModel(new HistogramModel(key,
+                        statistics.getValueCounts(key), statistics.getKeyCounts().get(key)));
+            }
+        });
+        final JSplitPane split = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT,
+                new JScrollPane(keys), new JScrollPane(values));
+        split.setResizeWeight(HALF);
+        add(split, BorderLayout.CENTER);
+        setPreferredSize(new Dimension(WIDTH, HEIGHT));
+    }
+}
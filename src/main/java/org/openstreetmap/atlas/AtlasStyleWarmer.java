@@ -0,0 +1,223 @@
+package org.openstreetmap.atlas;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import org.openstreetmap.atlas.data.AtlasDataSet;
+import org.openstreetmap.atlas.data.AtlasPrimitive;
+import org.openstreetmap.atlas.data.AtlasPunctual;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.gui.MapViewState;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.gui.mappaint.ElemStyles;
+import org.openstreetmap.josm.gui.mappaint.MapPaintStyles;
+import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSStyleSource;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Computes the styles of all the primitives of a dataset in the background, for the first
+ * rendering of each area to find them cached. Primitives are styled in batches on low priority
+ * threads, from the closest to the center of the view outwards, against an off-screen copy of the
+ * view. A warm-up stops as soon as the map paint styles change, which bumps the style version of
+ * the dataset, or when it is cancelled.
+ *
+ * @author agent
+ */
+public class AtlasStyleWarmer
+{
+    private static final int BATCH_SIZE = 4096;
+    // Entries hold the distance to the center, as float bits, and then the ordinal
+    private static final int ORDINAL_BITS = 32;
+    private static final long ORDINAL_MASK = (1L << ORDINAL_BITS) - 1;
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            Utils.newThreadFactory("atlas-style-%d", Thread.MIN_PRIORITY));
+
+    private final AtlasDataSet dataSet;
+    private volatile int generation;
+    private boolean started;
+    private short styleVersion;
+
+    /**
+     * View of the size of a view of the map, that is never shown.
+     *
+     * @author agent
+     */
+    private static final class OffScreenView extends NavigatableComponent
+    {
+        private static final long serialVersionUID = -6129438262771465095L;
+
+        OffScreenView(final int width, final int height)
+        {
+            setBounds(0, 0, Math.max(1, width), Math.max(1, height));
+            updateLocationState();
+        }
+
+        @Override
+        public Point getLocationOnScreen()
+        {
+            return new Point(0, 0);
+        }
+
+        @Override
+        protected boolean isVisibleOnScreen()
+        {
+            return true;
+        }
+    }
+
+    /**
+     * @param dataSet
+     *            The dataset to style
+     */
+    public AtlasStyleWarmer(final AtlasDataSet dataSet)
+    {
+        this.dataSet = dataSet;
+    }
+
+    /**
+     * Stops the warm-up in progress, if any. The next call to {@link #start} starts a new one.
+     */
+    public synchronized void cancel()
+    {
+        this.generation++;
+        this.started = false;
+    }
+
+    /**
+     * Starts warming up the styles of a view that shows some bounds, unless a warm-up already
+     * started for the current styles.
+     *
+     * @param bounds
+     *            The bounds shown by the view
+     * @param width
+     *            The width of the view, in pixels
+     * @param height
+     *            The height of the view, in pixels
+     */
+    public synchronized void start(final Bounds bounds, final int width, final int height)
+    {
+        if (!isStarted())
+        {
+            final NavigatableComponent view = new OffScreenView(width, height);
+            view.zoomTo(bounds);
+            start(view);
+        }
+    }
+
+    /**
+     * Starts warming up the styles at the scale of a state of a view, around its center, unless a
+     * warm-up already started for the current styles.
+     *
+     * @param state
+     *            The state of the view
+     */
+    public synchronized void start(final MapViewState state)
+    {
+        if (!isStarted())
+        {
+            final NavigatableComponent view = new OffScreenView(state.getViewWidth(),
+                    state.getViewHeight());
+            view.zoomTo(state.getCenter().getEastNorth(), state.getScale());
+            start(view);
+        }
+    }
+
+    /**
+     * @return The ordinals of the primitives, from the closest to the farthest from a location
+     */
+    private int[] byDistance(final LatLon center)
+    {
+        final double cosine = Math.cos(Math.toRadians(center.lat()));
+        final long[] entries = IntStream.range(0, this.dataSet.getPrimitivesCount()).parallel()
+                .mapToLong(ordinal ->
+                {
+                    final AtlasPrimitive primitive = this.dataSet.getPrimitiveByOrdinal(ordinal);
+                    final LatLon location;
+                    if (primitive instanceof AtlasPunctual)
+                    {
+                        location = ((AtlasPunctual) primitive).getCoor();
+                    }
+                    else
+                    {
+                        final BBox box = primitive.getBBox();
+                        location = box.isValid() ? box.getCenter() : null;
+                    }
+                    final float distance = location == null ? Float.MAX_VALUE
+                            : (float) Math.hypot((location.lon() - center.lon()) * cosine,
+                                    location.lat() - center.lat());
+                    // Bits of positive floats sort like the floats
+                    return (long) Float.floatToIntBits(distance) << ORDINAL_BITS | ordinal;
+                }).toArray();
+        Arrays.parallelSort(entries);
+        final int[] result = new int[entries.length];
+        for (int index = 0; index < entries.length; index++)
+        {
+            result[index] = (int) (entries[index] & ORDINAL_MASK);
+        }
+        return result;
+    }
+
+    /**
+     * @return True if a warm-up started for the current styles
+     */
+    private boolean isStarted()
+    {
+        return this.started && this.styleVersion == this.dataSet.getMappaintCacheIndex();
+    }
+
+    /**
+     * Warms up the styles of an off-screen view, which no other thread changes.
+     */
+    private void start(final NavigatableComponent view)
+    {
+        final short version = this.dataSet.getMappaintCacheIndex();
+        this.started = true;
+        this.styleVersion = version;
+        final int run = ++this.generation;
+        final double scale = view.getDist100Pixel();
+        final LatLon center = view.getLatLon(view.getWidth() / 2, view.getHeight() / 2);
+        EXECUTOR.execute(() ->
+        {
+            final int[] ordinals = byDistance(center);
+            for (int from = 0; from < ordinals.length; from += BATCH_SIZE)
+            {
+                final int start = from;
+                EXECUTOR.execute(() -> warm(ordinals, start,
+                        Math.min(ordinals.length, start + BATCH_SIZE), run, version, scale, view));
+            }
+        });
+    }
+
+    private void warm(final int[] ordinals, final int from, final int until, final int run,
+            final short version, final double scale, final NavigatableComponent view)
+    {
+        if (this.generation != run || this.dataSet.getMappaintCacheIndex() != version)
+        {
+            return;
+        }
+        final ElemStyles styles = MapPaintStyles.getStyles();
+        MapCSSStyleSource.STYLE_SOURCE_LOCK.readLock().lock();
+        try
+        {
+            for (int index = from; index < until; index++)
+            {
+                styles.get(this.dataSet.getPrimitiveByOrdinal(ordinals[index]), scale, view);
+            }
+        }
+        catch (final Exception e)
+        {
+            Logging.error(e);
+        }
+        finally
+        {
+            MapCSSStyleSource.STYLE_SOURCE_LOCK.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package org.openstreetmap.atlas;
+
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Least recently used cache of the raster tiles of the static content of a layer. Tiles are
+ * squares of {@link #TILE_SIZE} pixels of the projected plane at one scale, keyed on everything
+ * that changes how they look: the version of the map paint styles, the projection, the inactive,
+ * wireframe and clustered modes, and the quality of the tile.
+ *
+ * @author agent
+ */
+public class AtlasTileCache
+{
+    /**
+     * Size of the side of a tile, in pixels
+     */
+    public static final int TILE_SIZE = 256;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final int maximumTiles;
+    private final Map<Key, BufferedImage> tiles = new LinkedHashMap<>(INITIAL_CAPACITY,
+            LOAD_FACTOR, true);
+
+    /**
+     * Key of a tile.
+     *
+     * @author agent
+     */
+    public static final class Key
+    {
+        private final double scale;
+        private final long column;
+        private final long row;
+        private final int styleVersion;
+        private final String projection;
+        private final boolean inactive;
+        private final boolean wireframe;
+        private final boolean clustered;
+        private final int quality;
+
+        /**
+         * @param scale
+         *            The scale of the tile, in east/north units per pixel
+         * @param column
+         *            The column of the tile, increasing to the east
+         * @param row
+         *            The row of the tile, increasing to the south
+         * @param styleVersion
+         *            The version of the styles the tile is drawn with
+         * @param projection
+         *            The code of the projection of the tile
+         * @param inactive
+         *            True if the tile is drawn for an inactive layer
+         * @param wireframe
+         *            True if the tile is drawn as a wireframe rather than with the map paint
+         *            styles
+         * @param clustered
+         *            True if the tile is drawn without the nodes and points, which are drawn as
+         *            clusters over it
+         * @param quality
+         *            The quality of the tile, one of the qualities of {@link AtlasFrameBudget}
+         */
+        public Key(final double scale, final long column, final long row, final int styleVersion,
+                final String projection, final boolean inactive, final boolean wireframe,
+                final boolean clustered, final int quality)
+        {
+            this.scale = scale;
+            this.column = column;
+            this.row = row;
+            this.styleVersion = styleVersion;
+            this.projection = projection;
+            this.inactive = inactive;
+            this.wireframe = wireframe;
+            this.clustered = clustered;
+            this.quality = quality;
+        }
+
+        @Override
+        public boolean equals(final Object other)
+        {
+            if (this == other)
+            {
+                return true;
+            }
+            if (!(other instanceof Key))
+            {
+                return false;
+            }
+            final Key that = (Key) other;
+            return Double.compare(this.scale, that.scale) == 0 && this.column == that.column
+                    && this.row == that.row && this.styleVersion == that.styleVersion
+                    && this.inactive == that.inactive && this.wireframe == that.wireframe
+                    && this.clustered == that.clustered && this.quality == that.quality
+                    && this.projection.equals(that.projection);
+        }
+
+        public long getColumn()
+        {
+            return this.column;
+        }
+
+        public int getQuality()
+        {
+            return this.quality;
+        }
+
+        public long getRow()
+        {
+            return this.row;
+        }
+
+        public double getScale()
+        {
+            return this.scale;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(this.scale, this.column, this.row, this.styleVersion,
+                    this.projection, this.inactive, this.wireframe, this.clustered, this.quality);
+        }
+
+        public boolean isClustered()
+        {
+            return this.clustered;
+        }
+
+        public boolean isInactive()
+        {
+            return this.inactive;
+        }
+
+        public boolean isWireframe()
+        {
+            return this.wireframe;
+        }
+
+        /**
+         * @param quality
+         *            A quality
+         * @return The key of the same tile at that quality
+         */
+        public Key withQuality(final int quality)
+        {
+            return new Key(this.scale, this.column, this.row, this.styleVersion, this.projection,
+                    this.inactive, this.wireframe, this.clustered, quality);
+        }
+    }
+
+    /**
+     * @param maximumTiles
+     *            The number of tiles to keep
+     */
+    public AtlasTileCache(final int maximumTiles)
+    {
+        this.maximumTiles = maximumTiles;
+    }
+
+    public synchronized void clear()
+    {
+        this.tiles.clear();
+    }
+
+    /**
+     * @param key
+     *            The key of a tile
+     * @return The tile, or null if it is not cached
+     */
+    public synchronized BufferedImage get(final Key key)
+    {
+        return this.tiles.get(key);
+    }
+
+    /**
+     * Caches a tile, and evicts the least recently used tiles over the size of the cache.
+     *
+     * @param key
+     *            The key of the tile
+     * @param tile
+     *            The tile
+     */
+    public synchronized void put(final Key key, final BufferedImage tile)
+    {
+        this.tiles.put(key, tile);
+        while (this.tiles.size() > this.maximumTiles)
+        {
+            this.tiles.remove(this.tiles.keySet().iterator().next());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.openstreetmap.atlas;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openstreetmap.atlas.data.AtlasDataSet;
+import org.openstreetmap.atlas.data.AtlasLevelsOfDetail;
+import org.openstreetmap.atlas.data.AtlasStaticView;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.visitor.paint.MapRendererFactory;
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.visitor.paint.Rendering;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.gui.mappaint.ElemStyles;
+import org.openstreetmap.josm.gui.mappaint.MapPaintStyles;
+import org.openstreetmap.josm.gui.mappaint.StyleElementList;
+import org.openstreetmap.josm.gui.mappaint.styleelement.AreaElement;
+import org.openstreetmap.josm.gui.mappaint.styleelement.LineElement;
+import org.openstreetmap.josm.gui.mappaint.styleelement.StyleElement;
+
+/**
+ * Renders the static content of a dataset into raster tiles, through an off-screen view of the
+ * size of a tile, with the map paint styles or as a wireframe. The selection and highlights are
+ * left out, as they are drawn over the tiles, and so are the nodes and points of the tiles drawn
+ * under clusters. The ways are drawn at the level of detail of the scale, with the map paint
+ * styles as well as in wireframes. Draft tiles without labels keep only the styles of the lines
+ * and areas, which skips the placement of the texts and icons. Not thread safe: each rendering
+ * thread needs its own renderer.
+ *
+ * @author agent
+ */
+public class AtlasTileRenderer
+{
+    private static final int TILE_SIZE = AtlasTileCache.TILE_SIZE;
+    // Features around the tile are rendered too, so that labels and symbols crossing its edges
+    // are drawn in both tiles
+    private static final int MARGIN = TILE_SIZE / 4;
+    private static final double HALF = 0.5;
+    private static final ElemStyles NO_LABELS = new NoLabelStyles();
+
+    private final AtlasDataSet dataSet;
+    private final AtlasWireframeRenderer wireframe;
+    private final NavigatableComponent view = new NavigatableComponent()
+    {
+        private static final long serialVersionUID = 4616624622926233487L;
+
+        {
+            setBounds(0, 0, TILE_SIZE, TILE_SIZE);
+            updateLocationState();
+        }
+
+        @Override
+        public Point getLocationOnScreen()
+        {
+            return new Point(0, 0);
+        }
+
+        @Override
+        protected boolean isVisibleOnScreen()
+        {
+            return true;
+        }
+    };
+
+    /**
+     * @param dataSet
+     *            The dataset to render
+     * @param wireframe
+     *            The renderer of the wireframe tiles, which can be shared
+     */
+    public AtlasTileRenderer(final AtlasDataSet dataSet, final AtlasWireframeRenderer wireframe)
+    {
+        this.dataSet = dataSet;
+        this.wireframe = wireframe;
+    }
+
+    /**
+     * @param key
+     *            The key of the tile
+     * @return The tile, transparent where there is nothing to draw
+     */
+    public BufferedImage render(final AtlasTileCache.Key key)
+    {
+        final double span = key.getScale() * TILE_SIZE;
+        return render(new EastNorth((key.getColumn() + HALF) * span, -(key.getRow() + HALF) * span),
+                key.getScale(), key.isWireframe() || key.getQuality() == AtlasFrameBudget.WIREFRAME,
+                key.isInactive(), key.getQuality() != AtlasFrameBudget.FULL,
+                key.getQuality() == AtlasFrameBudget.NO_LABELS, key.isClustered());
+    }
+
+    /**
+     * Renders a tile at full quality, with all the features, anywhere in the projected plane.
+     *
+     * @param center
+     *            The center of the tile
+     * @param scale
+     *            The scale of the tile, in east/north units per pixel
+     * @param wireframe
+     *            True to draw the tile as a wireframe rather than with the map paint styles
+     * @return The tile, transparent where there is nothing to draw
+     */
+    public BufferedImage render(final EastNorth center, final double scale,
+            final boolean wireframe)
+    {
+        return render(center, scale, wireframe, false, false, false, false);
+    }
+
+    private BufferedImage render(final EastNorth center, final double scale,
+            final boolean wireframe, final boolean inactive, final boolean coarse,
+            final boolean unlabeled, final boolean clustered)
+    {
+        this.view.zoomTo(center, scale);
+        final Bounds bounds = this.view.getLatLonBounds(new Rectangle(-MARGIN, -MARGIN,
+                TILE_SIZE + 2 * MARGIN, TILE_SIZE + 2 * MARGIN));
+
+        final BufferedImage result = new BufferedImage(TILE_SIZE, TILE_SIZE,
+                BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D graphics = result.createGraphics();
+        int level = AtlasLevelsOfDetail.levelFor(bounds, TILE_SIZE + 2 * MARGIN);
+        if (coarse)
+        {
+            level = Math.min(AtlasLevelsOfDetail.LEVELS - 1,
+                    level + AtlasFrameBudget.COARSE_LEVELS);
+        }
+        try
+        {
+            if (wireframe)
+            {
+                this.wireframe.render(graphics, this.view, bounds, inactive, level, clustered);
+            }
+            else
+            {
+                final Rendering painter = MapRendererFactory.getInstance()
+                        .createActiveRenderer(graphics, this.view, inactive);
+                if (unlabeled && painter instanceof StyledMapRenderer)
+                {
+                    ((StyledMapRenderer) painter).setStyles(NO_LABELS);
+                }
+                painter.render(new AtlasStaticView(this.dataSet, clustered, level), false, bounds);
+            }
+        }
+        finally
+        {
+            graphics.dispose();
+        }
+        return result;
+    }
+
+    /**
+     * The map paint styles of the lines and areas only, without the texts, icons and symbols
+     *
+     * @author agent
+     */
+    private static final class NoLabelStyles extends ElemStyles
+    {
+        @Override
+        public StyleElementList get(final IPrimitive primitive, final double scale,
+                final NavigatableComponent view)
+        {
+            final List<StyleElement> result = new ArrayList<>();
+            for (final StyleElement element : MapPaintStyles.getStyles().get(primitive, scale,
+                    view))
+            {
+                if (element instanceof LineElement || element instanceof AreaElement)
+                {
+                    result.add(element);
+                }
+            }
+            return new StyleElementList(result);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package org.openstreetmap.atlas;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.openstreetmap.atlas.data.AtlasArea;
+import org.openstreetmap.atlas.data.AtlasDataSet;
+import org.openstreetmap.atlas.data.AtlasEdge;
+import org.openstreetmap.atlas.data.AtlasLinear;
+import org.openstreetmap.atlas.data.AtlasMultipolygon;
+import org.openstreetmap.atlas.data.AtlasNode;
+import org.openstreetmap.atlas.data.AtlasPrimitive;
+import org.openstreetmap.atlas.data.AtlasPunctual;
+import org.openstreetmap.atlas.data.AtlasRelation;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.visitor.paint.PaintColors;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+
+/**
+ * Topology view of a dataset, drawn without map paint styles: edges, lines, area outlines and the
+ * rings of multipolygon and boundary relations as thin lines, and nodes and points as small
+ * squares, each Atlas item type in a fixed color. All the features of a type are batched in one
+ * path, and the coordinates of the nodes are projected once per projection.
+ *
+ * @author agent
+ */
+public class AtlasWireframeRenderer
+{
+    private static final int EDGES = 0;
+    private static final int LINES = 1;
+    private static final int AREAS = 2;
+    private static final int RELATIONS = 3;
+    private static final int NODES = 4;
+    private static final int POINTS = 5;
+    private static final Color[] COLORS = { new Color(0x1F78B4), new Color(0x33A02C),
+            new Color(0xFF7F00), new Color(0xB15928), new Color(0xE31A1C),
+            new Color(0x6A3D9A) };
+    private static final double NODE_SIZE = 3.0;
+
+    private final AtlasDataSet dataSet;
+    private volatile ProjectedCoordinates projected;
+
+    /**
+     * East and north of the punctual features of the dataset in one projection, by ordinal.
+     *
+     * @author agent
+     */
+    private static final class ProjectedCoordinates
+    {
+        private final String projection;
+        private final double[] easts;
+        private final double[] norths;
+
+        ProjectedCoordinates(final AtlasDataSet dataSet, final Projection projection)
+        {
+            this.projection = projection.toCode();
+            final int size = dataSet.getPrimitivesCount();
+            this.easts = new double[size];
+            this.norths = new double[size];
+            Arrays.fill(this.easts, Double.NaN);
+            Arrays.fill(this.norths, Double.NaN);
+            IntStream.range(0, size).parallel().forEach(ordinal ->
+            {
+                final AtlasPrimitive primitive = dataSet.getPrimitiveByOrdinal(ordinal);
+                if (primitive instanceof AtlasPunctual)
+                {
+                    final EastNorth eastNorth = projection
+                            .latlon2eastNorth(((AtlasPunctual) primitive).getCoor());
+                    this.easts[ordinal] = eastNorth.east();
+                    this.norths[ordinal] = eastNorth.north();
+                }
+            });
+        }
+    }
+
+    /**
+     * @param dataSet
+     *            The dataset to draw
+     */
+    public AtlasWireframeRenderer(final AtlasDataSet dataSet)
+    {
+        this.dataSet = dataSet;
+    }
+
+    /**
+     * Draws the features within some bounds in a view.
+     *
+     * @param graphics
+     *            The graphics to draw in
+     * @param view
+     *            The view
+     * @param bounds
+     *            The bounds of the features to draw
+     * @param inactive
+     *            True to draw all the features in the inactive color
+     * @param level
+     *            The level of detail of the ways
+     * @param clustered
+     *            True to leave out the nodes and points, which are drawn as clusters
+     */
+    public void render(final Graphics2D graphics, final NavigatableComponent view,
+            final Bounds bounds, final boolean inactive, final int level,
+            final boolean clustered)
+    {
+        final Projection projection = view.getState().getProjection();
+        final ProjectedCoordinates coordinates = coordinates(projection);
+        final EastNorth origin = view.getEastNorth(0, 0);
+        final double scale = view.getScale();
+        final BBox box = new BBox(bounds.getMinLon(), bounds.getMinLat(), bounds.getMaxLon(),
+                bounds.getMaxLat());
+        final Path2D[] paths = new Path2D[COLORS.length];
+        for (int style = 0; style < paths.length; style++)
+        {
+            paths[style] = new Path2D.Float();
+        }
+
+        for (final AtlasLinear<AtlasPunctual> way : this.dataSet.searchWays(box))
+        {
+            // Edges and areas narrow the type of their nodes, so they are told apart as primitives
+            final AtlasPrimitive primitive = way;
+            final int style;
+            if (primitive instanceof AtlasEdge)
+            {
+                style = EDGES;
+            }
+            else if (primitive instanceof AtlasArea)
+            {
+                style = AREAS;
+            }
+            else
+            {
+                style = LINES;
+            }
+            final Path2D path = paths[style];
+            final List<AtlasPunctual> nodes = way.getNodes(level);
+            for (int index = 0; index < nodes.size(); index++)
+            {
+                final int ordinal = nodes.get(index).getOrdinal();
+                final double x = (coordinates.easts[ordinal] - origin.east()) / scale;
+                final double y = (origin.north() - coordinates.norths[ordinal]) / scale;
+                if (index == 0)
+                {
+                    path.moveTo(x, y);
+                }
+                else
+                {
+                    path.lineTo(x, y);
+                }
+            }
+        }
+        // Rings of the multipolygons and boundaries, which members outside of the dataset can
+        // leave without ways of their own
+        for (final AtlasRelation relation : this.dataSet.searchRelations(box))
+        {
+            final AtlasMultipolygon multipolygon = this.dataSet.getMultipolygon(relation);
+            if (multipolygon == null)
+            {
+                continue;
+            }
+            final List<AtlasMultipolygon.Ring> rings = new ArrayList<>(
+                    multipolygon.getOuterRings());
+            rings.addAll(multipolygon.getInnerRings());
+            for (final AtlasMultipolygon.Ring ring : rings)
+            {
+                final double[] eastNorths = ring.getEastNorths(projection);
+                for (int index = 0; index < ring.getSize(); index++)
+                {
+                    final double x = (eastNorths[2 * index] - origin.east()) / scale;
+                    final double y = (origin.north() - eastNorths[2 * index + 1]) / scale;
+                    if (index == 0)
+                    {
+                        paths[RELATIONS].moveTo(x, y);
+                    }
+                    else
+                    {
+                        paths[RELATIONS].lineTo(x, y);
+                    }
+                }
+            }
+        }
+        final List<AtlasPunctual> nodes = clustered ? Collections.emptyList()
+                : this.dataSet.searchNodes(box);
+        for (final AtlasPunctual node : nodes)
+        {
+            if (node.isShapePoint())
+            {
+                continue;
+            }
+            final Path2D path = paths[node instanceof AtlasNode ? NODES : POINTS];
+            final int ordinal = node.getOrdinal();
+            final double x = (coordinates.easts[ordinal] - origin.east()) / scale - NODE_SIZE / 2;
+            final double y = (origin.north() - coordinates.norths[ordinal]) / scale
+                    - NODE_SIZE / 2;
+            path.moveTo(x, y);
+            path.lineTo(x + NODE_SIZE, y);
+            path.lineTo(x + NODE_SIZE, y + NODE_SIZE);
+            path.lineTo(x, y + NODE_SIZE);
+            path.closePath();
+        }
+
+        graphics.setStroke(new BasicStroke(1));
+        for (int style = 0; style < paths.length; style++)
+        {
+            graphics.setColor(inactive ? PaintColors.INACTIVE.get() : COLORS[style]);
+            if (style == NODES || style == POINTS)
+            {
+                graphics.fill(paths[style]);
+            }
+            else
+            {
+                graphics.draw(paths[style]);
+            }
+        }
+    }
+
+    private ProjectedCoordinates coordinates(final Projection projection)
+    {
+        ProjectedCoordinates result = this.projected;
+        if (result == null || !result.projection.equals(projection.toCode()))
+        {
+            synchronized (this)
+            {
+                result = this.projected;
+                if (result == null || !result.projection.equals(projection.toCode()))
+                {
+                    result = new ProjectedCoordinates(this.dataSet, projection);
+                    this.projected = result;
+                }
+            }
+        }
+        return result;
+    }
+}
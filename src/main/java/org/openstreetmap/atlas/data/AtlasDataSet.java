@@ -2,6 +2,7 @@ package org.openstreetmap.atlas.data;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -9,6 +10,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -56,6 +58,17 @@ public final class AtlasDataSet
             new Storage.PrimitiveIdHash(), true);
     private final Map<PrimitiveId, AtlasPrimitive> primitivesMap = allPrimitives
             .foreignKey(new Storage.PrimitiveIdHash());
+    /**
+     * All primitives, in insertion order. The position of a primitive in this list is its ordinal.
+     */
+    private final List<AtlasPrimitive> primitivesByOrdinal = new ArrayList<>();
+    private volatile AtlasIdentifierIndex identifierIndex;
+    private volatile AtlasTagIndex tagIndex;
+    private volatile AtlasDensityGrid densityGrid;
+    private volatile AtlasPointClusters pointClusters;
+    private volatile Map<AtlasRelation, AtlasMultipolygon> multipolygons;
+    private final AtlasDataSetStatistics statistics = new AtlasDataSetStatistics();
+    private final Set<AtlasPrimitive> highlighted = ConcurrentHashMap.newKeySet();
 
     // provide means to highlight map elements that are not osm primitives
     private Collection<WaySegment> highlightedVirtualNodes = new LinkedList<>();
@@ -143,6 +156,14 @@ public final class AtlasDataSet
 
         allPrimitives.add(primitive);
         primitive.setDataset(this);
+        primitive.setOrdinal(primitivesByOrdinal.size());
+        primitivesByOrdinal.add(primitive);
+        identifierIndex = null;
+        tagIndex = null;
+        densityGrid = null;
+        pointClusters = null;
+        multipolygons = null;
+        statistics.add(primitive);
         // Set cached bbox for way and relation (required for reindexWay and reindexRelation to work
         // properly)
         primitive.updatePosition();
@@ -156,9 +177,18 @@ public final class AtlasDataSet
         for (final AtlasPrimitive primitive : allPrimitives)
         {
             primitive.setDataset(null);
+            primitive.setOrdinal(-1);
         }
         store.clear();
         allPrimitives.clear();
+        primitivesByOrdinal.clear();
+        identifierIndex = null;
+        tagIndex = null;
+        densityGrid = null;
+        pointClusters = null;
+        multipolygons = null;
+        statistics.clear();
+        highlighted.clear();
     }
 
     @Override
@@ -203,6 +233,144 @@ public final class AtlasDataSet
         return primitiveId != null ? primitivesMap.get(primitiveId) : null;
     }
 
+    /**
+     * @param ordinal
+     *            The ordinal of the primitive, between 0 and {@link #getPrimitivesCount()}
+     * @return The primitive that was added to this dataset at that position
+     */
+    public AtlasPrimitive getPrimitiveByOrdinal(final int ordinal)
+    {
+        return primitivesByOrdinal.get(ordinal);
+    }
+
+    /**
+     * @return The number of primitives in this dataset, including shape points
+     */
+    public int getPrimitivesCount()
+    {
+        return primitivesByOrdinal.size();
+    }
+
+    /**
+     * @return The aggregates of the primitives of this dataset, kept up to date as they are added
+     */
+    public AtlasDataSetStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+    /**
+     * @return The grids of the density of the features of this dataset, built on first use
+     */
+    public synchronized AtlasDensityGrid getDensityGrid()
+    {
+        if (densityGrid == null)
+        {
+            densityGrid = new AtlasDensityGrid(this);
+        }
+        return densityGrid;
+    }
+
+    /**
+     * @return The grids of the density of the features of this dataset if they are built, or else
+     *         null
+     */
+    public AtlasDensityGrid getDensityGridIfBuilt()
+    {
+        return densityGrid;
+    }
+
+    /**
+     * @return The clusters of the nodes and points of this dataset, built on first use
+     */
+    public synchronized AtlasPointClusters getPointClusters()
+    {
+        if (pointClusters == null)
+        {
+            pointClusters = new AtlasPointClusters(this);
+        }
+        return pointClusters;
+    }
+
+    /**
+     * @return The clusters of the nodes and points of this dataset if they are built, or else null
+     */
+    public AtlasPointClusters getPointClustersIfBuilt()
+    {
+        return pointClusters;
+    }
+
+    /**
+     * @param relation
+     *            A relation of this dataset
+     * @return The rings of the relation, or null if it is not a multipolygon nor a boundary
+     */
+    public AtlasMultipolygon getMultipolygon(final AtlasRelation relation)
+    {
+        final Map<AtlasRelation, AtlasMultipolygon> built = multipolygons;
+        return (built == null ? getMultipolygons() : built).get(relation);
+    }
+
+    /**
+     * @return The rings of the multipolygon and boundary relations of this dataset, assembled in
+     *         parallel on first use
+     */
+    public synchronized Map<AtlasRelation, AtlasMultipolygon> getMultipolygons()
+    {
+        if (multipolygons == null)
+        {
+            multipolygons = Collections.unmodifiableMap(primitivesByOrdinal.parallelStream()
+                    .filter(AtlasRelation.class::isInstance).map(AtlasRelation.class::cast)
+                    .filter(AtlasMultipolygon::isMultipolygon)
+                    .collect(Collectors.toMap(Function.identity(), AtlasMultipolygon::new)));
+        }
+        return multipolygons;
+    }
+
+    /**
+     * Builds the simplified geometries of all the ways that do not have them yet, in parallel, for
+     * renderers not to build them on first use.
+     */
+    public void buildLevelsOfDetail()
+    {
+        primitivesByOrdinal.parallelStream().filter(AtlasLinear.class::isInstance)
+                .forEach(primitive -> ((AtlasLinear<?>) primitive).buildLevelsOfDetail());
+    }
+
+    /**
+     * @return The primitives that are highlighted
+     */
+    public Collection<AtlasPrimitive> getHighlighted()
+    {
+        return Collections.unmodifiableSet(highlighted);
+    }
+
+    /**
+     * @return The index of the OSM identifiers of the primitives of this dataset, built on first
+     *         use
+     */
+    public synchronized AtlasIdentifierIndex getIdentifierIndex()
+    {
+        if (identifierIndex == null)
+        {
+            identifierIndex = new AtlasIdentifierIndex(this);
+        }
+        return identifierIndex;
+    }
+
+    /**
+     * @return The numeric and trigram indexes of the tag values of the primitives of this dataset,
+     *         built on first use
+     */
+    public synchronized AtlasTagIndex getTagIndex()
+    {
+        if (tagIndex == null)
+        {
+            tagIndex = new AtlasTagIndex(this);
+        }
+        return tagIndex;
+    }
+
     /**
      * Show message and stack trace in log in case primitive is not found
      * 
@@ -345,6 +513,21 @@ public final class AtlasDataSet
         return currentSelectedPrimitives.contains(osm);
     }
 
+    /**
+     * Keeps track of the highlighted primitives, for them to be drawn over the static content.
+     */
+    void highlightChanged(final AtlasPrimitive primitive, final boolean isHighlighted)
+    {
+        if (isHighlighted)
+        {
+            highlighted.add(primitive);
+        }
+        else
+        {
+            highlighted.remove(primitive);
+        }
+    }
+
     @Override
     public void toggleSelected(final Collection<? extends PrimitiveId> osm)
     {
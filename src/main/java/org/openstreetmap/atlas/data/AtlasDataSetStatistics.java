@@ -0,0 +1,149 @@
+package org.openstreetmap.atlas.data;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+
+/**
+ * Aggregates of the primitives of an {@link AtlasDataSet}, updated as primitives are added.
+ *
+ * @author agent
+ */
+public final class AtlasDataSetStatistics
+{
+    // Rough sizes of the objects held by the dataset, for the memory estimate
+    private static final long PRIMITIVE_BYTES = 96;
+    private static final long COORDINATE_BYTES = 32;
+    private static final long REFERENCE_BYTES = 8;
+    private static final long MEMBER_BYTES = 32;
+    private static final long INDEX_ENTRY_BYTES = 48;
+
+    private Bounds bounds;
+    private final Map<OsmPrimitiveType, Integer> typeCounts = new EnumMap<>(
+            OsmPrimitiveType.class);
+    private int shapePoints;
+    private final Map<String, Integer> keyCounts = new HashMap<>();
+    private long vertices;
+    private long members;
+    private long estimatedBytes;
+
+    /**
+     * @return The bounds of all the primitives, or null if the dataset is empty
+     */
+    public synchronized Bounds getBounds()
+    {
+        return this.bounds == null ? null : new Bounds(this.bounds);
+    }
+
+    /**
+     * @return An estimate of the memory used by the primitives of the dataset and its indexes, in
+     *         bytes. It does not include the Atlas the primitives read their tags from.
+     */
+    public synchronized long getEstimatedBytes()
+    {
+        return this.estimatedBytes;
+    }
+
+    /**
+     * @return The number of primitives having each key
+     */
+    public synchronized Map<String, Integer> getKeyCounts()
+    {
+        return Collections.unmodifiableMap(new HashMap<>(this.keyCounts));
+    }
+
+    /**
+     * @return The number of members of all the relations
+     */
+    public synchronized long getMembers()
+    {
+        return this.members;
+    }
+
+    /**
+     * @return The number of nodes created for the shape points of ways, which are not Atlas
+     *         features
+     */
+    public synchronized int getShapePoints()
+    {
+        return this.shapePoints;
+    }
+
+    /**
+     * @param type
+     *            A primitive type
+     * @return The number of primitives of this type, shape points included for nodes
+     */
+    public synchronized int getTypeCount(final OsmPrimitiveType type)
+    {
+        return this.typeCounts.getOrDefault(type, 0);
+    }
+
+    /**
+     * @return The number of vertices of all the ways
+     */
+    public synchronized long getVertices()
+    {
+        return this.vertices;
+    }
+
+    synchronized void add(final AtlasPrimitive primitive)
+    {
+        this.typeCounts.merge(primitive.getType(), 1, Integer::sum);
+        for (final String key : primitive.keySet())
+        {
+            this.keyCounts.merge(key, 1, Integer::sum);
+        }
+        long bytes = PRIMITIVE_BYTES + INDEX_ENTRY_BYTES;
+        if (primitive instanceof AtlasPunctual)
+        {
+            final AtlasPunctual punctual = (AtlasPunctual) primitive;
+            if (punctual.isShapePoint())
+            {
+                this.shapePoints++;
+            }
+            final LatLon coordinates = punctual.getCoor();
+            if (coordinates != null)
+            {
+                if (this.bounds == null)
+                {
+                    this.bounds = new Bounds(coordinates);
+                }
+                else
+                {
+                    this.bounds.extend(coordinates);
+                }
+            }
+            bytes += COORDINATE_BYTES;
+        }
+        else if (primitive instanceof AtlasLinear)
+        {
+            final int count = ((AtlasLinear<?>) primitive).getNodesCount();
+            this.vertices += count;
+            bytes += count * REFERENCE_BYTES;
+        }
+        else if (primitive instanceof AtlasRelation)
+        {
+            final int count = ((AtlasRelation) primitive).getMembersCount();
+            this.members += count;
+            bytes += count * MEMBER_BYTES;
+        }
+        this.estimatedBytes += bytes;
+    }
+
+    synchronized void clear()
+    {
+        this.bounds = null;
+        this.typeCounts.clear();
+        this.shapePoints = 0;
+        this.keyCounts.clear();
+        this.vertices = 0;
+        this.members = 0;
+        this.estimatedBytes = 0;
+    }
+}
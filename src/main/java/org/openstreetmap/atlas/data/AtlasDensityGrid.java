@@ -0,0 +1,251 @@
+package org.openstreetmap.atlas.data;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.BBox;
+
+/**
+ * Pyramid of grids counting the features of a dataset per cell and per type, for views too zoomed
+ * out to draw the features themselves. The cells of level k are {@link #FINEST_CELL} degrees times
+ * two to the power k wide and high. Only the cells with features are stored, sorted by row and
+ * then column.
+ * <p>
+ * Features are counted in the cell of their location: nodes and points where they are, and ways
+ * and relations at the center of their bounding box. Shape points are not counted.
+ *
+ * @author agent
+ */
+public final class AtlasDensityGrid
+{
+    /**
+     * Size of the cells of the finest level, in degrees, about 400 meters
+     */
+    public static final double FINEST_CELL = 1.0 / 256;
+    public static final int LEVELS = 12;
+    /**
+     * Index of the counts of the nodes and points, the ways and the relations of a cell
+     */
+    public static final int NODES = 0;
+    public static final int WAYS = 1;
+    public static final int RELATIONS = 2;
+    public static final int TYPES = 3;
+    // Entries hold the cell key, shifted to leave room for the type
+    private static final int TYPE_BITS = 2;
+    private static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+    static final double MAXIMUM_LATITUDE = 90;
+    static final double MAXIMUM_LONGITUDE = 180;
+
+    private final long[][] keys;
+    private final int[][] counts;
+    private final int[] maximumTotals;
+
+    /**
+     * Visitor of the cells of an area.
+     *
+     * @author agent
+     */
+    @FunctionalInterface
+    public interface CellVisitor
+    {
+        /**
+         * @param cell
+         *            The bounds of the cell
+         * @param nodes
+         *            The number of nodes and points in the cell
+         * @param ways
+         *            The number of ways in the cell
+         * @param relations
+         *            The number of relations in the cell
+         */
+        void visit(Bounds cell, int nodes, int ways, int relations);
+    }
+
+    static int columns(final int level)
+    {
+        return (int) Math.ceil(2 * MAXIMUM_LONGITUDE / size(level));
+    }
+
+    static int rows(final int level)
+    {
+        return (int) Math.ceil(2 * MAXIMUM_LATITUDE / size(level));
+    }
+
+    static double size(final int level)
+    {
+        return FINEST_CELL * (1 << level);
+    }
+
+    static int column(final double longitude, final int level)
+    {
+        return Math.max(0, Math.min(columns(level) - 1,
+                (int) Math.floor((longitude + MAXIMUM_LONGITUDE) / size(level))));
+    }
+
+    static int row(final double latitude, final int level)
+    {
+        return Math.max(0, Math.min(rows(level) - 1,
+                (int) Math.floor((MAXIMUM_LATITUDE - latitude) / size(level))));
+    }
+
+    /**
+     * @return The entry of a primitive in the finest level, or -1 if it is not counted
+     */
+    private static long entry(final AtlasPrimitive primitive)
+    {
+        final LatLon location;
+        final int type;
+        if (primitive instanceof AtlasPunctual)
+        {
+            if (((AtlasPunctual) primitive).isShapePoint())
+            {
+                return -1;
+            }
+            location = ((AtlasPunctual) primitive).getCoor();
+            type = NODES;
+        }
+        else
+        {
+            final BBox box = primitive.getBBox();
+            if (!box.isValid())
+            {
+                return -1;
+            }
+            location = box.getCenter();
+            type = primitive instanceof AtlasRelation ? RELATIONS : WAYS;
+        }
+        final long key = (long) row(location.lat(), 0) * columns(0) + column(location.lon(), 0);
+        return (key << TYPE_BITS) | type;
+    }
+
+    AtlasDensityGrid(final AtlasDataSet dataSet)
+    {
+        final long[] finest = IntStream.range(0, dataSet.getPrimitivesCount()).parallel()
+                .mapToLong(ordinal -> entry(dataSet.getPrimitiveByOrdinal(ordinal)))
+                .filter(entry -> entry >= 0).toArray();
+        this.keys = new long[LEVELS][];
+        this.counts = new int[LEVELS][];
+        this.maximumTotals = new int[LEVELS];
+        IntStream.range(0, LEVELS).parallel().forEach(level -> build(finest, level));
+    }
+
+    /**
+     * @param level
+     *            A level
+     * @return The largest number of features in a cell of the level
+     */
+    public int getMaximumTotal(final int level)
+    {
+        return this.maximumTotals[level];
+    }
+
+    /**
+     * @param degreesPerPixel
+     *            The width of a pixel of the view, in degrees of longitude
+     * @param minimumPixels
+     *            The minimum width of a cell, in pixels
+     * @return The finest level which cells are at least that wide, or the coarsest level
+     */
+    public int level(final double degreesPerPixel, final double minimumPixels)
+    {
+        int result = 0;
+        while (result < LEVELS - 1 && size(result) < minimumPixels * degreesPerPixel)
+        {
+            result++;
+        }
+        return result;
+    }
+
+    /**
+     * Visits the cells of a level that have features within an area.
+     *
+     * @param level
+     *            The level
+     * @param bounds
+     *            The area
+     * @param visitor
+     *            The visitor of the cells
+     */
+    public void visit(final int level, final Bounds bounds, final CellVisitor visitor)
+    {
+        final long[] levelKeys = this.keys[level];
+        final int[] levelCounts = this.counts[level];
+        final int columns = columns(level);
+        final double size = size(level);
+        final int minimumColumn = column(bounds.getMinLon(), level);
+        final int maximumColumn = column(bounds.getMaxLon(), level);
+        final int maximumRow = row(bounds.getMinLat(), level);
+        for (int row = row(bounds.getMaxLat(), level); row <= maximumRow; row++)
+        {
+            final long last = (long) row * columns + maximumColumn;
+            int index = Arrays.binarySearch(levelKeys, (long) row * columns + minimumColumn);
+            if (index < 0)
+            {
+                index = -index - 1;
+            }
+            for (; index < levelKeys.length && levelKeys[index] <= last; index++)
+            {
+                final long column = levelKeys[index] - (long) row * columns;
+                final double north = MAXIMUM_LATITUDE - row * size;
+                final double west = column * size - MAXIMUM_LONGITUDE;
+                final int offset = index * TYPES;
+                visitor.visit(new Bounds(Math.max(-MAXIMUM_LATITUDE, north - size), west, north,
+                        Math.min(MAXIMUM_LONGITUDE, west + size)),
+                        levelCounts[offset + NODES], levelCounts[offset + WAYS],
+                        levelCounts[offset + RELATIONS]);
+            }
+        }
+    }
+
+    /**
+     * Aggregates the finest entries into the cells of a level.
+     */
+    private void build(final long[] finest, final int level)
+    {
+        final int finestColumns = columns(0);
+        final int columns = columns(level);
+        final long[] entries = new long[finest.length];
+        for (int index = 0; index < finest.length; index++)
+        {
+            final long key = finest[index] >>> TYPE_BITS;
+            final long row = (key / finestColumns) >> level;
+            final long column = (key % finestColumns) >> level;
+            entries[index] = (row * columns + column) << TYPE_BITS
+                    | (finest[index] & TYPE_MASK);
+        }
+        Arrays.parallelSort(entries);
+
+        int cells = 0;
+        for (int index = 0; index < entries.length; index++)
+        {
+            if (index == 0 || entries[index] >>> TYPE_BITS != entries[index - 1] >>> TYPE_BITS)
+            {
+                cells++;
+            }
+        }
+        final long[] levelKeys = new long[cells];
+        final int[] levelCounts = new int[cells * TYPES];
+        int cell = -1;
+        for (int index = 0; index < entries.length; index++)
+        {
+            final long key = entries[index] >>> TYPE_BITS;
+            if (cell < 0 || levelKeys[cell] != key)
+            {
+                cell++;
+                levelKeys[cell] = key;
+            }
+            levelCounts[cell * TYPES + (int) (entries[index] & TYPE_MASK)]++;
+        }
+        int maximumTotal = 0;
+        for (cell = 0; cell < cells; cell++)
+        {
+            maximumTotal = Math.max(maximumTotal, levelCounts[cell * TYPES + NODES]
+                    + levelCounts[cell * TYPES + WAYS] + levelCounts[cell * TYPES + RELATIONS]);
+        }
+        this.keys[level] = levelKeys;
+        this.counts[level] = levelCounts;
+        this.maximumTotals[level] = maximumTotal;
+    }
+}
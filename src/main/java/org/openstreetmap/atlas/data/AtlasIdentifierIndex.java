@@ -0,0 +1,331 @@
+package org.openstreetmap.atlas.data;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+
+/**
+ * Sorted index of the OSM identifiers the primitives of an {@link AtlasDataSet} were derived from.
+ * It maps each OSM identifier back to every Atlas primitive that comes from it (way sections,
+ * country sliced pieces...), and serves exact and prefix lookups with binary searches. It also
+ * indexes the Atlas identifiers of the primitives, to resolve long lists of them in one pass.
+ *
+ * @author agent
+ */
+public final class AtlasIdentifierIndex
+{
+    private static final long TEN = 10L;
+
+    private final Map<OsmPrimitiveType, Column> columns = new EnumMap<>(OsmPrimitiveType.class);
+    private final Map<OsmPrimitiveType, Column> atlasColumns = new EnumMap<>(
+            OsmPrimitiveType.class);
+
+    /**
+     * Result of a bulk lookup of Atlas identifiers.
+     *
+     * @author agent
+     */
+    public static final class Matches
+    {
+        private final int[] ordinals;
+        private final long[] missing;
+
+        Matches(final int[] ordinals, final long[] missing)
+        {
+            this.ordinals = ordinals;
+            this.missing = missing;
+        }
+
+        /**
+         * @return The identifiers that did not match any primitive, in ascending order
+         */
+        public long[] getMissing()
+        {
+            return this.missing;
+        }
+
+        /**
+         * @return The ordinals of the matching primitives, in ascending order
+         */
+        public int[] getOrdinals()
+        {
+            return this.ordinals;
+        }
+    }
+
+    /**
+     * Identifiers of one primitive type, sorted and de-duplicated, with the ordinals of all the
+     * primitives sharing each identifier stored contiguously.
+     *
+     * @author agent
+     */
+    private static final class Column
+    {
+        private final long[] identifiers;
+        private final int[] offsets;
+        private final int[] ordinals;
+
+        Column(final long[] candidateIdentifiers, final int[] candidateOrdinals, final int size)
+        {
+            final long[] sorted = Arrays.copyOf(candidateIdentifiers, size);
+            Arrays.parallelSort(sorted);
+            int distinct = 0;
+            for (int index = 0; index < size; index++)
+            {
+                if (distinct == 0 || sorted[index] != sorted[distinct - 1])
+                {
+                    sorted[distinct] = sorted[index];
+                    distinct++;
+                }
+            }
+            this.identifiers = Arrays.copyOf(sorted, distinct);
+
+            // Counting sort of the ordinals by identifier. Candidates come in ordinal order, so
+            // the ordinals of a given identifier stay sorted.
+            final int[] positions = new int[size];
+            this.offsets = new int[distinct + 1];
+            for (int index = 0; index < size; index++)
+            {
+                positions[index] = Arrays.binarySearch(this.identifiers,
+                        candidateIdentifiers[index]);
+                this.offsets[positions[index] + 1]++;
+            }
+            for (int index = 0; index < distinct; index++)
+            {
+                this.offsets[index + 1] += this.offsets[index];
+            }
+            final int[] cursors = Arrays.copyOf(this.offsets, distinct);
+            this.ordinals = new int[size];
+            for (int index = 0; index < size; index++)
+            {
+                this.ordinals[cursors[positions[index]]] = candidateOrdinals[index];
+                cursors[positions[index]]++;
+            }
+        }
+
+        /**
+         * @return The ordinals of all the primitives with an identifier between lower and upper,
+         *         inclusive
+         */
+        int[] between(final long lower, final long upper)
+        {
+            final int from = lowerBound(lower);
+            final int to = upper == Long.MAX_VALUE ? this.identifiers.length
+                    : lowerBound(upper + 1);
+            if (from >= to)
+            {
+                return new int[0];
+            }
+            return Arrays.copyOfRange(this.ordinals, this.offsets[from], this.offsets[to]);
+        }
+
+        /**
+         * Merge join of sorted and distinct identifiers with this column. The cursor in the
+         * column moves forward with binary searches, so that a few identifiers do not walk the
+         * whole column.
+         *
+         * @param queries
+         *            The identifiers to look up, sorted and distinct
+         * @param found
+         *            Flags set for the identifiers that match
+         * @param matches
+         *            Receives the ordinals of the matching primitives
+         */
+        void join(final long[] queries, final boolean[] found, final IntStream.Builder matches)
+        {
+            int position = 0;
+            for (int query = 0; query < queries.length
+                    && position < this.identifiers.length; query++)
+            {
+                final int match = Arrays.binarySearch(this.identifiers, position,
+                        this.identifiers.length, queries[query]);
+                if (match >= 0)
+                {
+                    found[query] = true;
+                    for (int index = this.offsets[match]; index < this.offsets[match + 1]; index++)
+                    {
+                        matches.add(this.ordinals[index]);
+                    }
+                    position = match + 1;
+                }
+                else
+                {
+                    position = -match - 1;
+                }
+            }
+        }
+
+        long largest()
+        {
+            return this.identifiers.length == 0 ? Long.MIN_VALUE
+                    : this.identifiers[this.identifiers.length - 1];
+        }
+
+        private int lowerBound(final long identifier)
+        {
+            final int position = Arrays.binarySearch(this.identifiers, identifier);
+            return position >= 0 ? position : -position - 1;
+        }
+    }
+
+    /**
+     * Build the index of the OSM identifiers of all the primitives of a dataset that have a
+     * positive one, and of the Atlas identifiers of all the primitives.
+     *
+     * @param dataSet
+     *            The dataset to index
+     */
+    public AtlasIdentifierIndex(final AtlasDataSet dataSet)
+    {
+        final int size = dataSet.getPrimitivesCount();
+        final Map<OsmPrimitiveType, Integer> counts = new EnumMap<>(OsmPrimitiveType.class);
+        for (final OsmPrimitiveType type : OsmPrimitiveType.dataValues())
+        {
+            counts.put(type, 0);
+        }
+        for (int ordinal = 0; ordinal < size; ordinal++)
+        {
+            final AtlasPrimitive primitive = dataSet.getPrimitiveByOrdinal(ordinal);
+            if (primitive.getOsmId() > 0)
+            {
+                counts.merge(primitive.getType(), 1, Integer::sum);
+            }
+        }
+        final Map<OsmPrimitiveType, long[]> identifiers = new EnumMap<>(OsmPrimitiveType.class);
+        final Map<OsmPrimitiveType, int[]> ordinals = new EnumMap<>(OsmPrimitiveType.class);
+        for (final OsmPrimitiveType type : OsmPrimitiveType.dataValues())
+        {
+            identifiers.put(type, new long[counts.get(type)]);
+            ordinals.put(type, new int[counts.get(type)]);
+            counts.put(type, 0);
+        }
+        for (int ordinal = 0; ordinal < size; ordinal++)
+        {
+            final AtlasPrimitive primitive = dataSet.getPrimitiveByOrdinal(ordinal);
+            final long osmIdentifier = primitive.getOsmId();
+            if (osmIdentifier > 0)
+            {
+                final OsmPrimitiveType type = primitive.getType();
+                final int count = counts.get(type);
+                identifiers.get(type)[count] = osmIdentifier;
+                ordinals.get(type)[count] = ordinal;
+                counts.put(type, count + 1);
+            }
+        }
+        for (final OsmPrimitiveType type : OsmPrimitiveType.dataValues())
+        {
+            this.columns.put(type,
+                    new Column(identifiers.get(type), ordinals.get(type), counts.get(type)));
+        }
+
+        for (final OsmPrimitiveType type : OsmPrimitiveType.dataValues())
+        {
+            counts.put(type, 0);
+        }
+        for (int ordinal = 0; ordinal < size; ordinal++)
+        {
+            counts.merge(dataSet.getPrimitiveByOrdinal(ordinal).getType(), 1, Integer::sum);
+        }
+        for (final OsmPrimitiveType type : OsmPrimitiveType.dataValues())
+        {
+            identifiers.put(type, new long[counts.get(type)]);
+            ordinals.put(type, new int[counts.get(type)]);
+            counts.put(type, 0);
+        }
+        for (int ordinal = 0; ordinal < size; ordinal++)
+        {
+            final AtlasPrimitive primitive = dataSet.getPrimitiveByOrdinal(ordinal);
+            final OsmPrimitiveType type = primitive.getType();
+            final int count = counts.get(type);
+            identifiers.get(type)[count] = primitive.getUniqueId();
+            ordinals.get(type)[count] = ordinal;
+            counts.put(type, count + 1);
+        }
+        for (final OsmPrimitiveType type : OsmPrimitiveType.dataValues())
+        {
+            this.atlasColumns.put(type,
+                    new Column(identifiers.get(type), ordinals.get(type), counts.get(type)));
+        }
+    }
+
+    /**
+     * Resolves a list of Atlas identifiers against all the primitive types at once.
+     *
+     * @param atlasIdentifiers
+     *            The Atlas identifiers to look up, in any order and possibly repeated
+     * @return The primitives with any of these identifiers, and the identifiers that do not match
+     *         any primitive
+     */
+    public Matches getOrdinalsByAtlasIdentifiers(final long[] atlasIdentifiers)
+    {
+        final long[] queries = LongStream.of(atlasIdentifiers).sorted().distinct().toArray();
+        final boolean[] found = new boolean[queries.length];
+        final IntStream.Builder matches = IntStream.builder();
+        for (final OsmPrimitiveType type : OsmPrimitiveType.dataValues())
+        {
+            this.atlasColumns.get(type).join(queries, found, matches);
+        }
+        return new Matches(matches.build().sorted().toArray(),
+                IntStream.range(0, queries.length).filter(query -> !found[query])
+                        .mapToLong(query -> queries[query]).toArray());
+    }
+
+    /**
+     * @param type
+     *            The OSM type of the primitive
+     * @param osmIdentifier
+     *            The OSM identifier
+     * @return The ordinals, in primitive order, of all the Atlas primitives derived from that OSM
+     *         primitive
+     */
+    public int[] getOrdinals(final OsmPrimitiveType type, final long osmIdentifier)
+    {
+        return this.columns.get(type).between(osmIdentifier, osmIdentifier);
+    }
+
+    /**
+     * @param type
+     *            The OSM type of the primitive
+     * @param prefix
+     *            The leading decimal digits of the OSM identifier
+     * @return The ordinals, in primitive order, of all the Atlas primitives derived from an OSM
+     *         primitive whose identifier starts with the prefix
+     */
+    public int[] getOrdinalsWithPrefix(final OsmPrimitiveType type, final long prefix)
+    {
+        if (prefix <= 0)
+        {
+            return new int[0];
+        }
+        final Column column = this.columns.get(type);
+        // The identifiers starting with a prefix are the ranges [prefix * 10^k, (prefix + 1) *
+        // 10^k - 1] for every number k of trailing digits
+        int[] result = new int[0];
+        long lower = prefix;
+        long width = 1;
+        while (lower <= column.largest())
+        {
+            final long upper = lower > Long.MAX_VALUE - (width - 1) ? Long.MAX_VALUE
+                    : lower + width - 1;
+            final int[] range = column.between(lower, upper);
+            if (range.length > 0)
+            {
+                final int[] merged = Arrays.copyOf(result, result.length + range.length);
+                System.arraycopy(range, 0, merged, result.length, range.length);
+                result = merged;
+            }
+            if (lower > Long.MAX_VALUE / TEN)
+            {
+                break;
+            }
+            lower *= TEN;
+            width *= TEN;
+        }
+        Arrays.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,167 @@
+package org.openstreetmap.atlas.data;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import org.openstreetmap.josm.data.Bounds;
+
+/**
+ * Simplified versions of the geometry of the ways, for zoomed out views. Level k keeps the
+ * vertices needed to stay within a tolerance of {@link #FINEST_TOLERANCE} times
+ * {@link #TOLERANCE_FACTOR} to the power k of the full geometry, using Douglas-Peucker.
+ * <p>
+ * Tolerances are in degrees of latitude, and longitudes are scaled by the cosine of the latitude
+ * of the way, so that they are about the same distance in both directions.
+ *
+ * @author agent
+ */
+public final class AtlasLevelsOfDetail
+{
+    /**
+     * Level of the full geometry
+     */
+    public static final int FULL_DETAIL = -1;
+    /**
+     * Tolerance of the finest level, about one meter
+     */
+    public static final double FINEST_TOLERANCE = 0.00001;
+    public static final int TOLERANCE_FACTOR = 4;
+    public static final int LEVELS = 7;
+    // Do not keep a level that does not drop at least this share of the vertices of the previous
+    private static final double MINIMUM_REDUCTION = 0.1;
+
+    /**
+     * @param level
+     *            A level
+     * @return The tolerance of the level, in degrees of latitude
+     */
+    public static double tolerance(final int level)
+    {
+        return FINEST_TOLERANCE * Math.pow(TOLERANCE_FACTOR, level);
+    }
+
+    /**
+     * @param degreesPerPixel
+     *            The size of a pixel of the view, in degrees of latitude
+     * @return The coarsest level that is not off by more than half a pixel, or
+     *         {@link #FULL_DETAIL}
+     */
+    public static int levelFor(final double degreesPerPixel)
+    {
+        int result = FULL_DETAIL;
+        while (result + 1 < LEVELS && tolerance(result + 1) <= degreesPerPixel / 2)
+        {
+            result++;
+        }
+        return result;
+    }
+
+    /**
+     * @param bounds
+     *            The area shown by a view
+     * @param width
+     *            The width of the view, in pixels
+     * @return The coarsest level that is not off by more than half a pixel anywhere in the view
+     */
+    public static int levelFor(final Bounds bounds, final int width)
+    {
+        // Pixels are the smallest, in degrees of latitude, where the view is the farthest from
+        // the equator
+        final double degreesPerPixel = bounds.getWidth() / width * Math.cos(Math.toRadians(
+                Math.max(Math.abs(bounds.getMinLat()), Math.abs(bounds.getMaxLat()))));
+        return levelFor(degreesPerPixel);
+    }
+
+    /**
+     * Simplifies a geometry at all the levels. Each level is simplified from the previous one,
+     * which is cheaper and keeps it within four thirds of its tolerance of the full geometry.
+     * Levels that would barely drop vertices share the geometry of the previous level.
+     *
+     * @param nodes
+     *            The full geometry
+     * @return The geometry of each level
+     */
+    static <P extends AtlasPunctual> List<List<P>> simplify(final List<P> nodes)
+    {
+        final List<List<P>> result = new ArrayList<>(LEVELS);
+        List<P> previous = nodes;
+        for (int level = 0; level < LEVELS; level++)
+        {
+            final List<P> simplified = simplify(previous, tolerance(level));
+            if (simplified.size() <= previous.size() * (1 - MINIMUM_REDUCTION))
+            {
+                previous = Collections.unmodifiableList(simplified);
+            }
+            result.add(previous);
+        }
+        return result;
+    }
+
+    /**
+     * Douglas-Peucker, with an explicit stack of the ranges left to simplify.
+     */
+    private static <P extends AtlasPunctual> List<P> simplify(final List<P> nodes,
+            final double tolerance)
+    {
+        final int size = nodes.size();
+        if (size <= 2)
+        {
+            return nodes;
+        }
+        final double scale = Math.cos(Math.toRadians(nodes.get(0).lat()));
+        final double[] xs = new double[size];
+        final double[] ys = new double[size];
+        for (int index = 0; index < size; index++)
+        {
+            xs[index] = nodes.get(index).lon() * scale;
+            ys[index] = nodes.get(index).lat();
+        }
+        final boolean[] kept = new boolean[size];
+        kept[0] = true;
+        kept[size - 1] = true;
+        final Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[] { 0, size - 1 });
+        while (!ranges.isEmpty())
+        {
+            final int[] range = ranges.pop();
+            final int first = range[0];
+            final int last = range[1];
+            int farthest = -1;
+            double farthestDistance = tolerance;
+            for (int index = first + 1; index < last; index++)
+            {
+                // The segment of a closed way is a point, and this is the distance to it
+                final double distance = Line2D.ptSegDist(xs[first], ys[first], xs[last],
+                        ys[last], xs[index], ys[index]);
+                if (distance > farthestDistance)
+                {
+                    farthest = index;
+                    farthestDistance = distance;
+                }
+            }
+            if (farthest >= 0)
+            {
+                kept[farthest] = true;
+                ranges.push(new int[] { first, farthest });
+                ranges.push(new int[] { farthest, last });
+            }
+        }
+        final List<P> result = new ArrayList<>();
+        for (int index = 0; index < size; index++)
+        {
+            if (kept[index])
+            {
+                result.add(nodes.get(index));
+            }
+        }
+        return result;
+    }
+
+    private AtlasLevelsOfDetail()
+    {
+    }
+}
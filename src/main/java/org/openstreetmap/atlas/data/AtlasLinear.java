@@ -31,6 +31,11 @@ public abstract class AtlasLinear<P extends AtlasPunctual> extends AtlasPrimitiv
      * All way nodes in this way
      */
     private List<P> nodes;
+    /**
+     * Simplified nodes of each level of detail, built on first use or with the other ways of the
+     * dataset
+     */
+    private volatile List<List<P>> levels;
     private BBox bbox;
 
     protected AtlasLinear(final LineItem item)
@@ -99,6 +104,7 @@ public abstract class AtlasLinear<P extends AtlasPunctual> extends AtlasPrimitiv
     public final void setNodes(final List<P> nodes)
     {
         this.nodes = nodes;
+        this.levels = null;
         for (final P node : this.nodes)
         {
             node.addReferrer(this);
@@ -180,6 +186,34 @@ public abstract class AtlasLinear<P extends AtlasPunctual> extends AtlasPrimitiv
         return false;
     }
 
+    /**
+     * @param level
+     *            A level of detail, or {@link AtlasLevelsOfDetail#FULL_DETAIL}
+     * @return The nodes of the geometry simplified at that level, for drawing
+     */
+    public final List<P> getNodes(final int level)
+    {
+        if (level == AtlasLevelsOfDetail.FULL_DETAIL)
+        {
+            return nodes;
+        }
+        return buildLevelsOfDetail().get(level);
+    }
+
+    /**
+     * @return The simplified nodes of all the levels of detail, built if they are not yet
+     */
+    final List<List<P>> buildLevelsOfDetail()
+    {
+        List<List<P>> current = levels;
+        if (current == null)
+        {
+            current = AtlasLevelsOfDetail.simplify(nodes);
+            levels = current;
+        }
+        return current;
+    }
+
     @Override
     public Way toOsmPrimitive(final DataSet dataSet)
     {
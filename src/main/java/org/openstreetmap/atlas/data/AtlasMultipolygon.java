@@ -0,0 +1,303 @@
+package org.openstreetmap.atlas.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.projection.Projection;
+
+/**
+ * Rings of a multipolygon or boundary relation, assembled once from the ways of its members.
+ * Closed ways are rings of their own, and open ways are joined end to end where they share their
+ * end locations. Members with the inner role make the inner rings, all the other ways the outer
+ * rings. Rings that cannot be closed are kept open, and are considered closed by a straight
+ * segment for containment.
+ *
+ * @author agent
+ */
+public final class AtlasMultipolygon
+{
+    private static final String TYPE = "type";
+    private static final String INNER = "inner";
+
+    private final List<Ring> outerRings;
+    private final List<Ring> innerRings;
+    private final BBox bounds;
+
+    /**
+     * One ring of a multipolygon.
+     *
+     * @author agent
+     */
+    public static final class Ring
+    {
+        // Longitude and latitude of each vertex
+        private final double[] coordinates;
+        private final boolean closed;
+        private final BBox bounds;
+        private volatile ProjectedVertices projected;
+
+        Ring(final List<LatLon> locations)
+        {
+            this.closed = locations.size() > 2
+                    && locations.get(0).equals(locations.get(locations.size() - 1));
+            this.coordinates = new double[2 * locations.size()];
+            this.bounds = new BBox();
+            for (int index = 0; index < locations.size(); index++)
+            {
+                this.coordinates[2 * index] = locations.get(index).lon();
+                this.coordinates[2 * index + 1] = locations.get(index).lat();
+                this.bounds.add(locations.get(index));
+            }
+        }
+
+        /**
+         * @return The bounds of the ring
+         */
+        public BBox getBounds()
+        {
+            return new BBox(this.bounds);
+        }
+
+        /**
+         * @param projection
+         *            A projection
+         * @return The east and north of each vertex in the projection, one after the other, cached
+         *         until the ring is projected in another projection. The array is shared, and must
+         *         not be modified.
+         */
+        public double[] getEastNorths(final Projection projection)
+        {
+            ProjectedVertices result = this.projected;
+            if (result == null || !result.projection.equals(projection.toCode()))
+            {
+                // Concurrent paints may both project the ring, with the same result
+                result = new ProjectedVertices(this, projection);
+                this.projected = result;
+            }
+            return result.eastNorths;
+        }
+
+        /**
+         * @param index
+         *            The index of a vertex
+         * @return The latitude of the vertex
+         */
+        public double getLatitude(final int index)
+        {
+            return this.coordinates[2 * index + 1];
+        }
+
+        /**
+         * @param index
+         *            The index of a vertex
+         * @return The longitude of the vertex
+         */
+        public double getLongitude(final int index)
+        {
+            return this.coordinates[2 * index];
+        }
+
+        /**
+         * @return The number of vertices of the ring, the last one repeating the first one if the
+         *         ring is closed
+         */
+        public int getSize()
+        {
+            return this.coordinates.length / 2;
+        }
+
+        /**
+         * @return True if the ways of the ring join into a closed ring
+         */
+        public boolean isClosed()
+        {
+            return this.closed;
+        }
+
+        /**
+         * @return True if a horizontal ray from a location towards the east crosses the ring an
+         *         odd number of times
+         */
+        boolean crossedOddly(final double latitude, final double longitude)
+        {
+            if (!this.bounds.bounds(new LatLon(latitude, longitude)))
+            {
+                return false;
+            }
+            boolean result = false;
+            final int size = getSize();
+            for (int index = 0, previous = size - 1; index < size; previous = index++)
+            {
+                final double startLatitude = getLatitude(previous);
+                final double endLatitude = getLatitude(index);
+                if (startLatitude > latitude != endLatitude > latitude
+                        && longitude < getLongitude(previous)
+                                + (latitude - startLatitude) / (endLatitude - startLatitude)
+                                        * (getLongitude(index) - getLongitude(previous)))
+                {
+                    result = !result;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * East and north of the vertices of a ring in one projection.
+     *
+     * @author agent
+     */
+    private static final class ProjectedVertices
+    {
+        private final String projection;
+        private final double[] eastNorths;
+
+        ProjectedVertices(final Ring ring, final Projection projection)
+        {
+            this.projection = projection.toCode();
+            this.eastNorths = new double[2 * ring.getSize()];
+            for (int index = 0; index < ring.getSize(); index++)
+            {
+                final EastNorth eastNorth = projection.latlon2eastNorth(
+                        new LatLon(ring.getLatitude(index), ring.getLongitude(index)));
+                this.eastNorths[2 * index] = eastNorth.east();
+                this.eastNorths[2 * index + 1] = eastNorth.north();
+            }
+        }
+    }
+
+    /**
+     * @param relation
+     *            A relation
+     * @return True if the relation is a multipolygon or a boundary
+     */
+    public static boolean isMultipolygon(final AtlasRelation relation)
+    {
+        final String type = relation.get(TYPE);
+        return "multipolygon".equals(type) || "boundary".equals(type);
+    }
+
+    /**
+     * Joins ways end to end into rings.
+     */
+    private static List<Ring> assemble(final List<List<LatLon>> ways)
+    {
+        final List<Ring> result = new ArrayList<>();
+        final Map<LatLon, List<Integer>> byEnd = new HashMap<>();
+        for (int index = 0; index < ways.size(); index++)
+        {
+            final List<LatLon> way = ways.get(index);
+            byEnd.computeIfAbsent(way.get(0), key -> new ArrayList<>()).add(index);
+            byEnd.computeIfAbsent(way.get(way.size() - 1), key -> new ArrayList<>()).add(index);
+        }
+        final boolean[] used = new boolean[ways.size()];
+        for (int start = 0; start < ways.size(); start++)
+        {
+            if (used[start])
+            {
+                continue;
+            }
+            used[start] = true;
+            final List<LatLon> ring = new ArrayList<>(ways.get(start));
+            while (!ring.get(0).equals(ring.get(ring.size() - 1)))
+            {
+                final LatLon end = ring.get(ring.size() - 1);
+                int next = -1;
+                for (final int candidate : byEnd.getOrDefault(end, Collections.emptyList()))
+                {
+                    if (!used[candidate])
+                    {
+                        next = candidate;
+                        break;
+                    }
+                }
+                if (next < 0)
+                {
+                    break;
+                }
+                used[next] = true;
+                final List<LatLon> way = new ArrayList<>(ways.get(next));
+                if (!way.get(0).equals(end))
+                {
+                    Collections.reverse(way);
+                }
+                ring.addAll(way.subList(1, way.size()));
+            }
+            result.add(new Ring(ring));
+        }
+        return result;
+    }
+
+    AtlasMultipolygon(final AtlasRelation relation)
+    {
+        final List<List<LatLon>> outerWays = new ArrayList<>();
+        final List<List<LatLon>> innerWays = new ArrayList<>();
+        for (final AtlasRelationMember member : relation.getMembers())
+        {
+            if (!(member.getMember() instanceof AtlasLinear))
+            {
+                continue;
+            }
+            final List<LatLon> way = new ArrayList<>();
+            for (final AtlasPunctual node : ((AtlasLinear<?>) member.getMember()).getNodes())
+            {
+                way.add(node.getCoor());
+            }
+            if (way.size() > 1)
+            {
+                (INNER.equals(member.getRole()) ? innerWays : outerWays).add(way);
+            }
+        }
+        this.outerRings = Collections.unmodifiableList(assemble(outerWays));
+        this.innerRings = Collections.unmodifiableList(assemble(innerWays));
+        this.bounds = new BBox();
+        this.outerRings.forEach(ring -> this.bounds.add(ring.bounds));
+    }
+
+    /**
+     * @param location
+     *            A location
+     * @return True if the location is inside an odd number of rings, inner and outer alike
+     */
+    public boolean contains(final LatLon location)
+    {
+        if (!this.bounds.bounds(location))
+        {
+            return false;
+        }
+        boolean result = false;
+        for (final Ring ring : this.outerRings)
+        {
+            result ^= ring.crossedOddly(location.lat(), location.lon());
+        }
+        for (final Ring ring : this.innerRings)
+        {
+            result ^= ring.crossedOddly(location.lat(), location.lon());
+        }
+        return result;
+    }
+
+    /**
+     * @return The bounds of the outer rings
+     */
+    public BBox getBounds()
+    {
+        return new BBox(this.bounds);
+    }
+
+    public List<Ring> getInnerRings()
+    {
+        return this.innerRings;
+    }
+
+    public List<Ring> getOuterRings()
+    {
+        return this.outerRings;
+    }
+}
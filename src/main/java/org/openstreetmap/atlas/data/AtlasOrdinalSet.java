@@ -0,0 +1,270 @@
+package org.openstreetmap.atlas.data;
+
+import java.util.Arrays;
+
+/**
+ * Immutable compressed set of primitive ordinals, in blocks of 65536 values each stored as a sorted
+ * array when sparse or as a bitmap when dense.
+ *
+ * @author agent
+ */
+public final class AtlasOrdinalSet
+{
+    private static final int BLOCK_BITS = 16;
+    private static final int BLOCK_MASK = (1 << BLOCK_BITS) - 1;
+    private static final int BITMAP_WORDS = (1 << BLOCK_BITS) / Long.SIZE;
+    private static final int WORD_BITS = 6;
+    private static final int WORD_MASK = Long.SIZE - 1;
+    // Above this cardinality, the sorted array would be bigger than the bitmap
+    private static final int ARRAY_LIMIT = BITMAP_WORDS * Long.BYTES / Character.BYTES;
+    private static final int OBJECT_OVERHEAD_BYTES = 16;
+
+    // The index of each block, which is the ordinal of its first possible value shifted right
+    private final int[] keys;
+    private final Block[] blocks;
+    private final int cardinality;
+
+    /**
+     * Values of one block. Exactly one of the sorted values and the bitmap is set.
+     *
+     * @author agent
+     */
+    private static final class Block
+    {
+        private final char[] values;
+        private final long[] words;
+        private final int cardinality;
+
+        /**
+         * @return The block of the bits set in the bitmap, or null if there is none
+         */
+        static Block fromWords(final long[] words)
+        {
+            int cardinality = 0;
+            for (final long word : words)
+            {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality == 0)
+            {
+                return null;
+            }
+            if (cardinality > ARRAY_LIMIT)
+            {
+                return new Block(null, words, cardinality);
+            }
+            final char[] values = new char[cardinality];
+            int index = 0;
+            for (int word = 0; word < words.length; word++)
+            {
+                long bits = words[word];
+                while (bits != 0)
+                {
+                    values[index] = (char) (word * Long.SIZE + Long.numberOfTrailingZeros(bits));
+                    index++;
+                    bits &= bits - 1;
+                }
+            }
+            return new Block(values, null, cardinality);
+        }
+
+        Block(final char[] values, final long[] words, final int cardinality)
+        {
+            this.values = values;
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        /**
+         * Copy the ordinals of this block in a target array.
+         *
+         * @return The offset after the last copied ordinal
+         */
+        int fill(final int base, final int[] target, final int offset)
+        {
+            int index = offset;
+            if (this.values != null)
+            {
+                for (final char value : this.values)
+                {
+                    target[index] = base + value;
+                    index++;
+                }
+                return index;
+            }
+            for (int word = 0; word < this.words.length; word++)
+            {
+                long bits = this.words[word];
+                while (bits != 0)
+                {
+                    target[index] = base + word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                    index++;
+                    bits &= bits - 1;
+                }
+            }
+            return index;
+        }
+
+        long sizeInBytes()
+        {
+            return OBJECT_OVERHEAD_BYTES + (this.values != null
+                    ? (long) this.values.length * Character.BYTES
+                    : (long) this.words.length * Long.BYTES);
+        }
+
+        /**
+         * @return A bitmap of the block, which may be shared with the block and must not be
+         *         modified
+         */
+        long[] words()
+        {
+            if (this.words != null)
+            {
+                return this.words;
+            }
+            final long[] result = new long[BITMAP_WORDS];
+            for (final char value : this.values)
+            {
+                result[value >>> WORD_BITS] |= 1L << (value & WORD_MASK);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @param ordinals
+     *            Ordinals in strictly ascending order
+     * @return The set of those ordinals
+     */
+    public static AtlasOrdinalSet of(final int[] ordinals)
+    {
+        int blockCount = 0;
+        for (int index = 0; index < ordinals.length; index++)
+        {
+            if (index == 0 || ordinals[index] >>> BLOCK_BITS != ordinals[index - 1] >>> BLOCK_BITS)
+            {
+                blockCount++;
+            }
+        }
+        final int[] keys = new int[blockCount];
+        final Block[] blocks = new Block[blockCount];
+        int start = 0;
+        for (int block = 0; block < blockCount; block++)
+        {
+            final int key = ordinals[start] >>> BLOCK_BITS;
+            int end = start;
+            while (end < ordinals.length && ordinals[end] >>> BLOCK_BITS == key)
+            {
+                end++;
+            }
+            final int count = end - start;
+            keys[block] = key;
+            if (count > ARRAY_LIMIT)
+            {
+                final long[] words = new long[BITMAP_WORDS];
+                for (int index = start; index < end; index++)
+                {
+                    final int value = ordinals[index] & BLOCK_MASK;
+                    words[value >>> WORD_BITS] |= 1L << (value & WORD_MASK);
+                }
+                blocks[block] = new Block(null, words, count);
+            }
+            else
+            {
+                final char[] values = new char[count];
+                for (int index = start; index < end; index++)
+                {
+                    values[index - start] = (char) (ordinals[index] & BLOCK_MASK);
+                }
+                blocks[block] = new Block(values, null, count);
+            }
+            start = end;
+        }
+        return new AtlasOrdinalSet(keys, blocks);
+    }
+
+    private AtlasOrdinalSet(final int[] keys, final Block[] blocks)
+    {
+        this.keys = keys;
+        this.blocks = blocks;
+        int total = 0;
+        for (final Block block : blocks)
+        {
+            total += block.cardinality;
+        }
+        this.cardinality = total;
+    }
+
+    /**
+     * @param other
+     *            Another set
+     * @return The ordinals that are in both sets
+     */
+    public AtlasOrdinalSet and(final AtlasOrdinalSet other)
+    {
+        final int[] resultKeys = new int[Math.min(this.keys.length, other.keys.length)];
+        final Block[] resultBlocks = new Block[resultKeys.length];
+        int size = 0;
+        int left = 0;
+        int right = 0;
+        while (left < this.keys.length && right < other.keys.length)
+        {
+            if (this.keys[left] < other.keys[right])
+            {
+                left++;
+            }
+            else if (this.keys[left] > other.keys[right])
+            {
+                right++;
+            }
+            else
+            {
+                final long[] leftWords = this.blocks[left].words();
+                final long[] rightWords = other.blocks[right].words();
+                final long[] words = new long[BITMAP_WORDS];
+                for (int word = 0; word < BITMAP_WORDS; word++)
+                {
+                    words[word] = leftWords[word] & rightWords[word];
+                }
+                final Block block = Block.fromWords(words);
+                if (block != null)
+                {
+                    resultKeys[size] = this.keys[left];
+                    resultBlocks[size] = block;
+                    size++;
+                }
+                left++;
+                right++;
+            }
+        }
+        return new AtlasOrdinalSet(Arrays.copyOf(resultKeys, size),
+                Arrays.copyOf(resultBlocks, size));
+    }
+
+    /**
+     * @return An estimate of the memory taken by this set
+     */
+    public long sizeInBytes()
+    {
+        long result = OBJECT_OVERHEAD_BYTES + (long) this.keys.length * Integer.BYTES;
+        for (final Block block : this.blocks)
+        {
+            result += block.sizeInBytes();
+        }
+        return result;
+    }
+
+    /**
+     * @return The ordinals of this set, in ascending order
+     */
+    public int[] toArray()
+    {
+        final int[] result = new int[this.cardinality];
+        int offset = 0;
+        for (int block = 0; block < this.blocks.length; block++)
+        {
+            offset = this.blocks[block].fill(this.keys[block] << BLOCK_BITS, result, offset);
+        }
+        return result;
+    }
+}
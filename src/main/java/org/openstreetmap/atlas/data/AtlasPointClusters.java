@@ -0,0 +1,198 @@
+package org.openstreetmap.atlas.data;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+
+/**
+ * Pyramid of clusters of the nodes and points of a dataset, for views in which they are too dense
+ * to be drawn one by one. It uses the cells of the {@link AtlasDensityGrid}: each cell of a level
+ * with punctual features is one cluster, located at the mean of their coordinates. A cluster of a
+ * single feature keeps its ordinal, for views to draw it as itself. Clusters are stored sorted by
+ * row and then column.
+ * <p>
+ * Shape points are not clustered.
+ *
+ * @author agent
+ */
+public final class AtlasPointClusters
+{
+    public static final int LEVELS = AtlasDensityGrid.LEVELS;
+    // Entries hold the cell key, shifted to leave room for the ordinal
+    private static final int ORDINAL_BITS = 31;
+    private static final long ORDINAL_MASK = (1L << ORDINAL_BITS) - 1;
+
+    private final long[][] keys;
+    private final int[][] counts;
+    private final double[][] latitudes;
+    private final double[][] longitudes;
+    private final int[][] ordinals;
+
+    /**
+     * Visitor of the clusters of an area.
+     *
+     * @author agent
+     */
+    @FunctionalInterface
+    public interface ClusterVisitor
+    {
+        /**
+         * @param location
+         *            The mean location of the features of the cluster
+         * @param count
+         *            The number of features in the cluster
+         * @param ordinal
+         *            The ordinal of the feature if the cluster has only one, -1 otherwise
+         */
+        void visit(LatLon location, int count, int ordinal);
+    }
+
+    AtlasPointClusters(final AtlasDataSet dataSet)
+    {
+        final int finestColumns = AtlasDensityGrid.columns(0);
+        final long[] finest = IntStream.range(0, dataSet.getPrimitivesCount()).parallel()
+                .mapToLong(ordinal ->
+                {
+                    final AtlasPrimitive primitive = dataSet.getPrimitiveByOrdinal(ordinal);
+                    if (!(primitive instanceof AtlasPunctual)
+                            || ((AtlasPunctual) primitive).isShapePoint())
+                    {
+                        return -1;
+                    }
+                    final LatLon location = ((AtlasPunctual) primitive).getCoor();
+                    final long key = (long) AtlasDensityGrid.row(location.lat(), 0) * finestColumns
+                            + AtlasDensityGrid.column(location.lon(), 0);
+                    return (key << ORDINAL_BITS) | ordinal;
+                }).filter(entry -> entry >= 0).toArray();
+        this.keys = new long[LEVELS][];
+        this.counts = new int[LEVELS][];
+        this.latitudes = new double[LEVELS][];
+        this.longitudes = new double[LEVELS][];
+        this.ordinals = new int[LEVELS][];
+        IntStream.range(0, LEVELS).parallel().forEach(level -> build(dataSet, finest, level));
+    }
+
+    /**
+     * @param degreesPerPixel
+     *            The width of a pixel of the view, in degrees of longitude
+     * @param minimumPixels
+     *            The minimum width of a cell, in pixels
+     * @return The finest level which clusters are at least that wide apart, -1 if the features are
+     *         sparse enough to be drawn one by one, or the coarsest level
+     */
+    public int level(final double degreesPerPixel, final double minimumPixels)
+    {
+        if (AtlasDensityGrid.size(0) >= minimumPixels * degreesPerPixel)
+        {
+            return -1;
+        }
+        int result = 0;
+        while (result < LEVELS - 1
+                && AtlasDensityGrid.size(result) < minimumPixels * degreesPerPixel)
+        {
+            result++;
+        }
+        return result;
+    }
+
+    /**
+     * Visits the clusters of a level within an area.
+     *
+     * @param level
+     *            The level
+     * @param bounds
+     *            The area
+     * @param visitor
+     *            The visitor of the clusters
+     */
+    public void visit(final int level, final Bounds bounds, final ClusterVisitor visitor)
+    {
+        final long[] levelKeys = this.keys[level];
+        final int columns = AtlasDensityGrid.columns(level);
+        final int minimumColumn = AtlasDensityGrid.column(bounds.getMinLon(), level);
+        final int maximumColumn = AtlasDensityGrid.column(bounds.getMaxLon(), level);
+        final int maximumRow = AtlasDensityGrid.row(bounds.getMinLat(), level);
+        for (int row = AtlasDensityGrid.row(bounds.getMaxLat(), level); row <= maximumRow; row++)
+        {
+            final long last = (long) row * columns + maximumColumn;
+            int index = Arrays.binarySearch(levelKeys, (long) row * columns + minimumColumn);
+            if (index < 0)
+            {
+                index = -index - 1;
+            }
+            for (; index < levelKeys.length && levelKeys[index] <= last; index++)
+            {
+                visitor.visit(
+                        new LatLon(this.latitudes[level][index], this.longitudes[level][index]),
+                        this.counts[level][index], this.ordinals[level][index]);
+            }
+        }
+    }
+
+    /**
+     * Aggregates the finest entries into the clusters of a level.
+     */
+    private void build(final AtlasDataSet dataSet, final long[] finest, final int level)
+    {
+        final int finestColumns = AtlasDensityGrid.columns(0);
+        final int columns = AtlasDensityGrid.columns(level);
+        final long[] entries = new long[finest.length];
+        for (int index = 0; index < finest.length; index++)
+        {
+            final long key = finest[index] >>> ORDINAL_BITS;
+            final long row = (key / finestColumns) >> level;
+            final long column = (key % finestColumns) >> level;
+            entries[index] = (row * columns + column) << ORDINAL_BITS
+                    | (finest[index] & ORDINAL_MASK);
+        }
+        Arrays.parallelSort(entries);
+
+        int clusters = 0;
+        for (int index = 0; index < entries.length; index++)
+        {
+            if (index == 0
+                    || entries[index] >>> ORDINAL_BITS != entries[index - 1] >>> ORDINAL_BITS)
+            {
+                clusters++;
+            }
+        }
+        final long[] levelKeys = new long[clusters];
+        final int[] levelCounts = new int[clusters];
+        final double[] levelLatitudes = new double[clusters];
+        final double[] levelLongitudes = new double[clusters];
+        final int[] levelOrdinals = new int[clusters];
+        int cluster = -1;
+        for (int index = 0; index < entries.length; index++)
+        {
+            final long key = entries[index] >>> ORDINAL_BITS;
+            final int ordinal = (int) (entries[index] & ORDINAL_MASK);
+            if (cluster < 0 || levelKeys[cluster] != key)
+            {
+                cluster++;
+                levelKeys[cluster] = key;
+                levelOrdinals[cluster] = ordinal;
+            }
+            else
+            {
+                levelOrdinals[cluster] = -1;
+            }
+            final LatLon location = ((AtlasPunctual) dataSet.getPrimitiveByOrdinal(ordinal))
+                    .getCoor();
+            levelCounts[cluster]++;
+            levelLatitudes[cluster] += location.lat();
+            levelLongitudes[cluster] += location.lon();
+        }
+        for (cluster = 0; cluster < clusters; cluster++)
+        {
+            levelLatitudes[cluster] /= levelCounts[cluster];
+            levelLongitudes[cluster] /= levelCounts[cluster];
+        }
+        this.keys[level] = levelKeys;
+        this.counts[level] = levelCounts;
+        this.latitudes[level] = levelLatitudes;
+        this.longitudes[level] = levelLongitudes;
+        this.ordinals[level] = levelOrdinals;
+    }
+}
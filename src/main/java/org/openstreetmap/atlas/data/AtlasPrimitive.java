@@ -48,8 +48,18 @@ public abstract class AtlasPrimitive implements IPrimitive
      */
     private long identifier;
 
+    /**
+     * Position of this primitive in the insertion order of its dataset, -1 if not in a dataset
+     */
+    private int ordinal = -1;
+
     private Object referrers;
 
+    /**
+     * Set when the primitive is highlighted, by a search or by the mouse hovering it
+     */
+    private volatile boolean highlighted;
+
     private StyleCache mappaintStyle;
     private short mappaintCacheIdx;
 
@@ -415,15 +425,17 @@ public abstract class AtlasPrimitive implements IPrimitive
     @Override
     public void setHighlighted(final boolean highlighted)
     {
-        // TODO Auto-generated method stub
-
+        this.highlighted = highlighted;
+        if (dataSet != null)
+        {
+            dataSet.highlightChanged(this, highlighted);
+        }
     }
 
     @Override
     public boolean isHighlighted()
     {
-        // TODO Auto-generated method stub
-        return false;
+        return highlighted;
     }
 
     @Override
@@ -516,6 +528,27 @@ public abstract class AtlasPrimitive implements IPrimitive
         return dataSet;
     }
 
+    /**
+     * @return The position of this primitive in the insertion order of its dataset, or -1 if it
+     *         does not belong to a dataset
+     */
+    public final int getOrdinal()
+    {
+        return ordinal;
+    }
+
+    /**
+     * This method should never ever by called from somewhere else than AtlasDataSet.addPrimitive
+     * or clear methods
+     *
+     * @param ordinal
+     *            the position of this primitive in the dataset
+     */
+    final void setOrdinal(final int ordinal)
+    {
+        this.ordinal = ordinal;
+    }
+
     /**
      * Throws exception if primitive is not part of the dataset
      */
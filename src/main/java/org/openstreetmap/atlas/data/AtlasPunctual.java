@@ -26,16 +26,23 @@ import org.openstreetmap.josm.data.osm.visitor.PrimitiveVisitor;
 public abstract class AtlasPunctual extends AtlasPrimitive implements INode
 {
     private final Location location;
+    /**
+     * True if this punctual primitive does not come from an Atlas Node or Point, but was created
+     * to hold a shape point of a linear item
+     */
+    private final boolean shapePoint;
 
     protected AtlasPunctual(final LocationItem locationItem)
     {
         super(locationItem);
         this.location = locationItem.getLocation();
+        this.shapePoint = false;
     }
 
     protected AtlasPunctual(final Location location)
     {
         this.location = Objects.requireNonNull(location);
+        this.shapePoint = true;
     }
 
     protected AtlasPunctual(final LatLon latlon)
@@ -97,6 +104,14 @@ public abstract class AtlasPunctual extends AtlasPrimitive implements INode
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * @return True if this primitive is only a shape point of an Atlas linear item
+     */
+    public final boolean isShapePoint()
+    {
+        return shapePoint;
+    }
+
     @Override
     public boolean isReferredByWays(final int count)
     {
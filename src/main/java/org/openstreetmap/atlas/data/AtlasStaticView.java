@@ -0,0 +1,953 @@
+package org.openstreetmap.atlas.data;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSelectionListener;
+import org.openstreetmap.josm.data.osm.DownloadPolicy;
+import org.openstreetmap.josm.data.osm.HighlightUpdateListener;
+import org.openstreetmap.josm.data.osm.INode;
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.IRelation;
+import org.openstreetmap.josm.data.osm.IWay;
+import org.openstreetmap.josm.data.osm.OsmData;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.PrimitiveId;
+import org.openstreetmap.josm.data.osm.UploadPolicy;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.WaySegment;
+import org.openstreetmap.josm.data.osm.visitor.PrimitiveVisitor;
+import org.openstreetmap.josm.gui.mappaint.StyleCache;
+import org.openstreetmap.josm.tools.SubclassFilteredCollection;
+
+/**
+ * The static content of an {@link AtlasDataSet}, as drawn into cached tiles: the same features,
+ * through wrappers that are neither selected nor highlighted, as the selection and highlights are
+ * drawn over the tiles. The ways have the nodes of a level of detail, and under point clusters,
+ * searches of nodes find none, for renderers to leave out the nodes and points the clusters stand
+ * for. The wrappers share the style cache of their primitive. Nothing can be changed through the
+ * view, and the primitives keep their actual selection everywhere else.
+ *
+ * @author agent
+ */
+public final class AtlasStaticView
+        implements OsmData<IPrimitive, INode, IWay<INode>, IRelation<AtlasRelationMember>>
+{
+    private final AtlasDataSet dataSet;
+    private final boolean clustered;
+    private final int level;
+
+    /**
+     * A primitive of the dataset, without its selection nor highlight.
+     *
+     * @param <P>
+     *            The type of the primitive
+     * @author agent
+     */
+    private abstract static class StaticPrimitive<P extends AtlasPrimitive> implements IPrimitive
+    {
+        private final P primitive;
+
+        StaticPrimitive(final P primitive)
+        {
+            this.primitive = primitive;
+        }
+
+        @Override
+        public final void declareCachedStyleUpToDate()
+        {
+            this.primitive.declareCachedStyleUpToDate();
+        }
+
+        @Override
+        public final boolean equals(final Object other)
+        {
+            return other instanceof StaticPrimitive
+                    && ((StaticPrimitive<?>) other).primitive == this.primitive;
+        }
+
+        @Override
+        public final String get(final String key)
+        {
+            return this.primitive.get(key);
+        }
+
+        @Override
+        public final BBox getBBox()
+        {
+            return this.primitive.getBBox();
+        }
+
+        @Override
+        public final StyleCache getCachedStyle()
+        {
+            return this.primitive.getCachedStyle();
+        }
+
+        @Override
+        public final int getChangesetId()
+        {
+            return this.primitive.getChangesetId();
+        }
+
+        @Override
+        public final AtlasDataSet getDataSet()
+        {
+            return this.primitive.getDataSet();
+        }
+
+        @Override
+        public final long getId()
+        {
+            return this.primitive.getId();
+        }
+
+        @Override
+        public final Map<String, String> getInterestingTags()
+        {
+            return this.primitive.getInterestingTags();
+        }
+
+        @Override
+        public final Map<String, String> getKeys()
+        {
+            return this.primitive.getKeys();
+        }
+
+        @Override
+        public final int getNumKeys()
+        {
+            return this.primitive.getNumKeys();
+        }
+
+        @Override
+        public final long getOsmId()
+        {
+            return this.primitive.getOsmId();
+        }
+
+        @Override
+        public final int getRawTimestamp()
+        {
+            return this.primitive.getRawTimestamp();
+        }
+
+        @Override
+        public final List<? extends IPrimitive> getReferrers(final boolean allowWithoutDataset)
+        {
+            return this.primitive.getReferrers(allowWithoutDataset);
+        }
+
+        @Override
+        public final Date getTimestamp()
+        {
+            return this.primitive.getTimestamp();
+        }
+
+        @Override
+        public final OsmPrimitiveType getType()
+        {
+            return this.primitive.getType();
+        }
+
+        @Override
+        public final long getUniqueId()
+        {
+            return this.primitive.getUniqueId();
+        }
+
+        @Override
+        public final User getUser()
+        {
+            return this.primitive.getUser();
+        }
+
+        @Override
+        public final int getVersion()
+        {
+            return this.primitive.getVersion();
+        }
+
+        @Override
+        public final boolean hasDirectionKeys()
+        {
+            return this.primitive.hasDirectionKeys();
+        }
+
+        @Override
+        public final int hashCode()
+        {
+            return this.primitive.hashCode();
+        }
+
+        @Override
+        public final boolean hasKeys()
+        {
+            return this.primitive.hasKeys();
+        }
+
+        @Override
+        public final boolean isAnnotated()
+        {
+            return this.primitive.isAnnotated();
+        }
+
+        @Override
+        public final boolean isCachedStyleUpToDate()
+        {
+            return this.primitive.isCachedStyleUpToDate();
+        }
+
+        @Override
+        public final boolean isDeleted()
+        {
+            return this.primitive.isDeleted();
+        }
+
+        @Override
+        public final boolean isHighlighted()
+        {
+            return false;
+        }
+
+        @Override
+        public final boolean isIncomplete()
+        {
+            return this.primitive.isIncomplete();
+        }
+
+        @Override
+        public final boolean isMemberOfSelected()
+        {
+            return false;
+        }
+
+        @Override
+        public final boolean isModified()
+        {
+            return this.primitive.isModified();
+        }
+
+        @Override
+        public final boolean isNew()
+        {
+            return this.primitive.isNew();
+        }
+
+        @Override
+        public final boolean isNewOrUndeleted()
+        {
+            return this.primitive.isNewOrUndeleted();
+        }
+
+        @Override
+        public final boolean isSelected()
+        {
+            return false;
+        }
+
+        @Override
+        public final boolean isTagged()
+        {
+            return this.primitive.isTagged();
+        }
+
+        @Override
+        public final boolean isTimestampEmpty()
+        {
+            return this.primitive.isTimestampEmpty();
+        }
+
+        @Override
+        public final boolean isUndeleted()
+        {
+            return this.primitive.isUndeleted();
+        }
+
+        @Override
+        public final boolean isUsable()
+        {
+            return this.primitive.isUsable();
+        }
+
+        @Override
+        public final boolean isVisible()
+        {
+            return this.primitive.isVisible();
+        }
+
+        @Override
+        public final Collection<String> keySet()
+        {
+            return this.primitive.keySet();
+        }
+
+        @Override
+        public final void put(final String key, final String value)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public final void remove(final String key)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public final void removeAll()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public final boolean reversedDirection()
+        {
+            return this.primitive.reversedDirection();
+        }
+
+        @Override
+        public final void setCachedStyle(final StyleCache mappaintStyle)
+        {
+            this.primitive.setCachedStyle(mappaintStyle);
+        }
+
+        @Override
+        public final void setChangesetId(final int changesetId)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public final void setDeleted(final boolean deleted)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public final void setHighlighted(final boolean highlighted)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public final void setKeys(final Map<String, String> keys)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public final void setModified(final boolean modified)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public final void setOsmId(final long identifier, final int version)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public final void setRawTimestamp(final int timestamp)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public final void setTimestamp(final Date timestamp)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public final void setUser(final User user)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public final void setVisible(final boolean visible)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public final String toString()
+        {
+            return this.primitive.toString();
+        }
+
+        @Override
+        public final void visitReferrers(final PrimitiveVisitor visitor)
+        {
+            this.primitive.visitReferrers(visitor);
+        }
+
+        final P getPrimitive()
+        {
+            return this.primitive;
+        }
+    }
+
+    /**
+     * A node or point of the dataset, without its selection nor highlight.
+     *
+     * @author agent
+     */
+    private static final class StaticPunctual extends StaticPrimitive<AtlasPunctual>
+            implements INode
+    {
+        StaticPunctual(final AtlasPunctual punctual)
+        {
+            super(punctual);
+        }
+
+        @Override
+        public void accept(final PrimitiveVisitor visitor)
+        {
+            visitor.visit(this);
+        }
+
+        @Override
+        public LatLon getCoor()
+        {
+            return getPrimitive().getCoor();
+        }
+
+        @Override
+        public boolean isReferredByWays(final int count)
+        {
+            return getPrimitive().isReferredByWays(count);
+        }
+
+        @Override
+        public double lat()
+        {
+            return getPrimitive().lat();
+        }
+
+        @Override
+        public double lon()
+        {
+            return getPrimitive().lon();
+        }
+
+        @Override
+        public void setCoor(final LatLon coor)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setEastNorth(final EastNorth eastNorth)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * A way of the dataset at a level of detail, without its selection nor highlight.
+     *
+     * @author agent
+     */
+    private static final class StaticLinear extends StaticPrimitive<AtlasLinear<?>>
+            implements IWay<INode>
+    {
+        private static final int THREE = 3;
+
+        private final List<INode> nodes;
+
+        StaticLinear(final AtlasLinear<?> linear, final int level)
+        {
+            super(linear);
+            this.nodes = Collections.unmodifiableList(linear.getNodes(level));
+        }
+
+        @Override
+        public void accept(final PrimitiveVisitor visitor)
+        {
+            visitor.visit(this);
+        }
+
+        @Override
+        public INode firstNode()
+        {
+            return this.nodes.isEmpty() ? null : this.nodes.get(0);
+        }
+
+        @Override
+        public INode getNode(final int index)
+        {
+            return this.nodes.get(index);
+        }
+
+        @Override
+        public long getNodeId(final int idx)
+        {
+            return this.nodes.get(idx).getUniqueId();
+        }
+
+        @Override
+        public List<Long> getNodeIds()
+        {
+            return this.nodes.stream().map(INode::getId).collect(Collectors.toList());
+        }
+
+        @Override
+        public List<INode> getNodes()
+        {
+            return this.nodes;
+        }
+
+        @Override
+        public int getNodesCount()
+        {
+            return this.nodes.size();
+        }
+
+        @Override
+        public boolean isClosed()
+        {
+            final int size = this.nodes.size();
+            return size >= THREE && this.nodes.get(size - 1) == this.nodes.get(0);
+        }
+
+        @Override
+        public boolean isFirstLastNode(final INode node)
+        {
+            return node == firstNode() || node == lastNode();
+        }
+
+        @Override
+        public boolean isInnerNode(final INode node)
+        {
+            // Closed ways only have inner nodes
+            final int index = this.nodes.indexOf(node);
+            return index > 0 && index < this.nodes.size() - 1 || index == 0 && isClosed();
+        }
+
+        @Override
+        public INode lastNode()
+        {
+            return this.nodes.isEmpty() ? null : this.nodes.get(this.nodes.size() - 1);
+        }
+
+        @Override
+        public void setNodes(final List<INode> nodes)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * A relation of the dataset, without its selection nor highlight.
+     *
+     * @author agent
+     */
+    private static final class StaticRelation extends StaticPrimitive<AtlasRelation>
+            implements IRelation<AtlasRelationMember>
+    {
+        StaticRelation(final AtlasRelation relation)
+        {
+            super(relation);
+        }
+
+        @Override
+        public void accept(final PrimitiveVisitor visitor)
+        {
+            visitor.visit(this);
+        }
+
+        @Override
+        public AtlasRelationMember getMember(final int index)
+        {
+            return getPrimitive().getMember(index);
+        }
+
+        @Override
+        public long getMemberId(final int idx)
+        {
+            return getPrimitive().getMemberId(idx);
+        }
+
+        @Override
+        public List<AtlasRelationMember> getMembers()
+        {
+            return getPrimitive().getMembers();
+        }
+
+        @Override
+        public int getMembersCount()
+        {
+            return getPrimitive().getMembersCount();
+        }
+
+        @Override
+        public OsmPrimitiveType getMemberType(final int idx)
+        {
+            return getPrimitive().getMemberType(idx);
+        }
+
+        @Override
+        public String getRole(final int idx)
+        {
+            return getPrimitive().getRole(idx);
+        }
+
+        @Override
+        public void setMembers(final List<AtlasRelationMember> members)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * @param dataSet
+     *            The dataset to view
+     * @param clustered
+     *            True to leave out the nodes and points, drawn as clusters
+     * @param level
+     *            The level of detail of the ways, or {@link AtlasLevelsOfDetail#FULL_DETAIL}
+     */
+    public AtlasStaticView(final AtlasDataSet dataSet, final boolean clustered, final int level)
+    {
+        this.dataSet = dataSet;
+        this.clustered = clustered;
+        this.level = level;
+    }
+
+    @Override
+    public void addHighlightUpdateListener(final HighlightUpdateListener listener)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addPrimitive(final IPrimitive primitive)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addSelected(final Collection<? extends PrimitiveId> selection)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addSelected(final PrimitiveId... osm)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addSelectionListener(final DataSelectionListener listener)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clearMappaintCache()
+    {
+        this.dataSet.clearMappaintCache();
+    }
+
+    @Override
+    public void clearSelection()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clearSelection(final Collection<? extends PrimitiveId> list)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clearSelection(final PrimitiveId... osm)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean containsNode(final INode node)
+    {
+        return !this.clustered && contains(node);
+    }
+
+    @Override
+    public boolean containsRelation(final IRelation<AtlasRelationMember> rel)
+    {
+        return contains(rel);
+    }
+
+    @Override
+    public boolean containsWay(final IWay<INode> way)
+    {
+        return contains(way);
+    }
+
+    @Override
+    public Collection<IPrimitive> getAllSelected()
+    {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Collection<DataSource> getDataSources()
+    {
+        return this.dataSet.getDataSources();
+    }
+
+    @Override
+    public DownloadPolicy getDownloadPolicy()
+    {
+        return this.dataSet.getDownloadPolicy();
+    }
+
+    @Override
+    public Collection<WaySegment> getHighlightedVirtualNodes()
+    {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Collection<WaySegment> getHighlightedWaySegments()
+    {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return The mappaint cache index of the dataset
+     */
+    public short getMappaintCacheIndex()
+    {
+        return this.dataSet.getMappaintCacheIndex();
+    }
+
+    @Override
+    public String getName()
+    {
+        return this.dataSet.getName();
+    }
+
+    @Override
+    public Collection<INode> getNodes()
+    {
+        return this.clustered ? Collections.emptyList()
+                : this.dataSet.getNodes().stream().map(StaticPunctual::new)
+                        .collect(Collectors.toList());
+    }
+
+    @Override
+    public IPrimitive getPrimitiveById(final PrimitiveId primitiveId)
+    {
+        return wrap(this.dataSet.getPrimitiveById(primitiveId));
+    }
+
+    @Override
+    public <T extends IPrimitive> Collection<T> getPrimitives(
+            final Predicate<? super IPrimitive> predicate)
+    {
+        return new SubclassFilteredCollection<>(this.dataSet.getPrimitives(primitive -> true)
+                .stream().map(this::wrap).filter(Objects::nonNull)
+                .collect(Collectors.toList()), predicate);
+    }
+
+    @Override
+    public Lock getReadLock()
+    {
+        return this.dataSet.getReadLock();
+    }
+
+    @Override
+    public Collection<IRelation<AtlasRelationMember>> getRelations()
+    {
+        return this.dataSet.getRelations().stream().map(StaticRelation::new)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public UploadPolicy getUploadPolicy()
+    {
+        return this.dataSet.getUploadPolicy();
+    }
+
+    @Override
+    public String getVersion()
+    {
+        return this.dataSet.getVersion();
+    }
+
+    @Override
+    public Collection<IWay<INode>> getWays()
+    {
+        return this.dataSet.getWays().stream().map(way -> new StaticLinear(way, this.level))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean isLocked()
+    {
+        return this.dataSet.isLocked();
+    }
+
+    @Override
+    public boolean isSelected(final IPrimitive osm)
+    {
+        return false;
+    }
+
+    @Override
+    public void lock()
+    {
+        this.dataSet.lock();
+    }
+
+    @Override
+    public void removeHighlightUpdateListener(final HighlightUpdateListener listener)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeSelectionListener(final DataSelectionListener listener)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<INode> searchNodes(final BBox bbox)
+    {
+        return this.clustered ? Collections.emptyList()
+                : this.dataSet.searchNodes(bbox).stream().map(StaticPunctual::new)
+                        .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<IRelation<AtlasRelationMember>> searchRelations(final BBox bbox)
+    {
+        return this.dataSet.searchRelations(bbox).stream().map(StaticRelation::new)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<IWay<INode>> searchWays(final BBox bbox)
+    {
+        return this.dataSet.searchWays(bbox).stream()
+                .map(way -> new StaticLinear(way, this.level))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean selectionEmpty()
+    {
+        return true;
+    }
+
+    @Override
+    public void setDownloadPolicy(final DownloadPolicy downloadPolicy)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setHighlightedVirtualNodes(final Collection<WaySegment> waySegments)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setHighlightedWaySegments(final Collection<WaySegment> waySegments)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setName(final String name)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setSelected(final Collection<? extends PrimitiveId> selection)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setSelected(final PrimitiveId... osm)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setUploadPolicy(final UploadPolicy uploadPolicy)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void toggleSelected(final Collection<? extends PrimitiveId> osm)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void toggleSelected(final PrimitiveId... osm)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void unlock()
+    {
+        this.dataSet.unlock();
+    }
+
+    private boolean contains(final IPrimitive primitive)
+    {
+        return primitive instanceof StaticPrimitive && this.dataSet
+                .getPrimitiveById(primitive) == ((StaticPrimitive<?>) primitive).getPrimitive();
+    }
+
+    /**
+     * @return The primitive seen through the view, or null if it is null or a node drawn as a
+     *         cluster
+     */
+    private IPrimitive wrap(final AtlasPrimitive primitive)
+    {
+        if (primitive instanceof AtlasPunctual)
+        {
+            return this.clustered ? null : new StaticPunctual((AtlasPunctual) primitive);
+        }
+        if (primitive instanceof AtlasLinear)
+        {
+            return new StaticLinear((AtlasLinear<?>) primitive, this.level);
+        }
+        if (primitive instanceof AtlasRelation)
+        {
+            return new StaticRelation((AtlasRelation) primitive);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,516 @@
+package org.openstreetmap.atlas.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Indexes of the tag values of the primitives of an {@link AtlasDataSet}, for the tag searches
+ * that cannot be answered by exact lookups:
+ * <ul>
+ * <li>Range searches on the keys that usually have numeric values, answered by binary searches in
+ * columns of the values sorted numerically</li>
+ * <li>Regular expression and substring searches, answered by testing the distinct tag values only,
+ * narrowed down with an index of the trigrams of the values</li>
+ * </ul>
+ *
+ * @author agent
+ */
+public final class AtlasTagIndex
+{
+    /**
+     * Keys that get a numeric column.
+     */
+    public static final Set<String> NUMERIC_KEYS = Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList("admin_level", "building:levels", "capacity", "ele", "est_width",
+                    "height", "lanes", "layer", "level", "maxheight", "maxspeed", "maxweight",
+                    "minspeed", "population", "width")));
+
+    private static final Pattern LEADING_NUMBER = Pattern
+            .compile("^\\s*(-?\\d+(?:\\.\\d+)?)");
+    private static final int TRIGRAM = 3;
+    private static final int CHARACTER_BITS = 16;
+    private static final String REGEX_META_CHARACTERS = ".^$|()[]{}*+?\\";
+
+    private final Map<String, NumericColumn> numericColumns = new HashMap<>();
+    // Distinct values, and the ordinals of the primitives having each value under any key
+    private final String[] values;
+    private final int[] valueOffsets;
+    private final int[] valueOrdinals;
+    // Trigrams of the distinct values, and the identifiers of the values containing each one
+    private final Map<Long, Integer> trigrams = new HashMap<>();
+    private final int[] trigramOffsets;
+    private final int[] trigramValues;
+
+    /**
+     * Numeric values of one key, sorted, with the ordinal of the primitive each value belongs to.
+     *
+     * @author agent
+     */
+    private static final class NumericColumn
+    {
+        private double[] numbers = new double[1];
+        private int[] ordinals = new int[1];
+        private int size;
+
+        void add(final double number, final int ordinal)
+        {
+            if (this.size == this.numbers.length)
+            {
+                this.numbers = Arrays.copyOf(this.numbers, 2 * this.size);
+                this.ordinals = Arrays.copyOf(this.ordinals, 2 * this.size);
+            }
+            this.numbers[this.size] = number;
+            this.ordinals[this.size] = ordinal;
+            this.size++;
+        }
+
+        /**
+         * @return The ordinals of the primitives with a value in the range, in ascending order
+         */
+        int[] between(final double lower, final boolean lowerInclusive, final double upper,
+                final boolean upperInclusive)
+        {
+            final int from = lowerInclusive ? lowerBound(lower) : upperBound(lower);
+            final int to = upperInclusive ? upperBound(upper) : lowerBound(upper);
+            if (from >= to)
+            {
+                return new int[0];
+            }
+            final int[] result = Arrays.copyOfRange(this.ordinals, from, to);
+            Arrays.sort(result);
+            return result;
+        }
+
+        void sort()
+        {
+            final double[] sortedNumbers = Arrays.copyOf(this.numbers, this.size);
+            final int[] order = IntStream.range(0, this.size).boxed()
+                    .sorted((left, right) -> Double.compare(this.numbers[left],
+                            this.numbers[right]))
+                    .mapToInt(Integer::intValue).toArray();
+            final int[] sortedOrdinals = new int[this.size];
+            for (int index = 0; index < this.size; index++)
+            {
+                sortedNumbers[index] = this.numbers[order[index]];
+                sortedOrdinals[index] = this.ordinals[order[index]];
+            }
+            this.numbers = sortedNumbers;
+            this.ordinals = sortedOrdinals;
+        }
+
+        /**
+         * @return The position of the first value greater than or equal to the number
+         */
+        private int lowerBound(final double number)
+        {
+            int low = 0;
+            int high = this.size;
+            while (low < high)
+            {
+                final int middle = (low + high) >>> 1;
+                if (this.numbers[middle] < number)
+                {
+                    low = middle + 1;
+                }
+                else
+                {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return The position of the first value strictly greater than the number
+         */
+        private int upperBound(final double number)
+        {
+            int low = 0;
+            int high = this.size;
+            while (low < high)
+            {
+                final int middle = (low + high) >>> 1;
+                if (this.numbers[middle] <= number)
+                {
+                    low = middle + 1;
+                }
+                else
+                {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * @param value
+     *            A tag value
+     * @return The number the value starts with, like 50 for "50 mph", or NaN if there is none
+     */
+    public static double parseNumber(final String value)
+    {
+        if (value == null)
+        {
+            return Double.NaN;
+        }
+        final Matcher matcher = LEADING_NUMBER.matcher(value);
+        return matcher.find() ? Double.parseDouble(matcher.group(1)) : Double.NaN;
+    }
+
+    /**
+     * Finds the literal strings that any match of a regular expression has to contain. The
+     * analysis is conservative: patterns with alternations, groups, flags or escapes other than
+     * escaped punctuation are considered to require nothing.
+     *
+     * @param regex
+     *            A regular expression
+     * @return The literals required by the regular expression
+     */
+    public static List<String> requiredLiterals(final String regex)
+    {
+        if (regex.indexOf('|') >= 0 || regex.indexOf('(') >= 0)
+        {
+            return Collections.emptyList();
+        }
+        final List<String> result = new ArrayList<>();
+        final StringBuilder run = new StringBuilder();
+        int index = 0;
+        while (index < regex.length())
+        {
+            final char character = regex.charAt(index);
+            if (character == '\\' && index + 1 < regex.length())
+            {
+                final char escaped = regex.charAt(index + 1);
+                if (Character.isLetterOrDigit(escaped))
+                {
+                    // Classes like \d, but also hexadecimal, unicode and octal escapes or quotes,
+                    // which do not stand for the characters written
+                    return Collections.emptyList();
+                }
+                run.append(escaped);
+                index += 2;
+            }
+            else if (character == '*' || character == '?' || character == '{')
+            {
+                // The previous character is optional
+                if (run.length() > 0)
+                {
+                    run.setLength(run.length() - 1);
+                }
+                flush(run, result);
+                index = character == '{' ? skipTo(regex, index, '}') : index + 1;
+            }
+            else if (character == '[')
+            {
+                flush(run, result);
+                index = skipClass(regex, index);
+            }
+            else if (REGEX_META_CHARACTERS.indexOf(character) >= 0)
+            {
+                flush(run, result);
+                index++;
+            }
+            else
+            {
+                run.append(character);
+                index++;
+            }
+        }
+        flush(run, result);
+        return result;
+    }
+
+    private static void flush(final StringBuilder run, final List<String> literals)
+    {
+        if (run.length() > 0)
+        {
+            literals.add(run.toString());
+            run.setLength(0);
+        }
+    }
+
+    /**
+     * @return The sorted identifiers of the values that are in both sorted arrays
+     */
+    private static int[] intersect(final int[] left, final int[] right)
+    {
+        final int[] result = new int[Math.min(left.length, right.length)];
+        int size = 0;
+        int leftIndex = 0;
+        int rightIndex = 0;
+        while (leftIndex < left.length && rightIndex < right.length)
+        {
+            if (left[leftIndex] < right[rightIndex])
+            {
+                leftIndex++;
+            }
+            else if (left[leftIndex] > right[rightIndex])
+            {
+                rightIndex++;
+            }
+            else
+            {
+                result[size] = left[leftIndex];
+                size++;
+                leftIndex++;
+                rightIndex++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * @return The index after the character class starting at an index, with its escaped and
+     *         nested brackets, and a closing bracket right after the opening one taken literally
+     */
+    private static int skipClass(final String regex, final int start)
+    {
+        int index = start + 1;
+        if (index < regex.length() && regex.charAt(index) == '^')
+        {
+            index++;
+        }
+        if (index < regex.length() && regex.charAt(index) == ']')
+        {
+            index++;
+        }
+        int depth = 1;
+        while (index < regex.length())
+        {
+            final char character = regex.charAt(index);
+            if (character == '\\')
+            {
+                index += 2;
+                continue;
+            }
+            if (character == '[')
+            {
+                depth++;
+            }
+            else if (character == ']')
+            {
+                depth--;
+                if (depth == 0)
+                {
+                    return index + 1;
+                }
+            }
+            index++;
+        }
+        return regex.length();
+    }
+
+    /**
+     * @return The position after the first occurrence of the character after the start
+     */
+    private static int skipTo(final String regex, final int start, final char character)
+    {
+        final int end = regex.indexOf(character, start + 1);
+        return end < 0 ? regex.length() : end + 1;
+    }
+
+    /**
+     * @return The distinct trigrams of a string
+     */
+    private static long[] trigrams(final String value)
+    {
+        if (value.length() < TRIGRAM)
+        {
+            return new long[0];
+        }
+        return IntStream.rangeClosed(0, value.length() - TRIGRAM)
+                .mapToLong(start -> trigram(value, start)).distinct().toArray();
+    }
+
+    private static long trigram(final String value, final int start)
+    {
+        return (long) value.charAt(start) << 2 * CHARACTER_BITS
+                | (long) value.charAt(start + 1) << CHARACTER_BITS | value.charAt(start + 2);
+    }
+
+    /**
+     * Build the indexes of the tag values of all the primitives of a dataset.
+     *
+     * @param dataSet
+     *            The dataset to index
+     */
+    public AtlasTagIndex(final AtlasDataSet dataSet)
+    {
+        this(dataSet.getPrimitivesCount(),
+                ordinal -> dataSet.getPrimitiveByOrdinal(ordinal).getKeys());
+    }
+
+    /**
+     * Build the indexes of the tag values of primitives given by ordinal.
+     *
+     * @param size
+     *            The number of primitives
+     * @param tags
+     *            The tags of the primitive of each ordinal
+     */
+    AtlasTagIndex(final int size, final IntFunction<Map<String, String>> tags)
+    {
+        // Distinct values, with the ordinals of the primitives having them
+        final Map<String, Integer> valueIdentifiers = new HashMap<>();
+        int[] valueCounts = new int[1];
+        long postings = 0;
+        for (int ordinal = 0; ordinal < size; ordinal++)
+        {
+            final Map<String, String> keys = tags.apply(ordinal);
+            for (final Map.Entry<String, String> tag : keys.entrySet())
+            {
+                if (NUMERIC_KEYS.contains(tag.getKey()))
+                {
+                    final double number = parseNumber(tag.getValue());
+                    if (!Double.isNaN(number))
+                    {
+                        this.numericColumns.computeIfAbsent(tag.getKey(),
+                                key -> new NumericColumn()).add(number, ordinal);
+                    }
+                }
+            }
+            for (final String value : new HashSet<>(keys.values()))
+            {
+                final int identifier = valueIdentifiers.computeIfAbsent(value,
+                        key -> valueIdentifiers.size());
+                if (identifier == valueCounts.length)
+                {
+                    valueCounts = Arrays.copyOf(valueCounts, 2 * valueCounts.length);
+                }
+                valueCounts[identifier]++;
+                postings++;
+            }
+        }
+        this.numericColumns.values().forEach(NumericColumn::sort);
+
+        this.values = new String[valueIdentifiers.size()];
+        valueIdentifiers.forEach((value, identifier) -> this.values[identifier] = value);
+        this.valueOffsets = new int[this.values.length + 1];
+        for (int identifier = 0; identifier < this.values.length; identifier++)
+        {
+            this.valueOffsets[identifier + 1] = this.valueOffsets[identifier]
+                    + valueCounts[identifier];
+        }
+        this.valueOrdinals = new int[Math.toIntExact(postings)];
+        final int[] valueCursors = Arrays.copyOf(this.valueOffsets, this.values.length);
+        for (int ordinal = 0; ordinal < size; ordinal++)
+        {
+            for (final String value : new HashSet<>(tags.apply(ordinal).values()))
+            {
+                final int identifier = valueIdentifiers.get(value);
+                this.valueOrdinals[valueCursors[identifier]] = ordinal;
+                valueCursors[identifier]++;
+            }
+        }
+
+        // Trigrams of the distinct values, with the identifiers of the values containing them
+        int[] trigramCounts = new int[1];
+        for (final String value : this.values)
+        {
+            for (final long trigram : trigrams(value))
+            {
+                final int identifier = this.trigrams.computeIfAbsent(trigram,
+                        key -> this.trigrams.size());
+                if (identifier == trigramCounts.length)
+                {
+                    trigramCounts = Arrays.copyOf(trigramCounts, 2 * trigramCounts.length);
+                }
+                trigramCounts[identifier]++;
+            }
+        }
+        this.trigramOffsets = new int[this.trigrams.size() + 1];
+        for (int identifier = 0; identifier < this.trigrams.size(); identifier++)
+        {
+            this.trigramOffsets[identifier + 1] = this.trigramOffsets[identifier]
+                    + trigramCounts[identifier];
+        }
+        this.trigramValues = new int[this.trigramOffsets[this.trigrams.size()]];
+        final int[] trigramCursors = Arrays.copyOf(this.trigramOffsets, this.trigrams.size());
+        for (int identifier = 0; identifier < this.values.length; identifier++)
+        {
+            for (final long trigram : trigrams(this.values[identifier]))
+            {
+                final int trigramIdentifier = this.trigrams.get(trigram);
+                this.trigramValues[trigramCursors[trigramIdentifier]] = identifier;
+                trigramCursors[trigramIdentifier]++;
+            }
+        }
+    }
+
+    /**
+     * @param key
+     *            A tag key
+     * @return True if the key has a numeric column
+     */
+    public boolean hasNumericColumn(final String key)
+    {
+        return NUMERIC_KEYS.contains(key);
+    }
+
+    /**
+     * @param key
+     *            A key with a numeric column
+     * @param lower
+     *            The lower bound of the range, or negative infinity
+     * @param lowerInclusive
+     *            Whether the lower bound is part of the range
+     * @param upper
+     *            The upper bound of the range, or positive infinity
+     * @param upperInclusive
+     *            Whether the upper bound is part of the range
+     * @return The ordinals, in ascending order, of the primitives with a value of the key that
+     *         starts with a number in the range
+     */
+    public int[] getOrdinalsInRange(final String key, final double lower,
+            final boolean lowerInclusive, final double upper, final boolean upperInclusive)
+    {
+        final NumericColumn column = this.numericColumns.get(key);
+        return column == null ? new int[0]
+                : column.between(lower, lowerInclusive, upper, upperInclusive);
+    }
+
+    /**
+     * @param pattern
+     *            A regular expression
+     * @param literals
+     *            Literal strings that any match of the pattern contains
+     * @return The ordinals, in ascending order, of the primitives with a value of any key in which
+     *         the pattern can be found
+     */
+    public int[] getOrdinalsWithValueMatching(final Pattern pattern, final List<String> literals)
+    {
+        int[] candidates = null;
+        for (final String literal : literals)
+        {
+            for (final long trigram : trigrams(literal))
+            {
+                final Integer identifier = this.trigrams.get(trigram);
+                if (identifier == null)
+                {
+                    return new int[0];
+                }
+                final int[] containing = Arrays.copyOfRange(this.trigramValues,
+                        this.trigramOffsets[identifier], this.trigramOffsets[identifier + 1]);
+                candidates = candidates == null ? containing : intersect(candidates, containing);
+            }
+        }
+        final IntStream valueIdentifiers = candidates == null
+                ? IntStream.range(0, this.values.length) : IntStream.of(candidates);
+        return valueIdentifiers.parallel()
+                .filter(identifier -> pattern.matcher(this.values[identifier]).find())
+                .flatMap(identifier -> Arrays.stream(this.valueOrdinals,
+                        this.valueOffsets[identifier], this.valueOffsets[identifier + 1]))
+                .sorted().distinct().toArray();
+    }
+}
@@ -0,0 +1,216 @@
+package org.openstreetmap.atlas.data;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.projection.Ellipsoid;
+
+/**
+ * Histograms of the tags of a set of primitives of an {@link AtlasDataSet}: counts per key, per
+ * key and value and per type, and the total length of the ways and surface of the areas,
+ * aggregated in parallel.
+ *
+ * @author agent
+ */
+public final class AtlasTagStatistics
+{
+    private final int primitives;
+    private final int shapePoints;
+    private final Map<OsmPrimitiveType, Integer> typeCounts;
+    private final Map<String, Integer> keyCounts;
+    private final Map<String, Map<String, Integer>> valueCounts;
+    private final double lengthInMeters;
+    private final double surfaceInSquareMeters;
+
+    /**
+     * Histograms of one thread.
+     *
+     * @author agent
+     */
+    private static final class Accumulator
+    {
+        private final AtlasDataSet dataSet;
+        private int primitives;
+        private int shapePoints;
+        private final Map<OsmPrimitiveType, Integer> typeCounts = new EnumMap<>(
+                OsmPrimitiveType.class);
+        private final Map<String, Integer> keyCounts = new HashMap<>();
+        private final Map<String, Map<String, Integer>> valueCounts = new HashMap<>();
+        private double lengthInMeters;
+        private double surfaceInSquareMeters;
+
+        Accumulator(final AtlasDataSet dataSet)
+        {
+            this.dataSet = dataSet;
+        }
+
+        void add(final int ordinal)
+        {
+            final AtlasPrimitive primitive = this.dataSet.getPrimitiveByOrdinal(ordinal);
+            this.primitives++;
+            this.typeCounts.merge(primitive.getType(), 1, Integer::sum);
+            if (primitive instanceof AtlasPunctual && ((AtlasPunctual) primitive).isShapePoint())
+            {
+                this.shapePoints++;
+                return;
+            }
+            for (final Map.Entry<String, String> tag : primitive.getKeys().entrySet())
+            {
+                this.keyCounts.merge(tag.getKey(), 1, Integer::sum);
+                this.valueCounts.computeIfAbsent(tag.getKey(), key -> new HashMap<>())
+                        .merge(tag.getValue(), 1, Integer::sum);
+            }
+            if (primitive instanceof AtlasArea)
+            {
+                this.surfaceInSquareMeters += surface(((AtlasArea) primitive).getNodes());
+            }
+            else if (primitive instanceof AtlasLinear)
+            {
+                this.lengthInMeters += length(((AtlasLinear<?>) primitive).getNodes());
+            }
+        }
+
+        void merge(final Accumulator other)
+        {
+            this.primitives += other.primitives;
+            this.shapePoints += other.shapePoints;
+            other.typeCounts.forEach((type, count) -> this.typeCounts.merge(type, count,
+                    Integer::sum));
+            other.keyCounts.forEach((key, count) -> this.keyCounts.merge(key, count,
+                    Integer::sum));
+            other.valueCounts.forEach((key, values) ->
+            {
+                final Map<String, Integer> merged = this.valueCounts.computeIfAbsent(key,
+                        ignored -> new HashMap<>());
+                values.forEach((value, count) -> merged.merge(value, count, Integer::sum));
+            });
+            this.lengthInMeters += other.lengthInMeters;
+            this.surfaceInSquareMeters += other.surfaceInSquareMeters;
+        }
+    }
+
+    /**
+     * Aggregates the histograms of some primitives of a dataset.
+     *
+     * @param dataSet
+     *            The dataset
+     * @param ordinals
+     *            The ordinals of the primitives
+     * @return The histograms
+     */
+    public static AtlasTagStatistics of(final AtlasDataSet dataSet, final int[] ordinals)
+    {
+        return new AtlasTagStatistics(IntStream.of(ordinals).parallel().collect(
+                () -> new Accumulator(dataSet), Accumulator::add, Accumulator::merge));
+    }
+
+    /**
+     * @return The great circle length of a polyline, in meters
+     */
+    private static double length(final List<? extends AtlasPunctual> nodes)
+    {
+        double result = 0;
+        for (int index = 1; index < nodes.size(); index++)
+        {
+            result += nodes.get(index - 1).getCoor()
+                    .greatCircleDistance(nodes.get(index).getCoor());
+        }
+        return result;
+    }
+
+    /**
+     * @return The surface of a closed polygon on a sphere of the radius of the equator, in square
+     *         meters. It is close enough to the surface on the ellipsoid for statistics.
+     */
+    private static double surface(final List<? extends AtlasPunctual> nodes)
+    {
+        double sum = 0;
+        for (int index = 1; index < nodes.size(); index++)
+        {
+            final LatLon start = nodes.get(index - 1).getCoor();
+            final LatLon end = nodes.get(index).getCoor();
+            sum += Math.toRadians(end.lon() - start.lon()) * (2
+                    + Math.sin(Math.toRadians(start.lat())) + Math.sin(Math.toRadians(end.lat())));
+        }
+        final double radius = Ellipsoid.WGS84.a;
+        return Math.abs(sum) * radius * radius / 2;
+    }
+
+    private AtlasTagStatistics(final Accumulator accumulator)
+    {
+        this.primitives = accumulator.primitives;
+        this.shapePoints = accumulator.shapePoints;
+        this.typeCounts = Collections.unmodifiableMap(accumulator.typeCounts);
+        this.keyCounts = Collections.unmodifiableMap(accumulator.keyCounts);
+        this.valueCounts = Collections.unmodifiableMap(accumulator.valueCounts);
+        this.lengthInMeters = accumulator.lengthInMeters;
+        this.surfaceInSquareMeters = accumulator.surfaceInSquareMeters;
+    }
+
+    /**
+     * @return The number of primitives having each key
+     */
+    public Map<String, Integer> getKeyCounts()
+    {
+        return this.keyCounts;
+    }
+
+    /**
+     * @return The total length of the ways that are not areas, in meters
+     */
+    public double getLengthInMeters()
+    {
+        return this.lengthInMeters;
+    }
+
+    /**
+     * @return The number of primitives, shape points included
+     */
+    public int getPrimitives()
+    {
+        return this.primitives;
+    }
+
+    /**
+     * @return The number of shape points, which have no tags
+     */
+    public int getShapePoints()
+    {
+        return this.shapePoints;
+    }
+
+    /**
+     * @return The total surface of the areas, in square meters
+     */
+    public double getSurfaceInSquareMeters()
+    {
+        return this.surfaceInSquareMeters;
+    }
+
+    /**
+     * @param type
+     *            A primitive type
+     * @return The number of primitives of this type
+     */
+    public int getTypeCount(final OsmPrimitiveType type)
+    {
+        return this.typeCounts.getOrDefault(type, 0);
+    }
+
+    /**
+     * @param key
+     *            A key
+     * @return The number of primitives having each value of the key
+     */
+    public Map<String, Integer> getValueCounts(final String key)
+    {
+        return Collections.unmodifiableMap(
+                this.valueCounts.getOrDefault(key, Collections.emptyMap()));
+    }
+}
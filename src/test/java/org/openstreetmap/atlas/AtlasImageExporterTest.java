@@ -0,0 +1,77 @@
+package org.openstreetmap.atlas;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class AtlasImageExporterTest
+{
+    private static final int TILE_SIZE = 256;
+    // Two tiles, the second one cropped
+    private static final int WIDTH = 300;
+    // Random pixels barely compress, so that the image spans several chunks
+    private static final int ROWS = 40;
+    private static final long SEED = 42;
+
+    private static BufferedImage[] tiles(final Random random)
+    {
+        final BufferedImage[] result = new BufferedImage[2];
+        for (int column = 0; column < result.length; column++)
+        {
+            result[column] = new BufferedImage(TILE_SIZE, ROWS, BufferedImage.TYPE_INT_ARGB);
+            for (int y = 0; y < ROWS; y++)
+            {
+                for (int x = 0; x < TILE_SIZE; x++)
+                {
+                    result[column].setRGB(x, y, random.nextInt());
+                }
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        final Random random = new Random(SEED);
+        final BufferedImage[] first = tiles(random);
+        final BufferedImage[] second = tiles(random);
+        final File file = File.createTempFile("atlas-export", ".png");
+        try
+        {
+            // The last strip only writes some of its rows
+            try (AtlasImageExporter.PngStream png = new AtlasImageExporter.PngStream(file, WIDTH,
+                    ROWS + ROWS / 2))
+            {
+                png.write(first, ROWS);
+                png.write(second, ROWS / 2);
+            }
+            final BufferedImage image = ImageIO.read(file);
+            Assert.assertEquals(WIDTH, image.getWidth());
+            Assert.assertEquals(ROWS + ROWS / 2, image.getHeight());
+            for (int y = 0; y < image.getHeight(); y++)
+            {
+                final BufferedImage[] strip = y < ROWS ? first : second;
+                for (int x = 0; x < WIDTH; x++)
+                {
+                    Assert.assertEquals(
+                            strip[x / TILE_SIZE].getRGB(x % TILE_SIZE, y % ROWS),
+                            image.getRGB(x, y));
+                }
+            }
+        }
+        finally
+        {
+            Assert.assertTrue(file.delete());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.openstreetmap.atlas;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class AtlasImportProfileTest
+{
+    private static final double FRACTION = 0.25;
+    private static final double CELL_DEGREES = 1;
+    private static final int FEATURES = 8;
+
+    @Test
+    public void testCellsAreSampledApart()
+    {
+        final AtlasImportProfile.Sample sample = new AtlasImportProfile.Sample(FRACTION,
+                CELL_DEGREES);
+        Assert.assertTrue(sample.keep(0.5, 0.5));
+        Assert.assertFalse(sample.keep(0.6, 0.6));
+        // The first feature of every other cell is kept, on either side of the axes
+        Assert.assertTrue(sample.keep(0.5, -0.5));
+        Assert.assertTrue(sample.keep(-0.5, 0.5));
+        Assert.assertTrue(sample.keep(-0.5, -0.5));
+        Assert.assertTrue(sample.keep(1.5, 0.5));
+    }
+
+    @Test
+    public void testFraction()
+    {
+        final AtlasImportProfile.Sample sample = new AtlasImportProfile.Sample(FRACTION,
+                CELL_DEGREES);
+        final boolean[] kept = new boolean[FEATURES];
+        for (int index = 0; index < FEATURES; index++)
+        {
+            kept[index] = sample.keep(0.5, 0.5);
+        }
+        // The first feature, then every feature that completes a multiple of four
+        Assert.assertArrayEquals(
+                new boolean[] { true, false, false, true, false, false, false, true }, kept);
+    }
+
+    @Test
+    public void testDeterministic()
+    {
+        final AtlasImportProfile.Sample first = new AtlasImportProfile.Sample(FRACTION,
+                CELL_DEGREES);
+        final AtlasImportProfile.Sample second = new AtlasImportProfile.Sample(FRACTION,
+                CELL_DEGREES);
+        for (int index = 0; index < FEATURES; index++)
+        {
+            final double latitude = index % 2 == 0 ? 0.5 : -0.5;
+            Assert.assertEquals(first.keep(latitude, index), second.keep(latitude, index));
+        }
+    }
+}
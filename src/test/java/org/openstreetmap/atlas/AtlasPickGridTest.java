@@ -0,0 +1,75 @@
+package org.openstreetmap.atlas;
+
+import java.awt.geom.Point2D;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class AtlasPickGridTest
+{
+    private static final int POINT = 1;
+    private static final int ROAD = 2;
+    private static final int CROSSING = 3;
+    private static final double TOLERANCE = 5;
+
+    private static AtlasPickGrid.Chunk chunk()
+    {
+        final AtlasPickGrid.Entries entries = new AtlasPickGrid.Entries();
+        final Point2D point = new Point2D.Double(10, 10);
+        entries.add(point, point, POINT, true);
+        entries.add(new Point2D.Double(0, 100), new Point2D.Double(200, 100), ROAD, false);
+        // Crosses the whole chunk from outside
+        entries.add(new Point2D.Double(-100, 300), new Point2D.Double(600, 300), CROSSING,
+                false);
+        return new AtlasPickGrid.Chunk(entries);
+    }
+
+    private static int nearest(final double x, final double y)
+    {
+        final AtlasPickGrid.Nearest result = new AtlasPickGrid.Nearest(TOLERANCE);
+        chunk().nearest(x, y, result);
+        return result.getOrdinal();
+    }
+
+    @Test
+    public void testClippedSegment()
+    {
+        Assert.assertEquals(CROSSING, nearest(256, 302));
+        Assert.assertEquals(CROSSING, nearest(AtlasPickGrid.CHUNK_SIZE - 1, 299));
+    }
+
+    @Test
+    public void testNothingInTolerance()
+    {
+        Assert.assertEquals(-1, nearest(100, 50));
+        Assert.assertEquals(-1, nearest(250, 100));
+    }
+
+    @Test
+    public void testPunctualFirst()
+    {
+        final AtlasPickGrid.Entries entries = new AtlasPickGrid.Entries();
+        entries.add(new Point2D.Double(0, 20), new Point2D.Double(40, 20), ROAD, false);
+        final Point2D point = new Point2D.Double(20, 24);
+        entries.add(point, point, POINT, true);
+        final AtlasPickGrid.Nearest result = new AtlasPickGrid.Nearest(TOLERANCE);
+        new AtlasPickGrid.Chunk(entries).nearest(20, 21, result);
+        Assert.assertEquals(POINT, result.getOrdinal());
+    }
+
+    @Test
+    public void testSegment()
+    {
+        Assert.assertEquals(ROAD, nearest(50, 103));
+        Assert.assertEquals(ROAD, nearest(200, 96));
+    }
+
+    @Test
+    public void testPoint()
+    {
+        Assert.assertEquals(POINT, nearest(12, 12));
+    }
+}
@@ -0,0 +1,46 @@
+package org.openstreetmap.atlas;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.atlas.AtlasSearch.SearchType;
+import org.openstreetmap.atlas.data.AtlasOrdinalSet;
+
+/**
+ * @author agent
+ */
+public class AtlasSearchCacheTest
+{
+    @Test
+    public void testDisabled()
+    {
+        final AtlasSearchCache cache = new AtlasSearchCache(0);
+        cache.put(SearchType.TAG, "highway", AtlasOrdinalSet.of(new int[] { 1 }));
+        Assert.assertFalse(cache.get(SearchType.TAG, "highway").isPresent());
+    }
+
+    @Test
+    public void testEviction()
+    {
+        final AtlasOrdinalSet results = AtlasOrdinalSet.of(new int[] { 1, 2, 3 });
+        final AtlasSearchCache cache = new AtlasSearchCache(results.sizeInBytes() * 2);
+        cache.put(SearchType.TAG, "a", results);
+        cache.put(SearchType.TAG, "b", results);
+        // Using the first results makes the second ones the least recently used
+        Assert.assertTrue(cache.get(SearchType.TAG, "a").isPresent());
+        cache.put(SearchType.TAG, "c", results);
+        Assert.assertTrue(cache.get(SearchType.TAG, "a").isPresent());
+        Assert.assertFalse(cache.get(SearchType.TAG, "b").isPresent());
+        Assert.assertTrue(cache.get(SearchType.TAG, "c").isPresent());
+    }
+
+    @Test
+    public void testKey()
+    {
+        Assert.assertEquals(AtlasSearchCache.key(SearchType.TAG, "a=1 AND b=2"),
+                AtlasSearchCache.key(SearchType.TAG, " b=2 AND a=1 AND a=1"));
+        Assert.assertEquals(AtlasSearchCache.key(SearchType.BOX, "1, 2, 3, 4"),
+                AtlasSearchCache.key(SearchType.BOX, "1,2,3,4"));
+        Assert.assertNotEquals(AtlasSearchCache.key(SearchType.TAG, "a"),
+                AtlasSearchCache.key(SearchType.JOSM_SYNTAX, "a"));
+    }
+}
@@ -0,0 +1,58 @@
+package org.openstreetmap.atlas.data;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+
+/**
+ * @author agent
+ */
+public class AtlasIdentifierIndexTest
+{
+    private static final long[] IDENTIFIERS = { 1234L, 12L, 5L, 123L, 120L, 7L };
+
+    private static AtlasIdentifierIndex index()
+    {
+        final AtlasDataSet dataSet = new AtlasDataSet();
+        for (int index = 0; index < IDENTIFIERS.length; index++)
+        {
+            final AtlasNode node = new AtlasNode(new LatLon(index, index));
+            node.setOsmId(IDENTIFIERS[index], 1);
+            dataSet.addPrimitive(node);
+        }
+        return new AtlasIdentifierIndex(dataSet);
+    }
+
+    @Test
+    public void testAtlasIdentifiers()
+    {
+        final AtlasIdentifierIndex.Matches matches = index()
+                .getOrdinalsByAtlasIdentifiers(new long[] { 123L, 99L, 5L, 123L, 1L });
+        Assert.assertArrayEquals(new int[] { 2, 3 }, matches.getOrdinals());
+        Assert.assertArrayEquals(new long[] { 1L, 99L }, matches.getMissing());
+    }
+
+    @Test
+    public void testExact()
+    {
+        final AtlasIdentifierIndex index = index();
+        Assert.assertArrayEquals(new int[] { 3 }, index.getOrdinals(OsmPrimitiveType.NODE, 123L));
+        Assert.assertArrayEquals(new int[0], index.getOrdinals(OsmPrimitiveType.NODE, 1L));
+        Assert.assertArrayEquals(new int[0], index.getOrdinals(OsmPrimitiveType.WAY, 123L));
+    }
+
+    @Test
+    public void testPrefix()
+    {
+        final AtlasIdentifierIndex index = index();
+        Assert.assertArrayEquals(new int[] { 0, 1, 3, 4 },
+                index.getOrdinalsWithPrefix(OsmPrimitiveType.NODE, 12L));
+        Assert.assertArrayEquals(new int[] { 0, 3 },
+                index.getOrdinalsWithPrefix(OsmPrimitiveType.NODE, 123L));
+        Assert.assertArrayEquals(new int[] { 5 },
+                index.getOrdinalsWithPrefix(OsmPrimitiveType.NODE, 7L));
+        Assert.assertArrayEquals(new int[0],
+                index.getOrdinalsWithPrefix(OsmPrimitiveType.NODE, 0L));
+    }
+}
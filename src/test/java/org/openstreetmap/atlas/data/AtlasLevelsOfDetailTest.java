@@ -0,0 +1,72 @@
+package org.openstreetmap.atlas.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+
+/**
+ * @author agent
+ */
+public class AtlasLevelsOfDetailTest
+{
+    private static final int VERTICES = 11;
+    private static final double STEP = 0.001;
+    // Between the tolerances of the first two levels
+    private static final double AMPLITUDE = 0.00003;
+
+    /**
+     * @return A zigzag along the equator, starting and ending on it
+     */
+    private static List<AtlasPunctual> zigzag()
+    {
+        final List<AtlasPunctual> result = new ArrayList<>();
+        for (int index = 0; index < VERTICES; index++)
+        {
+            result.add(new AtlasNode(new LatLon(index % 2 == 0 ? 0 : AMPLITUDE, index * STEP)));
+        }
+        return result;
+    }
+
+    @Test
+    public void testLevelFor()
+    {
+        Assert.assertEquals(AtlasLevelsOfDetail.FULL_DETAIL,
+                AtlasLevelsOfDetail.levelFor(AtlasLevelsOfDetail.FINEST_TOLERANCE));
+        Assert.assertEquals(0,
+                AtlasLevelsOfDetail.levelFor(2 * AtlasLevelsOfDetail.FINEST_TOLERANCE));
+        Assert.assertEquals(2, AtlasLevelsOfDetail.levelFor(2 * AtlasLevelsOfDetail.tolerance(2)));
+        Assert.assertEquals(AtlasLevelsOfDetail.LEVELS - 1, AtlasLevelsOfDetail.levelFor(1));
+    }
+
+    @Test
+    public void testSimplify()
+    {
+        final List<AtlasPunctual> nodes = zigzag();
+        final List<List<AtlasPunctual>> levels = AtlasLevelsOfDetail.simplify(nodes);
+        Assert.assertEquals(AtlasLevelsOfDetail.LEVELS, levels.size());
+        // The finest level keeps all the vertices, and shares the full geometry
+        Assert.assertSame(nodes, levels.get(0));
+        // The coarser ones only keep the ends, and share the same geometry
+        final List<AtlasPunctual> ends = levels.get(1);
+        Assert.assertEquals(2, ends.size());
+        Assert.assertSame(nodes.get(0), ends.get(0));
+        Assert.assertSame(nodes.get(VERTICES - 1), ends.get(1));
+        for (int level = 2; level < AtlasLevelsOfDetail.LEVELS; level++)
+        {
+            Assert.assertSame(ends, levels.get(level));
+        }
+    }
+
+    @Test
+    public void testShortWays()
+    {
+        final List<AtlasPunctual> nodes = zigzag().subList(0, 2);
+        for (final List<AtlasPunctual> level : AtlasLevelsOfDetail.simplify(nodes))
+        {
+            Assert.assertSame(nodes, level);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.openstreetmap.atlas.data;
+
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class AtlasOrdinalSetTest
+{
+    private static final int BLOCK = 1 << 16;
+    private static final int DENSE = 10_000;
+
+    @Test
+    public void testAnd()
+    {
+        final AtlasOrdinalSet sparse = AtlasOrdinalSet.of(new int[] { 1, 5, BLOCK + 2, 3 * BLOCK });
+        final AtlasOrdinalSet dense = AtlasOrdinalSet
+                .of(IntStream.range(0, DENSE).map(value -> value * 2 + 1).toArray());
+        Assert.assertArrayEquals(new int[] { 1, 5 }, sparse.and(dense).toArray());
+        Assert.assertArrayEquals(new int[] { 1, 5 }, dense.and(sparse).toArray());
+        Assert.assertArrayEquals(new int[0],
+                sparse.and(AtlasOrdinalSet.of(new int[] { 2 * BLOCK })).toArray());
+        Assert.assertArrayEquals(dense.toArray(), dense.and(dense).toArray());
+    }
+
+    @Test
+    public void testEmpty()
+    {
+        final AtlasOrdinalSet empty = AtlasOrdinalSet.of(new int[0]);
+        Assert.assertArrayEquals(new int[0], empty.toArray());
+        Assert.assertArrayEquals(new int[0],
+                empty.and(AtlasOrdinalSet.of(new int[] { 1 })).toArray());
+    }
+
+    @Test
+    public void testRoundTrip()
+    {
+        final int[] sparse = { 0, 3, BLOCK - 1, BLOCK, 2 * BLOCK + 7, Integer.MAX_VALUE };
+        Assert.assertArrayEquals(sparse, AtlasOrdinalSet.of(sparse).toArray());
+        final int[] dense = IntStream.range(BLOCK, BLOCK + DENSE).toArray();
+        Assert.assertArrayEquals(dense, AtlasOrdinalSet.of(dense).toArray());
+    }
+
+    @Test
+    public void testSize()
+    {
+        final AtlasOrdinalSet sparse = AtlasOrdinalSet.of(new int[] { 1, 2, 3 });
+        final AtlasOrdinalSet dense = AtlasOrdinalSet
+                .of(IntStream.range(0, BLOCK).toArray());
+        Assert.assertTrue(sparse.sizeInBytes() < dense.sizeInBytes());
+        // A full block is a bitmap of 8KB, not an array of 128KB
+        Assert.assertTrue(dense.sizeInBytes() < 2 * BLOCK / Long.SIZE * Long.BYTES);
+    }
+}
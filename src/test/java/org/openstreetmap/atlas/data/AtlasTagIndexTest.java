@@ -0,0 +1,129 @@
+package org.openstreetmap.atlas.data;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class AtlasTagIndexTest
+{
+    private static final List<Map<String, String>> TAGS = Arrays.asList(tags("lanes", "1"),
+            tags("lanes", "2"), tags("lanes", "2;3"), tags("lanes", "3"), tags("lanes", "none"),
+            tags("name", "Main Street"), tags("name", "Mainz", "highway", "residential"),
+            tags());
+
+    private static AtlasTagIndex index()
+    {
+        return new AtlasTagIndex(TAGS.size(), TAGS::get);
+    }
+
+    private static int[] matching(final AtlasTagIndex index, final String regex)
+    {
+        return index.getOrdinalsWithValueMatching(Pattern.compile(regex),
+                AtlasTagIndex.requiredLiterals(regex));
+    }
+
+    private static Map<String, String> tags(final String... keyValues)
+    {
+        final Map<String, String> result = new HashMap<>();
+        for (int index = 0; index < keyValues.length; index += 2)
+        {
+            result.put(keyValues[index], keyValues[index + 1]);
+        }
+        return result;
+    }
+
+    @Test
+    public void testCharacterClasses()
+    {
+        Assert.assertEquals(Arrays.asList("x", "z"), AtlasTagIndex.requiredLiterals("x[ab]z"));
+        Assert.assertEquals(Arrays.asList("x", "z"), AtlasTagIndex.requiredLiterals("x[\\]y]z"));
+        Assert.assertEquals(Arrays.asList("x", "z"), AtlasTagIndex.requiredLiterals("x[]y]z"));
+        Assert.assertEquals(Arrays.asList("x", "z"), AtlasTagIndex.requiredLiterals("x[^]y]z"));
+        Assert.assertEquals(Arrays.asList("x", "z"),
+                AtlasTagIndex.requiredLiterals("x[a-z&&[^b]]z"));
+    }
+
+    @Test
+    public void testEmptyLiterals()
+    {
+        final AtlasTagIndex index = index();
+        // Without literals, every distinct value is tested
+        Assert.assertEquals(Collections.emptyList(),
+                AtlasTagIndex.requiredLiterals("^(Main|resi)"));
+        Assert.assertArrayEquals(new int[] { 5, 6 }, matching(index, "^(Main|resi)"));
+        Assert.assertArrayEquals(new int[] { 0, 1, 2, 3 }, matching(index, "^\\d"));
+    }
+
+    @Test
+    public void testEscapes()
+    {
+        Assert.assertEquals(Collections.singletonList("a.b"),
+                AtlasTagIndex.requiredLiterals("a\\.b"));
+        Assert.assertEquals(Collections.emptyList(), AtlasTagIndex.requiredLiterals("ab\\d+cd"));
+        Assert.assertEquals(Collections.emptyList(), AtlasTagIndex.requiredLiterals("\\x41bcd"));
+        Assert.assertEquals(Collections.emptyList(),
+                AtlasTagIndex.requiredLiterals("\\u00e9cole"));
+        Assert.assertEquals(Collections.emptyList(), AtlasTagIndex.requiredLiterals("\\0101bc"));
+        Assert.assertEquals(Collections.emptyList(),
+                AtlasTagIndex.requiredLiterals("\\Qa.b\\E"));
+    }
+
+    @Test
+    public void testLiterals()
+    {
+        Assert.assertEquals(Collections.singletonList("abc"),
+                AtlasTagIndex.requiredLiterals("abc"));
+        Assert.assertEquals(Arrays.asList("a", "cd"), AtlasTagIndex.requiredLiterals("ab*cd"));
+        Assert.assertEquals(Arrays.asList("a", "c"), AtlasTagIndex.requiredLiterals("ab?c"));
+        Assert.assertEquals(Arrays.asList("ab", "d"), AtlasTagIndex.requiredLiterals("abc{2}d"));
+        Assert.assertEquals(Arrays.asList("ab", "cd"), AtlasTagIndex.requiredLiterals("^ab.cd$"));
+    }
+
+    @Test
+    public void testRange()
+    {
+        final AtlasTagIndex index = index();
+        Assert.assertArrayEquals(new int[] { 1, 2 },
+                index.getOrdinalsInRange("lanes", 2, true, 3, false));
+        Assert.assertArrayEquals(new int[] { 3 },
+                index.getOrdinalsInRange("lanes", 2, false, 3, true));
+        Assert.assertArrayEquals(new int[] { 1, 2, 3 },
+                index.getOrdinalsInRange("lanes", 2, true, 3, true));
+        Assert.assertArrayEquals(new int[0], index.getOrdinalsInRange("lanes", 2, false, 3, false));
+        // The values that do not start with a number are not in the column
+        Assert.assertArrayEquals(new int[] { 0, 1, 2, 3 },
+                index.getOrdinalsInRange("lanes", Double.NEGATIVE_INFINITY, true,
+                        Double.POSITIVE_INFINITY, true));
+        Assert.assertArrayEquals(new int[0], index.getOrdinalsInRange("width",
+                Double.NEGATIVE_INFINITY, true, Double.POSITIVE_INFINITY, true));
+    }
+
+    @Test
+    public void testValueMatching()
+    {
+        final AtlasTagIndex index = index();
+        Assert.assertArrayEquals(new int[] { 5, 6 }, matching(index, "Main"));
+        Assert.assertArrayEquals(new int[] { 5 }, matching(index, "Main.S"));
+        Assert.assertArrayEquals(new int[] { 6 }, matching(index, "ident"));
+        Assert.assertArrayEquals(new int[0], matching(index, "Mainq"));
+        // The candidates are narrowed down to the values containing the trigrams of the literals
+        Assert.assertArrayEquals(new int[] { 6 }, index.getOrdinalsWithValueMatching(
+                Pattern.compile("Main"), Collections.singletonList("Mainz")));
+    }
+
+    @Test
+    public void testUnsupported()
+    {
+        Assert.assertEquals(Collections.emptyList(), AtlasTagIndex.requiredLiterals("abc|def"));
+        Assert.assertEquals(Collections.emptyList(), AtlasTagIndex.requiredLiterals("(?i)abc"));
+    }
+}